@@ -0,0 +1,19 @@
+package rt;
+
+/**
+ * An integrator that evaluates a whole batch of camera rays at once, instead of one
+ * ray after the other. {@link Main} hands it the camera rays of a render task in
+ * batches of {@link Main#batchSize}.
+ */
+public interface BatchIntegrator extends Integrator {
+
+	/**
+	 * Compute the contributions of a batch of rays to the image.
+	 *
+	 * @param rays the rays, only the first n are used
+	 * @param samples the random numbers of the camera samples of the rays, like for {@link #startSample}
+	 * @param n the number of rays
+	 * @param results receives the contribution of ray i at index i
+	 */
+	public void integrate(Ray[] rays, SampleStream[] samples, int n, Spectrum[] results);
+}
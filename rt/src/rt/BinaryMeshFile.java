@@ -0,0 +1,199 @@
+package rt;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import rt.intersectables.Mesh;
+
+/**
+ * Stores a {@link Mesh} in a compact binary format that can be loaded without any parsing.
+ * All values are little-endian. The file consists of a 32 byte header
+ * <pre>
+ * int magic ("RTMB"), int version, int nVertices, int nIndices, int flags, float scale, 2 x int reserved
+ * </pre>
+ * followed by the blocks
+ * <pre>
+ * float[nVertices*3] vertices, float[nVertices*3] normals,
+ * float[nVertices*2] texCoords (only if flags has {@link #HAS_TEX_COORDS}), int[nIndices] indices
+ * </pre>
+ * The stored vertices are already normalized, i.e. the file holds the mesh as returned by
+ * {@link FastObjReader#read(String, float)} or {@link PlyReader#read(String, float)} for
+ * the scale given when converting.
+ * <p>
+ * Run {@link #main(String[])} to convert an .obj or .ply file, e.g.
+ * <code>java rt.BinaryMeshFile ../obj/dragon.obj ../obj/dragon.rtmesh 2.2</code>.
+ */
+public class BinaryMeshFile {
+
+	public static final int MAGIC = 'R' | 'T' << 8 | 'M' << 16 | 'B' << 24;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final int HAS_TEX_COORDS = 1;
+
+	/**
+	 * Converts an .obj or .ply file to a binary mesh file.
+	 *
+	 * @param args input .obj or .ply file, output file, optional scale (default 1)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: BinaryMeshFile <input.obj|input.ply> <output.rtmesh> [scale]");
+			return;
+		}
+		float scale = args.length > 2 ? Float.parseFloat(args[2]) : 1.f;
+		Timer timer = new Timer();
+		convert(args[0], args[1], scale);
+		System.out.printf("Converted %s to %s in %d ms.\n", args[0], args[1], timer.timeElapsed());
+	}
+
+	/**
+	 * Reads an .obj or .ply file and writes it as binary mesh file.
+	 *
+	 * @param scale scales the object to fit into a cube of the given size
+	 */
+	public static void convert(String meshFileName, String fileName, float scale) throws IOException {
+		Mesh mesh;
+		if (meshFileName.toLowerCase().endsWith(".ply"))
+			mesh = PlyReader.read(meshFileName, scale);
+		else
+			mesh = FastObjReader.read(meshFileName, scale);
+		write(mesh, fileName, scale);
+	}
+
+	/**
+	 * Writes a mesh to a binary mesh file.
+	 *
+	 * @param scale the scale that was used to normalize the mesh, only stored for reference
+	 */
+	public static void write(Mesh mesh, String fileName, float scale) throws IOException {
+		int nVertices = mesh.getVertexCount();
+		int nIndices = mesh.size()*3;
+		boolean hasTexCoords = mesh.hasTexCoords();
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+				FileChannel channel = file.getChannel()) {
+			channel.truncate(0);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(nVertices).putInt(nIndices)
+				.putInt(hasTexCoords ? HAS_TEX_COORDS : 0).putFloat(scale).putInt(0).putInt(0);
+			// Through the accessors of the mesh, so off-heap meshes are written as well
+			for (int i = 0; i < nVertices*3; i++) {
+				if (buffer.remaining() < 4)
+					flush(channel, buffer);
+				buffer.putFloat(mesh.vertex(i));
+			}
+			for (int i = 0; i < nVertices*3; i++) {
+				if (buffer.remaining() < 4)
+					flush(channel, buffer);
+				buffer.putFloat(mesh.normal(i));
+			}
+			for (int i = 0; hasTexCoords && i < nVertices*2; i++) {
+				if (buffer.remaining() < 4)
+					flush(channel, buffer);
+				buffer.putFloat(mesh.texCoord(i));
+			}
+			for (int i = 0; i < nIndices; i++) {
+				if (buffer.remaining() < 4)
+					flush(channel, buffer);
+				buffer.putInt(mesh.index(i));
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Reads a binary mesh file. The file is memory mapped and each block is bulk copied
+	 * into the arrays of the mesh, no value is parsed or converted.
+	 */
+	public static Mesh read(String fileName) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			Blocks blocks = map(channel);
+			float[] vertices = new float[blocks.vertices.remaining()];
+			blocks.vertices.get(vertices);
+			float[] normals = new float[blocks.normals.remaining()];
+			blocks.normals.get(normals);
+			float[] texCoords = null;
+			if (blocks.texCoords != null) {
+				texCoords = new float[blocks.texCoords.remaining()];
+				blocks.texCoords.get(texCoords);
+			}
+			int[] indices = new int[blocks.indices.remaining()];
+			blocks.indices.get(indices);
+			return new Mesh(vertices, normals, texCoords, indices);
+		}
+	}
+
+	/**
+	 * Maps a binary mesh file and returns a mesh that reads directly from the mapping.
+	 * Nothing is copied to the heap, the operating system pages the data in as needed.
+	 */
+	public static Mesh readMapped(String fileName) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			Blocks blocks = map(channel);
+			return new Mesh(blocks.vertices, blocks.normals, blocks.texCoords, blocks.indices);
+		}
+	}
+
+	/**
+	 * Views on the memory mapped blocks of a binary mesh file.
+	 */
+	static class Blocks {
+		FloatBuffer vertices, normals, texCoords;
+		IntBuffer indices;
+		float scale;
+	}
+
+	/**
+	 * Maps the blocks of a binary mesh file. Every block is mapped on its own, so only
+	 * single blocks need to be smaller than 2GB. The mappings stay valid after the
+	 * channel is closed.
+	 */
+	static Blocks map(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC)
+			throw new IOException("Not a binary mesh file");
+		if (header.getInt(4) != VERSION)
+			throw new IOException("Unsupported binary mesh file version " + header.getInt(4));
+		long nVertices = header.getInt(8);
+		long nIndices = header.getInt(12);
+		boolean hasTexCoords = (header.getInt(16) & HAS_TEX_COORDS) != 0;
+
+		Blocks blocks = new Blocks();
+		blocks.scale = header.getFloat(20);
+		long offset = HEADER_SIZE;
+		blocks.vertices = mapBlock(channel, offset, nVertices*3*4).asFloatBuffer();
+		offset += nVertices*3*4;
+		blocks.normals = mapBlock(channel, offset, nVertices*3*4).asFloatBuffer();
+		offset += nVertices*3*4;
+		if (hasTexCoords) {
+			blocks.texCoords = mapBlock(channel, offset, nVertices*2*4).asFloatBuffer();
+			offset += nVertices*2*4;
+		}
+		blocks.indices = mapBlock(channel, offset, nIndices*4).asIntBuffer();
+		offset += nIndices*4;
+		if (offset > channel.size())
+			throw new IOException("Binary mesh file is truncated");
+		return blocks;
+	}
+
+	private static ByteBuffer mapBlock(FileChannel channel, long offset, long size) throws IOException {
+		if (offset + size > channel.size())
+			throw new IOException("Binary mesh file is truncated");
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -9,9 +9,10 @@ public interface Camera {
 	/**
 	 * Given a ray in image space, make a ray in world space according 
 	 * to the camera specifications. The method receives a sample that 
-	 * the camera can use to generate the ray. Typically the first two
-	 * sample dimensions are used to sample a location in the current 
-	 * pixel. The samples are assumed to be in the range [0,1].
+	 * the camera can use to generate the ray. Its dimensions are laid
+	 * out like in {@link SampleStream}: the first two are a location in
+	 * the current pixel, followed by a location on the lens and the time.
+	 * The samples are assumed to be in the range [0,1].
 	 * 
 	 * @param i pixel column index
 	 * @param j pixel row index
@@ -0,0 +1,452 @@
+package rt;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import rt.intersectables.Mesh;
+import util.FloatArrayList;
+import util.IntArrayList;
+
+/**
+ * Reads an .obj file into a {@link Mesh}, like {@link ObjReader}, but a lot faster.
+ * The file is memory mapped and parsed byte by byte, numbers are parsed by hand into
+ * growable primitive arrays, and no regular expressions or boxed values are involved.
+ * Large files are split at line boundaries into chunks that are parsed in parallel
+ * and stitched together afterwards.
+ * <p>
+ * The resulting mesh is the same as the one returned by {@link ObjReader#read(String, float)}.
+ * In addition, polygons with more than three vertices are triangulated as fans and
+ * negative (relative) indices are supported. Unknown tokens are silently skipped.
+ */
+public class FastObjReader {
+
+	/**
+	 * Files smaller than this are always parsed by a single thread.
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+	/**
+	 * A single mapping can not be larger than 2GB, chunks are kept well below that.
+	 */
+	private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+	/**
+	 * Relative indices are stored with this bias until the chunks are stitched together,
+	 * which keeps them apart from absolute indices (positive) and missing indices (zero).
+	 */
+	private static final int RELATIVE_BIAS = 1 << 30;
+
+	private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	/**
+	 * Read an .obj file and return a {@link Mesh}, parsing in parallel if the file is large.
+	 *
+	 * @param fileName the file to read.
+	 * @param scale scales the object to fit into a cube of the given size
+	 * @return a mesh
+	 * @throws IOException
+	 */
+	public static Mesh read(String fileName, float scale) throws IOException {
+		return read(fileName, scale, true);
+	}
+
+	/**
+	 * Read an .obj file and return a {@link Mesh}.
+	 *
+	 * @param fileName the file to read.
+	 * @param scale scales the object to fit into a cube of the given size
+	 * @param parallel if true, large files are parsed in chunks by several threads
+	 * @return a mesh
+	 * @throws IOException
+	 */
+	public static Mesh read(String fileName, float scale, boolean parallel) throws IOException {
+		List<ChunkParser> chunks;
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			long[] bounds = makeChunkBounds(channel, parallel);
+			chunks = new ArrayList<>(bounds.length - 1);
+			for (int i = 0; i < bounds.length - 1; i++) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i+1] - bounds[i]);
+				chunks.add(new ChunkParser(buffer));
+			}
+		}
+		parseAll(chunks);
+		return stitch(chunks, scale);
+	}
+
+	/**
+	 * Splits the file into chunks at line boundaries.
+	 */
+	private static long[] makeChunkBounds(FileChannel channel, boolean parallel) throws IOException {
+		long size = channel.size();
+		int nChunks = 1;
+		if (parallel && size > PARALLEL_THRESHOLD)
+			nChunks = Runtime.getRuntime().availableProcessors();
+		nChunks = (int) Math.max(nChunks, (size + MAX_CHUNK_SIZE - 1)/MAX_CHUNK_SIZE);
+
+		long[] bounds = new long[nChunks + 1];
+		bounds[nChunks] = size;
+		for (int i = 1; i < nChunks; i++) {
+			long start = Math.max(bounds[i-1], size/nChunks*i);
+			bounds[i] = nextLineStart(channel, start);
+		}
+		return bounds;
+	}
+
+	private static long nextLineStart(FileChannel channel, long position) throws IOException {
+		if (position == 0)
+			return 0;
+		ByteBuffer b = ByteBuffer.allocate(4096);
+		long p = position - 1; // if the previous byte ends a line, we are already at a line start
+		while (true) {
+			b.clear();
+			int read = channel.read(b, p);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++) {
+				if (b.get(i) == '\n')
+					return p + i + 1;
+			}
+			p += read;
+		}
+	}
+
+	private static void parseAll(List<ChunkParser> chunks) throws IOException {
+		if (chunks.size() == 1) {
+			chunks.get(0).parse();
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(chunks.size(),
+				Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<Void>> futures = new ArrayList<>(chunks.size());
+			for (final ChunkParser chunk : chunks) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						chunk.parse();
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing .obj file", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not parse .obj file", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Concatenates the vertex data of all chunks, resolves the face indices against
+	 * the concatenated arrays and builds the mesh.
+	 */
+	private static Mesh stitch(List<ChunkParser> chunks, float scale) {
+		FloatArrayList positions = chunks.get(0).positions;
+		FloatArrayList texCoords = chunks.get(0).texCoords;
+		FloatArrayList normals = chunks.get(0).normals;
+		float[] extent = chunks.get(0).extent;
+		boolean hasNormals = true, hasTexCoords = true;
+		int nFaceIndices = 0;
+		int[][] bases = new int[chunks.size()][3];
+		for (int i = 0; i < chunks.size(); i++) {
+			ChunkParser c = chunks.get(i);
+			bases[i][0] = i == 0 ? 0 : bases[i-1][0] + chunks.get(i-1).positions.size()/3;
+			bases[i][1] = i == 0 ? 0 : bases[i-1][1] + chunks.get(i-1).texCoords.size()/2;
+			bases[i][2] = i == 0 ? 0 : bases[i-1][2] + chunks.get(i-1).normals.size()/3;
+			hasNormals &= c.hasNormals;
+			hasTexCoords &= c.hasTexCoords;
+			nFaceIndices += c.faces.size();
+			if (i > 0) {
+				positions.addAll(c.positions);
+				texCoords.addAll(c.texCoords);
+				normals.addAll(c.normals);
+				for (int k = 0; k < 3; k++) {
+					extent[2*k] = Math.min(extent[2*k], c.extent[2*k]);
+					extent[2*k+1] = Math.max(extent[2*k+1], c.extent[2*k+1]);
+				}
+			}
+		}
+
+		// Resolve to global, 0-based indices; -1 marks a missing index
+		int[] faces = new int[nFaceIndices];
+		int f = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			IntArrayList chunkFaces = chunks.get(i).faces;
+			for (int j = 0; j < chunkFaces.size(); j++) {
+				int index = chunkFaces.get(j);
+				int base = bases[i][j % 3];
+				if (index > 0)
+					faces[f++] = index - 1;
+				else if (index < 0)
+					faces[f++] = base + index + RELATIVE_BIAS - 1;
+				else
+					faces[f++] = -1;
+			}
+		}
+
+		return ObjMeshBuilder.build(positions.elements(), texCoords.elements(), normals.elements(), faces,
+				faces.length/9, hasNormals, hasTexCoords, extent, scale);
+	}
+
+	/**
+	 * Parses one chunk of the file, which always starts at the beginning of a line.
+	 */
+	private static class ChunkParser {
+
+		private final ByteBuffer buffer;
+		private final int end;
+		private int pos;
+
+		final FloatArrayList positions, texCoords, normals;
+		final IntArrayList faces;
+		boolean hasNormals = true, hasTexCoords = true;
+
+		/**
+		 * xMin, xMax, yMin, yMax, zMin, zMax, initialized like in {@link ObjReader}.
+		 */
+		final float[] extent = {Float.MAX_VALUE, Float.MIN_VALUE, Float.MAX_VALUE, Float.MIN_VALUE,
+				Float.MAX_VALUE, Float.MIN_VALUE};
+
+		/**
+		 * Indices of the current polygon, 3 per vertex. Used to triangulate polygons as fans.
+		 */
+		private final IntArrayList polygon = new IntArrayList(12);
+
+		ChunkParser(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.end = buffer.limit();
+			// rough guess of the final sizes, to avoid most of the regrowing
+			int expectedLines = Math.max(end/32, 16);
+			positions = new FloatArrayList(expectedLines);
+			texCoords = new FloatArrayList(16);
+			normals = new FloatArrayList(16);
+			faces = new IntArrayList(expectedLines*3);
+		}
+
+		void parse() throws IOException {
+			while (pos < end) {
+				skipBlanks();
+				if (pos >= end)
+					break;
+				byte c = buffer.get(pos);
+				byte next = pos + 1 < end ? buffer.get(pos + 1) : (byte) '\n';
+				if (c == 'v' && isBlank(next)) {
+					pos++;
+					parsePosition();
+				} else if (c == 'v' && next == 'n') {
+					pos += 2;
+					normals.add(parseFloat(), parseFloat(), parseFloat());
+				} else if (c == 'v' && next == 't') {
+					pos += 2;
+					texCoords.add(parseFloat(), parseFloat());
+				} else if (c == 'f' && isBlank(next)) {
+					pos++;
+					parseFace();
+				}
+				skipLine();
+			}
+		}
+
+		private void parsePosition() throws IOException {
+			float x = parseFloat(), y = parseFloat(), z = parseFloat();
+			positions.add(x, y, z);
+			if(x < extent[0]) extent[0] = x;
+			if(x > extent[1]) extent[1] = x;
+			if(y < extent[2]) extent[2] = y;
+			if(y > extent[3]) extent[3] = y;
+			if(z < extent[4]) extent[4] = z;
+			if(z > extent[5]) extent[5] = z;
+		}
+
+		private void parseFace() throws IOException {
+			polygon.clear();
+			while (true) {
+				skipBlanks();
+				if (pos >= end || buffer.get(pos) == '\n' || buffer.get(pos) == '#')
+					break;
+				if (!isIntegerStart(buffer.get(pos)))
+					throw new IOException("Expected a vertex index in line '" + currentLine() + "'");
+				int v = resolve(parseInt(), positions.size()/3);
+				int t = 0, n = 0;
+				if (pos < end && buffer.get(pos) == '/') {
+					pos++;
+					if (pos < end && isIntegerStart(buffer.get(pos)))
+						t = resolve(parseInt(), texCoords.size()/2);
+					if (pos < end && buffer.get(pos) == '/') {
+						pos++;
+						if (pos < end && isIntegerStart(buffer.get(pos)))
+							n = resolve(parseInt(), normals.size()/3);
+					}
+				}
+				if (t == 0) hasTexCoords = false;
+				if (n == 0) hasNormals = false;
+				polygon.add(v, t, n);
+			}
+			int nVertices = polygon.size()/3;
+			for (int i = 1; i + 1 < nVertices; i++) {
+				faces.add(polygon.get(0), polygon.get(1), polygon.get(2));
+				faces.add(polygon.get(i*3), polygon.get(i*3+1), polygon.get(i*3+2));
+				faces.add(polygon.get(i*3+3), polygon.get(i*3+4), polygon.get(i*3+5));
+			}
+		}
+
+		/**
+		 * Absolute indices are kept, relative ones are made relative to the start of this chunk.
+		 */
+		private int resolve(int index, int count) {
+			if (index >= 0)
+				return index;
+			return count + index + 1 - RELATIVE_BIAS;
+		}
+
+		/**
+		 * @throws IOException if there are no digits after the optional sign
+		 */
+		private int parseInt() throws IOException {
+			boolean negative = false;
+			byte c = buffer.get(pos);
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				pos++;
+			}
+			int digitsStart = pos;
+			int value = 0;
+			while (pos < end && isDigit(c = buffer.get(pos))) {
+				value = value*10 + (c - '0');
+				pos++;
+			}
+			if (pos == digitsStart)
+				throw new IOException("Expected an integer in line '" + currentLine() + "'");
+			return negative ? -value : value;
+		}
+
+		/**
+		 * @return the line that contains pos, for error messages
+		 */
+		private String currentLine() {
+			int from = Math.min(pos, end - 1), to = from;
+			while (from > 0 && buffer.get(from - 1) != '\n')
+				from--;
+			while (to < end && buffer.get(to) != '\n' && buffer.get(to) != '\r')
+				to++;
+			byte[] bytes = new byte[to - from];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(from + i);
+			return new String(bytes, StandardCharsets.US_ASCII);
+		}
+
+		/**
+		 * Parses a float by hand. If the decimal mantissa and the power of ten are both exactly
+		 * representable as floats, a single float multiplication or division gives the correctly
+		 * rounded result, i.e. the same as {@link Float#parseFloat(String)}. Everything else
+		 * (long mantissas, large exponents, NaN, ...) falls back to {@link Float#parseFloat(String)}.
+		 */
+		private float parseFloat() throws IOException {
+			skipBlanks();
+			int start = pos;
+			boolean negative = false;
+			byte c = pos < end ? buffer.get(pos) : (byte) '\n';
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				pos++;
+			}
+			long mantissa = 0;
+			int exponent = 0;
+			int nDigits = 0;
+			int digitsStart = pos;
+			boolean exact = true;
+			while (pos < end && isDigit(c = buffer.get(pos))) {
+				if (nDigits < 18) {
+					mantissa = mantissa*10 + (c - '0');
+					if (mantissa != 0) nDigits++;
+				} else {
+					exact = false;
+				}
+				pos++;
+			}
+			boolean anyDigits = pos > digitsStart;
+			if (pos < end && buffer.get(pos) == '.') {
+				pos++;
+				while (pos < end && isDigit(c = buffer.get(pos))) {
+					if (nDigits < 18) {
+						mantissa = mantissa*10 + (c - '0');
+						if (mantissa != 0) nDigits++;
+						exponent--;
+					} else {
+						exact = false;
+					}
+					anyDigits = true;
+					pos++;
+				}
+			}
+			if (anyDigits && pos < end && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+				pos++;
+				if (pos < end && isIntegerStart(buffer.get(pos)))
+					exponent += parseInt();
+				else
+					exact = false;
+			}
+			if (!anyDigits) {
+				// no digits at all, e.g. NaN or Infinity
+				exact = false;
+				while (pos < end && !isBlank(buffer.get(pos)) && buffer.get(pos) != '\n')
+					pos++;
+			}
+
+			if (exact && mantissa < (1 << 24) && exponent >= -10 && exponent <= 10) {
+				float f = (float) mantissa;
+				f = exponent < 0 ? f / POWERS_OF_TEN[-exponent] : f * POWERS_OF_TEN[exponent];
+				return negative ? -f : f;
+			}
+			return slowParseFloat(start, pos);
+		}
+
+		private float slowParseFloat(int from, int to) {
+			byte[] bytes = new byte[to - from];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(from + i);
+			return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+		}
+
+		private void skipBlanks() {
+			while (pos < end && isBlank(buffer.get(pos)))
+				pos++;
+		}
+
+		private void skipLine() {
+			while (pos < end && buffer.get(pos) != '\n')
+				pos++;
+			pos++;
+		}
+
+		private static boolean isBlank(byte c) {
+			return c == ' ' || c == '\t' || c == '\r';
+		}
+
+		private static boolean isDigit(byte c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private static boolean isIntegerStart(byte c) {
+			return isDigit(c) || c == '-' || c == '+';
+		}
+	}
+}
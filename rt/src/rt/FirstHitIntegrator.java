@@ -0,0 +1,17 @@
+package rt;
+
+/**
+ * An integrator that can start from a first hit that was already found, e.g. by
+ * tracing the camera rays of several pixels as a {@link RayPacket}.
+ */
+public interface FirstHitIntegrator extends Integrator {
+
+	/**
+	 * Compute contribution of a ray to the image, given its closest hit.
+	 *
+	 * @param r the ray
+	 * @param hitRecord the closest hit of the ray in the scene, or null if it hits nothing
+	 * @return the contribution of the ray to the image
+	 */
+	public Spectrum integrate(Ray r, HitRecord hitRecord);
+}
@@ -75,18 +75,72 @@ public class HitRecord  {
 		this.v = v;
 	}
 	
-	public Matrix3f getTangentialMatrix() {
-		// Make tangent frame: t1, t2, normal is a right handed frame
-		t1 = new Vector3f(1,0,0);
-		t1.cross(t1, normal);
-		if(t1.length()==0)
-		{
-			t1 = new Vector3f(0,1,0);
-			t1.cross(t1, normal);
+	/**
+	 * Transforms a direction from the tangent frame, where the normal is the z axis, to
+	 * world space. The tangents are made from the current normal with the branchless
+	 * construction of Duff et al., "Building an Orthonormal Basis, Revisited", 2017.
+	 * 
+	 * @param result receives the direction in world space, may be a tuple of the arguments
+	 */
+	public void localToWorld(float x, float y, float z, Tuple3f result) {
+		float nx = normal.x, ny = normal.y, nz = normal.z;
+		float sign = Math.copySign(1.f, nz);
+		float a = -1/(sign + nz);
+		float b = nx*ny*a;
+		// t1 = (1 + sign*nx*nx*a, sign*b, -sign*nx), t2 = (b, sign + ny*ny*a, -ny)
+		float t1x = 1 + sign*nx*nx*a, t1y = sign*b, t1z = -sign*nx;
+		float t2x = b, t2y = sign + ny*ny*a, t2z = -ny;
+		result.set(x*t1x + y*t2x + z*nx, x*t1y + y*t2y + z*ny, x*t1z + y*t2z + z*nz);
+	}
+	
+	/**
+	 * Transforms a direction from world space to the tangent frame of
+	 * {@link #localToWorld}, where the normal is the z axis.
+	 * 
+	 * @param result receives the direction in the tangent frame, may be a tuple of the arguments
+	 */
+	public void worldToLocal(float x, float y, float z, Tuple3f result) {
+		float nx = normal.x, ny = normal.y, nz = normal.z;
+		float sign = Math.copySign(1.f, nz);
+		float a = -1/(sign + nz);
+		float b = nx*ny*a;
+		float t1x = 1 + sign*nx*nx*a, t1y = sign*b, t1z = -sign*nx;
+		float t2x = b, t2y = sign + ny*ny*a, t2z = -ny;
+		result.set(x*t1x + y*t1y + z*t1z, x*t2x + y*t2y + z*t2z, x*nx + y*ny + z*nz);
+	}
+	
+	/**
+	 * Transforms a direction from the frame of normal maps to world space. Unlike the
+	 * frame of {@link #localToWorld}, the first tangent is x cross normal, or y cross
+	 * normal if the normal is along x, so the maps keep the orientation they were made for.
+	 * 
+	 * @param result receives the direction in world space, may be a tuple of the arguments
+	 */
+	public void normalMapToWorld(float x, float y, float z, Tuple3f result) {
+		float nx = normal.x, ny = normal.y, nz = normal.z;
+		// t1 = x cross n = (0, -nz, ny), or y cross n = (nz, 0, -nx)
+		float t1x = 0, t1y = -nz, t1z = ny;
+		if (t1y == 0 && t1z == 0) {
+			t1x = nz;
+			t1y = 0;
+			t1z = -nx;
 		}
-		t1.normalize();
+		float l = (float) Math.sqrt(t1x*t1x + t1y*t1y + t1z*t1z);
+		t1x /= l; t1y /= l; t1z /= l;
+		// t2 = n cross t1
+		float t2x = ny*t1z - nz*t1y, t2y = nz*t1x - nx*t1z, t2z = nx*t1y - ny*t1x;
+		result.set(x*t1x + y*t2x + z*nx, x*t1y + y*t2y + z*ny, x*t1z + y*t2z + z*nz);
+	}
+	
+	/**
+	 * @return a matrix with the tangents t1, t2 and the normal as columns, which
+	 * transforms from the frame of {@link #normalMapToWorld} to world space
+	 */
+	public Matrix3f getTangentialMatrix() {
+		t1 = new Vector3f();
 		t2 = new Vector3f();
-		t2.cross(normal, t1);
+		normalMapToWorld(1, 0, 0, t1);
+		normalMapToWorld(0, 1, 0, t2);
 		Matrix3f m = new Matrix3f();
 		m.setColumn(0, t1);
 		m.setColumn(1, t2);
@@ -20,7 +20,17 @@ public interface Integrator {
 	 * @return the contribution of the ray to the image
 	 */
 	public Spectrum integrate(Ray r);
-	
+
+	/**
+	 * Starts the next camera ray. The integrator draws all of its random decisions for
+	 * the ray from the given stream, in the layout of {@link SampleStream}. The samples
+	 * of a pixel are started in order, beginning with sample 0.
+	 *
+	 * @param sample the random numbers of the camera sample, the integrator may keep it
+	 * until the next call
+	 */
+	public void startSample(SampleStream sample);
+
 	/**
 	 * Generate samples required by the integrator to evaluate 
 	 * light paths. 
@@ -6,7 +6,11 @@ import java.util.Iterator;
 import rt.accelerators.BoundingBox;
 import rt.intersectables.Aggregate;
 
-public class IntersectableList extends Aggregate {
+/**
+ * A list of intersectables that are all tested against each ray. Ray packets are
+ * passed on to the elements that support them.
+ */
+public class IntersectableList extends Aggregate implements PacketIntersectable {
 	
 	private ArrayList<Intersectable> intersectibles = new ArrayList<>();
 	
@@ -19,6 +23,22 @@ public class IntersectableList extends Aggregate {
 		return intersectibles.iterator();
 	}
 
+	@Override
+	public void intersect(RayPacket packet, HitRecord[] hits) {
+		int n = packet.size();
+		HitRecord[] elementHits = new HitRecord[n];
+		for (int i = 0; i < n; i++)
+			hits[i] = null;
+		for (Intersectable intersectable : intersectibles) {
+			RayPacket.intersect(intersectable, packet, elementHits);
+			for (int i = 0; i < n; i++) {
+				HitRecord h = elementHits[i];
+				if (h != null && h.t > 0 && (hits[i] == null || h.t < hits[i].t))
+					hits[i] = h;
+			}
+		}
+	}
+
 	@Override
 	public int size() {
 		return intersectibles.size();
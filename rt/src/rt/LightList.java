@@ -1,14 +1,148 @@
 package rt;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import javax.vecmath.Vector3f;
+
+import rt.accelerators.LightTree;
+import util.MyMath;
 
 /**
- * A list of light sources.
+ * A list of light sources. After {@link #prepare}, random lights are selected proportional
+ * to their emitted power in constant time, with the alias method of Walker. Before, or if
+ * no light emits anything, they are selected uniformly. Lights for a shading point are
+ * selected with a {@link LightTree} after {@link #prepare}, which also takes their
+ * distance and orientation into account.
  */
 public class LightList extends ArrayList<LightGeometry> {
 
+	// The alias table: bin i selects light i with probability threshold[i], otherwise light alias[i]
+	private float[] threshold;
+	private int[] alias;
+	private IdentityHashMap<LightGeometry, Float> probabilities;
+	private LightTree tree;
+	// The number of lights when prepare was called, the tables are ignored if it changed
+	private int preparedSize = -1;
+
+	/**
+	 * Builds the alias table and the light tree for the current lights, call it again
+	 * after changing them.
+	 */
+	public void prepare() {
+		int n = size();
+		preparedSize = n;
+		tree = new LightTree(this);
+		float[] power = new float[n];
+		float total = 0;
+		for (int i = 0; i < n; i++) {
+			power[i] = estimatePower(get(i));
+			total += power[i];
+		}
+		if (!(total > 0) || Float.isInfinite(total)) {
+			threshold = null;
+			alias = null;
+			probabilities = null;
+			return;
+		}
+
+		threshold = new float[n];
+		alias = new int[n];
+		probabilities = new IdentityHashMap<>();
+		// Scaled so the average bin is 1, bins below and above 1 are paired up
+		int[] small = new int[n], large = new int[n];
+		int nSmall = 0, nLarge = 0;
+		for (int i = 0; i < n; i++) {
+			probabilities.put(get(i), power[i]/total);
+			threshold[i] = power[i]/total*n;
+			alias[i] = i;
+			if (threshold[i] < 1)
+				small[nSmall++] = i;
+			else
+				large[nLarge++] = i;
+		}
+		while (nSmall > 0 && nLarge > 0) {
+			int s = small[--nSmall], l = large[--nLarge];
+			alias[s] = l;
+			threshold[l] -= 1 - threshold[s];
+			if (threshold[l] < 1)
+				small[nSmall++] = l;
+			else
+				large[nLarge++] = l;
+		}
+		// Only rounding errors are left
+		while (nSmall > 0)
+			threshold[small[--nSmall]] = 1;
+		while (nLarge > 0)
+			threshold[large[--nLarge]] = 1;
+	}
+
 	public LightGeometry getRandomLight(float[][] random) {
-		int randIdx = (int) (random[0][0]*this.size());
-		return this.get(randIdx);
+		return getRandomLight(random[0][0]);
+	}
+
+	/**
+	 * Selects a light with probability {@link #getProbability}.
+	 *
+	 * @param random uniform random number in [0,1)
+	 */
+	public LightGeometry getRandomLight(float random) {
+		float x = random*this.size();
+		int randIdx = Math.min((int) x, size() - 1);
+		if (threshold == null || preparedSize != size() || x - randIdx < threshold[randIdx])
+			return this.get(randIdx);
+		return this.get(alias[randIdx]);
+	}
+
+	/**
+	 * @return the probability that {@link #getRandomLight} selects the light
+	 */
+	public float getProbability(LightGeometry light) {
+		if (probabilities == null || preparedSize != size())
+			return 1f/size();
+		Float p = probabilities.get(light);
+		return p == null ? 0 : p;
+	}
+
+	/**
+	 * Selects a light for next event estimation at a shading point, with probability
+	 * {@link #getProbability(LightGeometry, HitRecord)}.
+	 *
+	 * @param random uniform random number in [0,1)
+	 * @param probability receives the probability of the selection in its first element
+	 * @return the light, null if none can illuminate the shading point
+	 */
+	public LightGeometry getRandomLight(float random, HitRecord hit, float[] probability) {
+		if (tree == null || preparedSize != size()) {
+			LightGeometry light = getRandomLight(random);
+			probability[0] = getProbability(light);
+			return light;
+		}
+		return tree.sample(random, hit, probability);
+	}
+
+	/**
+	 * @return the probability that {@link #getRandomLight(float, HitRecord, float[])}
+	 * selects the light for the shading point
+	 */
+	public float getProbability(LightGeometry light, HitRecord hit) {
+		if (tree == null || preparedSize != size())
+			return getProbability(light);
+		return tree.getProbability(light, hit);
+	}
+
+	/**
+	 * Estimates the power of the light from a sample of it, assuming its emission is the
+	 * same everywhere: the radiance or intensity integrated over the area and the
+	 * directions of a diffuse emitter, or over the sphere for a point light.
+	 */
+	public static float estimatePower(LightGeometry light) {
+		HitRecord h = light.sample(new float[] {0.5f, 0.5f});
+		Vector3f w = h.normal != null ? new Vector3f(h.normal) : new Vector3f(0, 0, 1);
+		Spectrum emission = new Spectrum();
+		if (!h.material.evaluateEmission(h, w, emission))
+			return 0;
+		float solidAngle = h.normal != null ? MyMath.PI : 4*MyMath.PI;
+		return Math.max(emission.getLuminance(), 0)*solidAngle/h.p;
 	}
 }
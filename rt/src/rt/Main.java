@@ -2,6 +2,8 @@ package rt;
 
 import javax.imageio.ImageIO;
 
+import rt.accelerators.OutOfCoreBVH;
+import rt.accelerators.VisibilityBuffer;
 import rt.testscenes.*;
 import util.HistHelper;
 import util.ImageWriter;
@@ -24,6 +26,28 @@ public class Main {
 	public static Scene scene = new BiPathtracingBoxSphere();
 	public static Point debugPixel;// = new Point(47, 475);
 	public static final int windowSize = 10;
+	/**
+	 * Camera rays of blocks of this many pixels squared are traced as {@link RayPacket},
+	 * if the scene and integrator support it. At most 8, set to 1 to trace single rays.
+	 */
+	public static int packetSize = 8;
+	/**
+	 * Number of camera rays handed to a {@link BatchIntegrator} at once.
+	 */
+	public static int batchSize = 4096;
+	/**
+	 * If true, the first hits of camera rays are found with a {@link VisibilityBuffer}
+	 * instead of ray casting, if the scene and integrator support it. The integrator has
+	 * to be a {@link FirstHitIntegrator}, a {@link BatchIntegrator} always traces its
+	 * camera rays itself.
+	 */
+	public static boolean rasterizePrimaryHits = false;
+	/**
+	 * If not null, replaces the sampler factory of the scene, e.g. with a
+	 * {@link rt.samplers.BlueNoiseSamplerFactory} for previews with few samples.
+	 */
+	public static SamplerFactory previewSamplerFactory = null;
+	static VisibilityBuffer visibilityBuffer;
 	
 	static LinkedList<RenderTask> queue;
 	static Counter tasksLeft;
@@ -61,8 +85,7 @@ public class Main {
 			// compete for access to a shared sampler/integrator, and thread contention
 			// can be reduced. 
 			integrator = scene.getIntegratorFactory().make(scene);
-			sampler = scene.getSamplerFactory().make();
-			sampler.init(left*scene.height + bottom);
+			sampler = (previewSamplerFactory != null ? previewSamplerFactory : scene.getSamplerFactory()).make();
 		}
 	}
 	
@@ -80,38 +103,219 @@ public class Main {
 				}
 													
 				// Render the image block represented by the task
+				if (debugPixel == null && task.integrator instanceof BatchIntegrator)
+					renderBatches(task);
+				else if (visibilityBuffer != null && debugPixel == null && task.integrator instanceof FirstHitIntegrator)
+					renderVisibility(task);
+				else if (packetSize > 1 && debugPixel == null && task.integrator instanceof FirstHitIntegrator
+						&& task.scene.getIntersectable() instanceof PacketIntersectable)
+					renderPackets(task);
+				else
+					renderPixels(task);
 				
-				// For all pixels
-				for(int j=task.bottom; j<task.top; j++)
+				synchronized(tasksLeft)
 				{
-					for(int i=task.left; i<task.right; i++)
-					{											
-						float samples[][] = task.integrator.makePixelSamples(task.sampler, task.scene.getSPP());
-						//for going in a s through pixels, adapt i here
-						int iAdapted;
-						if (j % 2 == 1)
-							iAdapted = task.right + task.left - i - 1;
-						else
-							iAdapted = i;
-						// For all samples of the pixel
-						for(int k = 0; k < samples.length; k++)
-						{	
-							// Make ray
-							Ray r = task.scene.getCamera().makeWorldSpaceRay(iAdapted, j, samples[k]);
+					tasksLeft.n--;
+					if(tasksLeft.n == 0) tasksLeft.notifyAll();
+				}
+			}
+		}
+		
+		/**
+		 * Makes the camera samples of a pixel. The sampler is initialized with the pixel,
+		 * so the samples do not depend on the task or the thread that renders it.
+		 */
+		private static float[][] makePixelSamples(RenderTask task, int i, int j)
+		{
+			task.sampler.init(SampleStream.pixel(i, j));
+			return task.integrator.makePixelSamples(task.sampler, task.scene.getSPP());
+		}
+		
+		/**
+		 * Makes the ray of camera sample k of a pixel and sets its random numbers into stream.
+		 */
+		private static Ray makeCameraRay(RenderTask task, int i, int j, float[][] samples, int k, SampleStream stream)
+		{
+			stream.set(task.sampler, SampleStream.pixel(i, j), k);
+			return task.scene.getCamera().makeWorldSpaceRay(i, j, stream.makeCameraSample(samples[k]));
+		}
+		
+		/**
+		 * Renders the pixels of the task one after the other.
+		 */
+		private static void renderPixels(RenderTask task)
+		{
+			SampleStream stream = new SampleStream();
+			// For all pixels
+			for(int j=task.bottom; j<task.top; j++)
+			{
+				for(int i=task.left; i<task.right; i++)
+				{											
+					//for going in a s through pixels, adapt i here
+					int iAdapted;
+					if (j % 2 == 1)
+						iAdapted = task.right + task.left - i - 1;
+					else
+						iAdapted = i;
+					float samples[][] = makePixelSamples(task, iAdapted, j);
+					// For all samples of the pixel
+					for(int k = 0; k < samples.length; k++)
+					{	
+						// Make ray
+						Ray r = makeCameraRay(task, iAdapted, j, samples, k, stream);
 
-							// Evaluate ray0
-							Spectrum s = task.integrator.integrate(r);							
-							
-							// Write to film
-							task.scene.getFilm().addSample(iAdapted + samples[k][0], j + samples[k][1], s);
+						// Evaluate ray0
+						task.integrator.startSample(stream);
+						Spectrum s = task.integrator.integrate(r);							
+					
+						// Write to film
+						task.scene.getFilm().addSample(iAdapted + samples[k][0], j + samples[k][1], s);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Collects the camera rays of the task into batches of {@link Main#batchSize} and
+		 * lets the integrator evaluate each batch at once.
+		 */
+		private static void renderBatches(RenderTask task)
+		{
+			BatchIntegrator integrator = (BatchIntegrator) task.integrator;
+			Ray[] rays = new Ray[batchSize];
+			float[] filmX = new float[batchSize], filmY = new float[batchSize];
+			SampleStream[] streams = new SampleStream[batchSize];
+			for(int k = 0; k < batchSize; k++)
+				streams[k] = new SampleStream();
+			Spectrum[] results = new Spectrum[batchSize];
+			int n = 0;
+			
+			for(int j=task.bottom; j<task.top; j++)
+			{
+				for(int i=task.left; i<task.right; i++)
+				{
+					float samples[][] = makePixelSamples(task, i, j);
+					for(int k = 0; k < samples.length; k++)
+					{
+						rays[n] = makeCameraRay(task, i, j, samples, k, streams[n]);
+						filmX[n] = i + samples[k][0];
+						filmY[n] = j + samples[k][1];
+						n++;
+						if(n == batchSize)
+						{
+							integrateBatch(task, integrator, rays, streams, filmX, filmY, results, n);
+							n = 0;
 						}
 					}
 				}
-				
-				synchronized(tasksLeft)
+			}
+			integrateBatch(task, integrator, rays, streams, filmX, filmY, results, n);
+		}
+		
+		private static void integrateBatch(RenderTask task, BatchIntegrator integrator, Ray[] rays, SampleStream[] streams,
+				float[] filmX, float[] filmY, Spectrum[] results, int n)
+		{
+			if(n == 0) return;
+			integrator.integrate(rays, streams, n, results);
+			for(int k = 0; k < n; k++)
+				task.scene.getFilm().addSample(filmX[k], filmY[k], results[k]);
+		}
+		
+		/**
+		 * Finds the first hits of the camera rays of the task with the visibility buffer,
+		 * in batches of {@link Main#batchSize}, and lets the integrator continue from them.
+		 */
+		private static void renderVisibility(RenderTask task)
+		{
+			FirstHitIntegrator integrator = (FirstHitIntegrator) task.integrator;
+			Ray[] rays = new Ray[batchSize];
+			float[] filmX = new float[batchSize], filmY = new float[batchSize];
+			SampleStream[] streams = new SampleStream[batchSize];
+			for(int k = 0; k < batchSize; k++)
+				streams[k] = new SampleStream();
+			HitRecord[] hits = new HitRecord[batchSize];
+			int n = 0;
+			
+			for(int j=task.bottom; j<task.top; j++)
+			{
+				for(int i=task.left; i<task.right; i++)
 				{
-					tasksLeft.n--;
-					if(tasksLeft.n == 0) tasksLeft.notifyAll();
+					float samples[][] = makePixelSamples(task, i, j);
+					for(int k = 0; k < samples.length; k++)
+					{
+						rays[n] = makeCameraRay(task, i, j, samples, k, streams[n]);
+						filmX[n] = i + samples[k][0];
+						filmY[n] = j + samples[k][1];
+						n++;
+						if(n == batchSize || (k == samples.length - 1 && i == task.right - 1 && j == task.top - 1))
+						{
+							visibilityBuffer.intersect(rays, filmX, filmY, n, hits);
+							for(int r = 0; r < n; r++)
+							{
+								integrator.startSample(streams[r]);
+								task.scene.getFilm().addSample(filmX[r], filmY[r], integrator.integrate(rays[r], hits[r]));
+							}
+							n = 0;
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Renders the task in blocks of {@link Main#packetSize} squared pixels. The camera
+		 * rays of the block for each sample are traced together as a packet, the integrator
+		 * continues from their first hits.
+		 */
+		private static void renderPackets(RenderTask task)
+		{
+			FirstHitIntegrator integrator = (FirstHitIntegrator) task.integrator;
+			Intersectable root = task.scene.getIntersectable();
+			int size = Math.min(packetSize, 8);
+			RayPacket packet = new RayPacket();
+			HitRecord[] hits = new HitRecord[RayPacket.MAX_SIZE];
+			int[] pixelX = new int[RayPacket.MAX_SIZE], pixelY = new int[RayPacket.MAX_SIZE];
+			int[] pixelOfRay = new int[RayPacket.MAX_SIZE];
+			float[][][] samples = new float[RayPacket.MAX_SIZE][][];
+			SampleStream[] streams = new SampleStream[RayPacket.MAX_SIZE];
+			for(int r = 0; r < streams.length; r++)
+				streams[r] = new SampleStream();
+			
+			for(int y0=task.bottom; y0<task.top; y0+=size)
+			{
+				for(int x0=task.left; x0<task.right; x0+=size)
+				{
+					int nPixels = 0, nSamples = 0;
+					for(int j=y0; j<Math.min(y0+size, task.top); j++)
+					{
+						for(int i=x0; i<Math.min(x0+size, task.right); i++)
+						{
+							samples[nPixels] = makePixelSamples(task, i, j);
+							nSamples = Math.max(nSamples, samples[nPixels].length);
+							pixelX[nPixels] = i;
+							pixelY[nPixels] = j;
+							nPixels++;
+						}
+					}
+					
+					for(int k = 0; k < nSamples; k++)
+					{
+						packet.clear();
+						for(int p = 0; p < nPixels; p++)
+						{
+							if(k >= samples[p].length) continue;
+							pixelOfRay[packet.size()] = p;
+							packet.add(makeCameraRay(task, pixelX[p], pixelY[p], samples[p], k, streams[packet.size()]));
+						}
+						RayPacket.intersect(root, packet, hits);
+						for(int r = 0; r < packet.size(); r++)
+						{
+							int p = pixelOfRay[r];
+							integrator.startSample(streams[r]);
+							Spectrum s = integrator.integrate(packet.rays[r], hits[r]);
+							task.scene.getFilm().addSample(pixelX[p] + samples[p][k][0], pixelY[p] + samples[p][k][1], s);
+						}
+					}
 				}
 			}
 		}
@@ -130,6 +334,14 @@ public class Main {
 		int height = scene.getFilm().getHeight();
 
 		scene.prepare();
+		if (rasterizePrimaryHits && VisibilityBuffer.isSupported(scene))
+			visibilityBuffer = new VisibilityBuffer(scene);
+		// Report the treelet cache statistics of this render only
+		OutOfCoreBVH outOfCore = null;
+		if (scene.getIntersectable() instanceof OutOfCoreBVH) {
+			outOfCore = (OutOfCoreBVH) scene.getIntersectable();
+			outOfCore.resetStatistics();
+		}
 		
 		int nTasks;
 		queue = new LinkedList<RenderTask>();
@@ -187,6 +399,8 @@ public class Main {
 		long time_s = time_ms / 1000;
 		long time_min =  time_s / 60;
 		String timing_output = String.format("Image computed in %d ms = %d min, %d sec.\n", time_ms, time_min, time_s - time_min*60);
+		if (outOfCore != null)
+			timing_output += outOfCore.getStatistics() + "\n";
 		System.out.print(timing_output);
 		
 		// Tone map output image and writ to file
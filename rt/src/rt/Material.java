@@ -49,8 +49,15 @@ public interface Material {
 			this.p = p;
 		}
 		
+		/**
+		 * Makes a sample with zero BRDF, emission and direction, to be filled by
+		 * {@link Material#getShadingSample(HitRecord, float[], ShadingSample)}.
+		 */
 		public ShadingSample()
-		{			
+		{
+			this.brdf = new Spectrum();
+			this.emission = new Spectrum();
+			this.w = new Vector3f();
 		}
 	}
 	
@@ -66,6 +73,37 @@ public interface Material {
 	 */
 	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn);
 
+	/**
+	 * Like {@link #evaluateBRDF(HitRecord, Vector3f, Vector3f)}, but writes the BRDF
+	 * value into a spectrum of the caller instead of allocating a new one.
+	 *
+	 * @param result receives the BRDF value
+	 */
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result);
+
+	/**
+	 * Probability density with which {@link #getShadingSample} samples the incoming
+	 * direction, with respect to solid angle. It is zero for materials that do not
+	 * sample directions or only sample specular ones. Unlike evaluating the BRDF, this
+	 * does not change the hit record.
+	 *
+	 * @param hitRecord Information about hit point
+	 * @param wOut Outgoing direction, normalized and pointing away from the surface
+	 * @param wIn Incoming direction, normalized and pointing away from the surface
+	 * @return the density of wIn
+	 */
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn);
+
+	/**
+	 * Evaluates the BRDF like {@link #evaluateBRDF(HitRecord, Vector3f, Vector3f, Spectrum)}
+	 * and the density like {@link #pdf}, sharing the work between them. Used for multiple
+	 * importance sampling.
+	 *
+	 * @param result receives the BRDF value
+	 * @return the density of wIn
+	 */
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result);
+
 	/**
 	 * Evaluate emission for outgoing direction. This method is typically called 
 	 * by an integrator when the integrator obtained the outgoing direction of
@@ -77,6 +115,15 @@ public interface Material {
 	 */
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut);
 
+	/**
+	 * Like {@link #evaluateEmission(HitRecord, Vector3f)}, but writes the emission into
+	 * a spectrum of the caller.
+	 *
+	 * @param result receives the emission value
+	 * @return false if the material does not emit, result is unchanged then
+	 */
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result);
+
 	/**
 	 * Return whether material has perfect specular reflection. 
 	 */
@@ -109,6 +156,15 @@ public interface Material {
 	 */
 	public ShadingSample getShadingSample(HitRecord hitRecord, float[] sample);
 
+	/**
+	 * Like {@link #getShadingSample(HitRecord, float[])}, but writes the sample into a
+	 * shading sample of the caller, so integrators can reuse it for every bounce.
+	 *
+	 * @param result receives the BRDF value, the direction and the probability density
+	 * @return false if there is no sample, e.g. for total internal reflection
+	 */
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result);
+
 	/**
 	 * Calculate an emission sample, given a hit record and a uniform random 
 	 * sample as input. This method is typically called in a bidirectional
@@ -0,0 +1,128 @@
+package rt;
+
+import javax.vecmath.Vector3f;
+
+import rt.intersectables.Mesh;
+import util.FloatArrayList;
+import util.IntTripleHashMap;
+
+/**
+ * Turns the data parsed from an .obj file into a {@link Mesh}. Shared by
+ * {@link ObjReader} and {@link FastObjReader}.
+ * <p>
+ * Each distinct (position, tex. coord., normal) index triple becomes one vertex of the
+ * mesh, so vertices are shared between the triangles referring to them. Meshes without
+ * normals get one flat normal per triangle, hence their vertices can not be shared.
+ */
+class ObjMeshBuilder {
+
+	/**
+	 * @param positions x,y,z for each position in the file
+	 * @param texCoords u,v for each texture coordinate in the file
+	 * @param normals x,y,z for each normal in the file
+	 * @param faces 0-based indices of position, tex. coord. and normal for each vertex
+	 * of each triangle, -1 if missing
+	 * @param nFaces number of triangles
+	 * @param extent xMin, xMax, yMin, yMax, zMin, zMax of the positions
+	 * @param scale scales the object to fit into a cube of the given size
+	 */
+	static Mesh build(float[] positions, float[] texCoords, float[] normals, int[] faces, int nFaces,
+			boolean hasNormals, boolean hasTexCoords, float[] extent, float scale) {
+		float[] normalization = makeNormalization(extent, scale);
+		scale = normalization[0];
+		float xTrans = normalization[1];
+		float yTrans = normalization[2];
+		float zTrans = normalization[3];
+
+		if (!hasNormals)
+			return buildFlatShaded(positions, texCoords, faces, nFaces, hasTexCoords, scale, xTrans, yTrans, zTrans);
+
+		// Usually there are about half as many vertices as triangles
+		int expectedVertices = nFaces/2 + 16;
+		IntTripleHashMap vertexMap = new IntTripleHashMap(expectedVertices);
+		FloatArrayList verticesFinal = new FloatArrayList(expectedVertices*3);
+		FloatArrayList normalsFinal = new FloatArrayList(expectedVertices*3);
+		FloatArrayList texCoordsFinal = new FloatArrayList(hasTexCoords ? expectedVertices*2 : 1);
+		int[] indices = new int[nFaces*3];
+		int nVertices = 0;
+
+		for (int corner = 0; corner < nFaces*3; corner++) {
+			int p = faces[corner*3];
+			int t = hasTexCoords ? faces[corner*3+1] : -1;
+			int n = faces[corner*3+2];
+			int index = vertexMap.putIfAbsent(p, t, n, nVertices);
+			if (index < 0) {
+				index = nVertices++;
+				verticesFinal.add(scale*(positions[p*3]+xTrans),
+						scale*(positions[p*3+1]+yTrans),
+						scale*(positions[p*3+2]+zTrans));
+				normalsFinal.add(normals[n*3], normals[n*3+1], normals[n*3+2]);
+				if (hasTexCoords)
+					texCoordsFinal.add(texCoords[t*2], texCoords[t*2+1]);
+			}
+			indices[corner] = index;
+		}
+		return new Mesh(verticesFinal.toArray(), normalsFinal.toArray(),
+				hasTexCoords ? texCoordsFinal.toArray() : null, indices);
+	}
+
+	/**
+	 * Computes the normalization that centers an object and scales it to fit into a cube
+	 * of the given size. A position p is normalized as scale*(p + translation).
+	 *
+	 * @param extent xMin, xMax, yMin, yMax, zMin, zMax of the positions
+	 * @param scale size of the cube
+	 * @return the final scale, followed by the x, y and z translation
+	 */
+	static float[] makeNormalization(float[] extent, float scale) {
+		float xTrans = -(extent[1]+extent[0])/2;
+		float yTrans = -(extent[3]+extent[2])/2;
+		float zTrans = -(extent[5]+extent[4])/2;
+		float xScale = 2/(extent[1]-extent[0]);
+		float yScale = 2/(extent[3]-extent[2]);
+		float zScale = 2/(extent[5]-extent[4]);
+		float s = yScale;
+		if(xScale < yScale) s = xScale;
+		if(zScale < s) s = zScale;
+		return new float[]{s*scale, xTrans, yTrans, zTrans};
+	}
+
+	/**
+	 * Makes three vertices per triangle, all with the normal of the triangle.
+	 */
+	private static Mesh buildFlatShaded(float[] positions, float[] texCoords, int[] faces, int nFaces,
+			boolean hasTexCoords, float scale, float xTrans, float yTrans, float zTrans) {
+		float[] verticesFinal = new float[nFaces*9];
+		float[] normalsFinal = new float[nFaces*9];
+		float[] texCoordsFinal = hasTexCoords ? new float[nFaces*6] : null;
+		int[] indices = new int[nFaces*3];
+
+		for (int vertexNr = 0; vertexNr < nFaces*3; vertexNr++) {
+			int p = faces[vertexNr*3]*3;
+			verticesFinal[vertexNr*3] = scale*(positions[p]+xTrans);
+			verticesFinal[vertexNr*3+1] = scale*(positions[p+1]+yTrans);
+			verticesFinal[vertexNr*3+2] = scale*(positions[p+2]+zTrans);
+			if (hasTexCoords) {
+				int t = faces[vertexNr*3+1]*2;
+				texCoordsFinal[vertexNr*2] = texCoords[t];
+				texCoordsFinal[vertexNr*2+1] = texCoords[t+1];
+			}
+			indices[vertexNr] = vertexNr;
+		}
+
+		Vector3f d0 = new Vector3f(), d1 = new Vector3f(), n = new Vector3f();
+		for (int i = 0; i < nFaces; i++) {
+			int v = i*9;
+			d0.set(verticesFinal[v+6]-verticesFinal[v], verticesFinal[v+7]-verticesFinal[v+1], verticesFinal[v+8]-verticesFinal[v+2]);
+			d1.set(verticesFinal[v+3]-verticesFinal[v], verticesFinal[v+4]-verticesFinal[v+1], verticesFinal[v+5]-verticesFinal[v+2]);
+			n.cross(d1, d0);
+			n.normalize();
+			for (int j = 0; j < 3; j++) {
+				normalsFinal[v+j*3] = n.x;
+				normalsFinal[v+j*3+1] = n.y;
+				normalsFinal[v+j*3+2] = n.z;
+			}
+		}
+		return new Mesh(verticesFinal, normalsFinal, texCoordsFinal, indices);
+	}
+}
@@ -3,8 +3,6 @@ package rt;
 import java.io.*;
 import java.util.ArrayList;
 
-import javax.vecmath.*;
-
 import rt.intersectables.Mesh;
 
 
@@ -124,83 +122,34 @@ public class ObjReader {
 			}
 		}
 
-		// Normalization
-		float xTrans = -(xMax+xMin)/2;
-		float yTrans = -(yMax+yMin)/2;
-		float zTrans = -(zMax+zMin)/2;
-		float xScale = 2/(xMax-xMin);
-		float yScale = 2/(yMax-yMin);
-		float zScale = 2/(zMax-zMin);
-		float s = yScale;
-		if(xScale < yScale) s = xScale;
-		if(zScale < s) s = zScale;
-		scale = s*scale;
-		
-		// Brute force approach to generate single index per vertex
-		// Expand arrays
+		// Flatten lists, indices become 0-based with -1 marking a missing index
+		float[] verticesArray = flatten(vertices, 3);
+		float[] normalsArray = flatten(normals, 3);
+		float[] texCoordsArray = flatten(texCoords, 2);
 		int nFaces = faces.size();
-		float[] verticesFinal = new float[nFaces*9];
-		float[] normalsFinal = new float[nFaces*9];
-		float[] texCoordsFinal = new float[nFaces*6];
-		int[] indices = new int[nFaces*3];
-		
-		// For all faces
-		int vertexNr = 0;
+		int[] faceIndices = new int[nFaces*9];
 		for(int i=0; i<nFaces; i++)
 		{
-			// For all vertices
 			for(int j=0; j<3; j++)
 			{
-				// Copy positions, tex. coords., and normals to expanded arrays
-				// Note: we subtract one from the index because indexing in the obj
-				// file is 1-based, whereas our arrays are 0-based
-				verticesFinal[vertexNr*3] = vertices.get(faces.get(i)[j][0]-1)[0];
-				verticesFinal[vertexNr*3+1] = vertices.get(faces.get(i)[j][0]-1)[1];
-				verticesFinal[vertexNr*3+2] = vertices.get(faces.get(i)[j][0]-1)[2];
-				
-				verticesFinal[vertexNr*3] = scale*(verticesFinal[vertexNr*3]+xTrans);
-				verticesFinal[vertexNr*3+1] = scale*(verticesFinal[vertexNr*3+1]+yTrans);
-				verticesFinal[vertexNr*3+2] = scale*(verticesFinal[vertexNr*3+2]+zTrans);
-				
-				if(hasNormals)
-				{
-					normalsFinal[vertexNr*3] = normals.get(faces.get(i)[j][2]-1)[0];
-					normalsFinal[vertexNr*3+1] = normals.get(faces.get(i)[j][2]-1)[1];
-					normalsFinal[vertexNr*3+2] = normals.get(faces.get(i)[j][2]-1)[2];
-				} 
-				
-				if(hasTexCoords)
+				for(int k=0; k<3; k++)
 				{
-					texCoordsFinal[vertexNr*2] = texCoords.get(faces.get(i)[j][1]-1)[0];
-					texCoordsFinal[vertexNr*2+1] = texCoords.get(faces.get(i)[j][1]-1)[1];
-				}
-				
-				indices[vertexNr] = vertexNr;
-				vertexNr++;
-			}
-			
-			if(!hasNormals)
-			{
-				Vector3f d0 = new Vector3f(verticesFinal[(vertexNr-1)*3]-verticesFinal[(vertexNr-3)*3],
-						                   verticesFinal[(vertexNr-1)*3+1]-verticesFinal[(vertexNr-3)*3+1],
-						                   verticesFinal[(vertexNr-1)*3+2]-verticesFinal[(vertexNr-3)*3+2]);
-				Vector3f d1 = new Vector3f(verticesFinal[(vertexNr-2)*3]-verticesFinal[(vertexNr-3)*3],
-		                                   verticesFinal[(vertexNr-2)*3+1]-verticesFinal[(vertexNr-3)*3+1],
-		                                   verticesFinal[(vertexNr-2)*3+2]-verticesFinal[(vertexNr-3)*3+2]);
-				Vector3f n = new Vector3f();
-				n.cross(d1,d0);
-				n.normalize();
-				for(int j=0; j<3; j++)
-				{
-					normalsFinal[(vertexNr-(j+1))*3] = n.x;
-					normalsFinal[(vertexNr-(j+1))*3+1] = n.y;
-					normalsFinal[(vertexNr-(j+1))*3+2] = n.z;
+					int index = faces.get(i)[j][k];
+					faceIndices[i*9 + j*3 + k] = index > 0 ? index-1 : -1;
 				}
 			}
 		}
 
 		reader.close();
-		return new Mesh(verticesFinal, normalsFinal, indices);
+		return ObjMeshBuilder.build(verticesArray, texCoordsArray, normalsArray, faceIndices, nFaces, 
+				hasNormals, hasTexCoords, new float[]{xMin, xMax, yMin, yMax, zMin, zMax}, scale);
+	}
+	
+	private static float[] flatten(ArrayList<float[]> list, int n)
+	{
+		float[] array = new float[list.size()*n];
+		for(int i=0; i<list.size(); i++)
+			System.arraycopy(list.get(i), 0, array, i*n, n);
+		return array;
 	}
 }
- 
\ No newline at end of file
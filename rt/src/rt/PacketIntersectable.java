@@ -0,0 +1,17 @@
+package rt;
+
+/**
+ * An intersectable that can trace a whole {@link RayPacket} at once, sharing the work
+ * that is the same for all of its rays.
+ */
+public interface PacketIntersectable extends Intersectable {
+
+	/**
+	 * Intersects all rays of the packet. Has the same result as calling
+	 * {@link #intersect(Ray)} for each of them.
+	 *
+	 * @param packet the rays
+	 * @param hits receives the hit record of ray i at index i, or null if it hits nothing
+	 */
+	public void intersect(RayPacket packet, HitRecord[] hits);
+}
@@ -0,0 +1,438 @@
+package rt;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import rt.intersectables.Mesh;
+import util.IntArrayList;
+
+/**
+ * Reads a .ply file (ascii, binary little endian or binary big endian) into a {@link Mesh}.
+ * Meant for large scanned models, e.g. from the Stanford 3D scanning repository.
+ * <p>
+ * The file is streamed through a small buffer and the values are written directly into
+ * the arrays of the mesh, so no object is created per vertex or face and loading needs
+ * little more memory than the final mesh. Vertex positions are normalized like in
+ * {@link ObjReader#read(String, float)}. Normals and texture coordinates are read if
+ * present (properties nx, ny, nz and u, v or s, t), otherwise smooth, area weighted
+ * normals are computed. Polygons are triangulated as fans. All other elements and
+ * properties, e.g. colors or confidence values, are skipped.
+ */
+public class PlyReader {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private enum Format { ASCII, BINARY_LITTLE_ENDIAN, BINARY_BIG_ENDIAN }
+
+	private enum Type {
+		CHAR(1), UCHAR(1), SHORT(2), USHORT(2), INT(4), UINT(4), FLOAT(4), DOUBLE(8);
+
+		final int size;
+
+		Type(int size) {
+			this.size = size;
+		}
+
+		static Type parse(String name) throws IOException {
+			switch (name) {
+			case "char": case "int8": return CHAR;
+			case "uchar": case "uint8": return UCHAR;
+			case "short": case "int16": return SHORT;
+			case "ushort": case "uint16": return USHORT;
+			case "int": case "int32": return INT;
+			case "uint": case "uint32": return UINT;
+			case "float": case "float32": return FLOAT;
+			case "double": case "float64": return DOUBLE;
+			default: throw new IOException("Unknown ply property type " + name);
+			}
+		}
+	}
+
+	private static class Property {
+		String name;
+		Type type;
+		/**
+		 * Type of the element count for list properties, null otherwise.
+		 */
+		Type countType;
+	}
+
+	private static class Element {
+		String name;
+		int count;
+		List<Property> properties = new ArrayList<Property>();
+	}
+
+	/**
+	 * Read a .ply file and return a {@link Mesh}.
+	 *
+	 * @param fileName the file to read.
+	 * @param scale scales the object to fit into a cube of the given size
+	 * @return a mesh
+	 * @throws IOException
+	 */
+	public static Mesh read(String fileName, float scale) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel()) {
+			Input in = new Input(channel);
+			List<Element> elements = new ArrayList<Element>();
+			Format format = readHeader(in, elements);
+			in.setFormat(format);
+
+			float[] vertices = null, normals = null, texCoords = null;
+			IntArrayList indices = null;
+			float[] extent = {Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+					Float.MAX_VALUE, -Float.MAX_VALUE};
+			int nVertices = 0;
+
+			for (Element element : elements) {
+				if (element.name.equals("vertex")) {
+					nVertices = element.count;
+					int[] slots = new int[element.properties.size()];
+					boolean hasNormals = false, hasTexCoords = false;
+					for (int i = 0; i < slots.length; i++) {
+						slots[i] = vertexSlot(element.properties.get(i));
+						hasNormals |= slots[i] >= 3 && slots[i] < 6;
+						hasTexCoords |= slots[i] >= 6;
+					}
+					vertices = new float[nVertices*3];
+					normals = new float[nVertices*3];
+					if (hasTexCoords)
+						texCoords = new float[nVertices*2];
+					for (int v = 0; v < nVertices; v++) {
+						for (int i = 0; i < slots.length; i++) {
+							Property property = element.properties.get(i);
+							if (property.countType != null) {
+								in.skipList(property);
+								continue;
+							}
+							int slot = slots[i];
+							if (slot < 0)
+								in.skip(property.type);
+							else if (slot < 3)
+								vertices[v*3+slot] = (float) in.read(property.type);
+							else if (slot < 6)
+								normals[v*3+slot-3] = (float) in.read(property.type);
+							else
+								texCoords[v*2+slot-6] = (float) in.read(property.type);
+						}
+						for (int k = 0; k < 3; k++) {
+							float x = vertices[v*3+k];
+							if (x < extent[k*2]) extent[k*2] = x;
+							if (x > extent[k*2+1]) extent[k*2+1] = x;
+						}
+					}
+					if (!hasNormals)
+						normals = null;
+				} else if (element.name.equals("face")) {
+					// Most scanned models consist of triangles only
+					indices = new IntArrayList(element.count*3);
+					for (int f = 0; f < element.count; f++) {
+						for (Property property : element.properties) {
+							if (property.countType == null) {
+								in.skip(property.type);
+							} else if (property.name.equals("vertex_indices") || property.name.equals("vertex_index")) {
+								int n = (int) in.read(property.countType);
+								if (n < 3) {
+									// Points and lines have no area
+									for (int i = 0; i < n; i++)
+										in.skip(property.type);
+									continue;
+								}
+								int first = readIndex(in, property.type, nVertices);
+								int previous = readIndex(in, property.type, nVertices);
+								for (int i = 2; i < n; i++) {
+									int current = readIndex(in, property.type, nVertices);
+									indices.add(first, previous, current);
+									previous = current;
+								}
+							} else {
+								in.skipList(property);
+							}
+						}
+					}
+				} else {
+					for (int i = 0; i < element.count; i++) {
+						for (Property property : element.properties) {
+							if (property.countType == null)
+								in.skip(property.type);
+							else
+								in.skipList(property);
+						}
+					}
+				}
+			}
+			if (vertices == null || indices == null)
+				throw new IOException("Ply file has no vertices or faces");
+
+			float[] normalization = ObjMeshBuilder.makeNormalization(extent, scale);
+			for (int v = 0; v < nVertices; v++) {
+				vertices[v*3] = normalization[0]*(vertices[v*3]+normalization[1]);
+				vertices[v*3+1] = normalization[0]*(vertices[v*3+1]+normalization[2]);
+				vertices[v*3+2] = normalization[0]*(vertices[v*3+2]+normalization[3]);
+			}
+			int[] indexArray = indices.size() == indices.elements().length ? indices.elements() : indices.toArray();
+			indices = null;
+			if (normals == null)
+				normals = makeNormals(vertices, indexArray);
+			return new Mesh(vertices, normals, texCoords, indexArray);
+		}
+	}
+
+	/**
+	 * @return 0-2 for the position, 3-5 for the normal, 6-7 for the tex. coord., -1 if not used
+	 */
+	private static int vertexSlot(Property property) {
+		switch (property.name) {
+		case "x": return 0;
+		case "y": return 1;
+		case "z": return 2;
+		case "nx": return 3;
+		case "ny": return 4;
+		case "nz": return 5;
+		case "u": case "s": case "texture_u": return 6;
+		case "v": case "t": case "texture_v": return 7;
+		default: return -1;
+		}
+	}
+
+	private static int readIndex(Input in, Type type, int nVertices) throws IOException {
+		long index = (long) in.read(type);
+		if (index < 0 || index >= nVertices)
+			throw new IOException("Vertex index " + index + " out of range");
+		return (int) index;
+	}
+
+	/**
+	 * Computes smooth vertex normals by summing up the unnormalized face normals, which
+	 * weights each face by its area.
+	 */
+	private static float[] makeNormals(float[] vertices, int[] indices) {
+		float[] normals = new float[vertices.length];
+		for (int i = 0; i < indices.length; i += 3) {
+			int a = indices[i]*3, b = indices[i+1]*3, c = indices[i+2]*3;
+			float d1x = vertices[b]-vertices[a], d1y = vertices[b+1]-vertices[a+1], d1z = vertices[b+2]-vertices[a+2];
+			float d2x = vertices[c]-vertices[a], d2y = vertices[c+1]-vertices[a+1], d2z = vertices[c+2]-vertices[a+2];
+			float nx = d1y*d2z - d1z*d2y;
+			float ny = d1z*d2x - d1x*d2z;
+			float nz = d1x*d2y - d1y*d2x;
+			for (int j = 0; j < 3; j++) {
+				int v = indices[i+j]*3;
+				normals[v] += nx;
+				normals[v+1] += ny;
+				normals[v+2] += nz;
+			}
+		}
+		for (int v = 0; v < normals.length; v += 3) {
+			float length = (float) Math.sqrt(normals[v]*normals[v] + normals[v+1]*normals[v+1] + normals[v+2]*normals[v+2]);
+			if (length > 0) {
+				normals[v] /= length;
+				normals[v+1] /= length;
+				normals[v+2] /= length;
+			}
+		}
+		return normals;
+	}
+
+	private static Format readHeader(Input in, List<Element> elements) throws IOException {
+		if (!"ply".equals(in.readLine()))
+			throw new IOException("Not a ply file");
+		Format format = null;
+		Element element = null;
+		String line;
+		while (!(line = in.readLine()).equals("end_header")) {
+			String[] tokens = line.trim().split("\\s+");
+			switch (tokens[0]) {
+			case "format":
+				if (tokens[1].equals("ascii")) format = Format.ASCII;
+				else if (tokens[1].equals("binary_little_endian")) format = Format.BINARY_LITTLE_ENDIAN;
+				else if (tokens[1].equals("binary_big_endian")) format = Format.BINARY_BIG_ENDIAN;
+				else throw new IOException("Unknown ply format " + tokens[1]);
+				break;
+			case "element":
+				element = new Element();
+				element.name = tokens[1];
+				element.count = Integer.parseInt(tokens[2]);
+				elements.add(element);
+				break;
+			case "property":
+				if (element == null)
+					throw new IOException("Ply property outside of an element");
+				Property property = new Property();
+				if (tokens[1].equals("list")) {
+					property.countType = Type.parse(tokens[2]);
+					property.type = Type.parse(tokens[3]);
+					property.name = tokens[4];
+				} else {
+					property.type = Type.parse(tokens[1]);
+					property.name = tokens[2];
+				}
+				element.properties.add(property);
+				break;
+			default:
+				// comment, obj_info
+				break;
+			}
+		}
+		if (format == null)
+			throw new IOException("Ply file has no format");
+		return format;
+	}
+
+	/**
+	 * Streams the file through a fixed size buffer. Binary values are read in the byte
+	 * order of the file, ascii values are parsed by hand without creating strings.
+	 */
+	private static class Input {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private boolean ascii;
+
+		Input(FileChannel channel) throws IOException {
+			this.channel = channel;
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.limit(0);
+		}
+
+		void setFormat(Format format) {
+			ascii = format == Format.ASCII;
+			buffer.order(format == Format.BINARY_BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/**
+		 * Makes sure at least n bytes are buffered.
+		 */
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() >= n)
+				return;
+			buffer.compact();
+			while (buffer.position() < n) {
+				if (channel.read(buffer) < 0) {
+					buffer.flip();
+					throw new IOException("Unexpected end of ply file");
+				}
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * @return the next byte, or -1 at the end of the file
+		 */
+		private int nextByte() throws IOException {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				int n;
+				while ((n = channel.read(buffer)) == 0);
+				buffer.flip();
+				if (n < 0)
+					return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = nextByte()) != '\n') {
+				if (c < 0)
+					throw new IOException("Unexpected end of ply header");
+				if (c != '\r')
+					line.append((char) c);
+			}
+			return line.toString();
+		}
+
+		double read(Type type) throws IOException {
+			if (ascii)
+				return readAscii();
+			ensure(type.size);
+			switch (type) {
+			case CHAR: return buffer.get();
+			case UCHAR: return buffer.get() & 0xff;
+			case SHORT: return buffer.getShort();
+			case USHORT: return buffer.getShort() & 0xffff;
+			case INT: return buffer.getInt();
+			case UINT: return buffer.getInt() & 0xffffffffL;
+			case FLOAT: return buffer.getFloat();
+			default: return buffer.getDouble();
+			}
+		}
+
+		void skip(Type type) throws IOException {
+			if (ascii) {
+				readAscii();
+			} else {
+				ensure(type.size);
+				buffer.position(buffer.position() + type.size);
+			}
+		}
+
+		void skipList(Property property) throws IOException {
+			int n = (int) read(property.countType);
+			for (int i = 0; i < n; i++)
+				skip(property.type);
+		}
+
+		/**
+		 * Parses the next whitespace separated number. Values with up to 18 significant
+		 * digits and small exponents are exact up to the final rounding to float.
+		 */
+		private double readAscii() throws IOException {
+			int c = nextByte();
+			while (c == ' ' || c == '\t' || c == '\r' || c == '\n')
+				c = nextByte();
+			if (c < 0)
+				throw new IOException("Unexpected end of ply file");
+			boolean negative = c == '-';
+			if (c == '-' || c == '+')
+				c = nextByte();
+			long mantissa = 0;
+			int exponent = 0, digits = 0;
+			boolean anyDigits = false;
+			while (c >= '0' && c <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa*10 + (c - '0');
+					if (mantissa != 0) digits++;
+				} else {
+					exponent++;
+				}
+				anyDigits = true;
+				c = nextByte();
+			}
+			if (c == '.') {
+				c = nextByte();
+				while (c >= '0' && c <= '9') {
+					if (digits < 18) {
+						mantissa = mantissa*10 + (c - '0');
+						if (mantissa != 0) digits++;
+						exponent--;
+					}
+					anyDigits = true;
+					c = nextByte();
+				}
+			}
+			if (!anyDigits)
+				throw new IOException("Malformed number in ply file");
+			if (c == 'e' || c == 'E') {
+				c = nextByte();
+				boolean negativeExponent = c == '-';
+				if (c == '-' || c == '+')
+					c = nextByte();
+				int e = 0;
+				while (c >= '0' && c <= '9') {
+					e = e*10 + (c - '0');
+					c = nextByte();
+				}
+				exponent += negativeExponent ? -e : e;
+			}
+			double value = exponent < 0 ? mantissa/Math.pow(10, -exponent) : mantissa*Math.pow(10, exponent);
+			return negative ? -value : value;
+		}
+	}
+}
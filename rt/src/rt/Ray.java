@@ -39,14 +39,31 @@ public class Ray {
 	 */
 	public Ray(Tuple3f origin, Tuple3f direction, float t, int depth, boolean epsilon)
 	{
-		Vector3f o = new Vector3f();
+		this.origin = new Vector3f();
+		this.direction = new Vector3f();
+		set(origin, direction, t, depth, epsilon);
+	}
+
+	/**
+	 * Makes a ray at the origin, to be {@link #set} later. Allows integrators to reuse rays.
+	 */
+	public Ray()
+	{
+		this.origin = new Vector3f();
+		this.direction = new Vector3f();
+	}
+
+	/**
+	 * Copies the given tuples into this ray, like the constructor does.
+	 */
+	public void set(Tuple3f origin, Tuple3f direction, float t, int depth, boolean epsilon)
+	{
 		if (epsilon) {
-			o.scaleAdd(1e-3f, direction, origin);
+			this.origin.scaleAdd(1e-3f, direction, origin);
 		} else
-			o.set(origin);
+			this.origin.set(origin);
+		this.direction.set(direction);
 		this.t = t;
-		this.origin = o; 
-		this.direction = new Vector3f(direction);
 		this.depth = depth;
 	}
 
@@ -0,0 +1,158 @@
+package rt;
+
+/**
+ * Up to {@link #MAX_SIZE} coherent rays, typically the camera rays of a block of
+ * neighbouring pixels, traced together through a {@link PacketIntersectable}. Origins,
+ * directions and inverse directions are kept as structure of arrays. Sets of rays
+ * in the packet are given as bit masks, bit i standing for ray i.
+ * <p>
+ * The packet also keeps the interval bounds of its origins and inverse directions. If
+ * the directions of all rays have the same sign on every axis, these bounds enclose the
+ * frustum of the packet, see {@link #hasFrustum()}.
+ */
+public class RayPacket {
+
+	public static final int MAX_SIZE = 64;
+
+	public final Ray[] rays = new Ray[MAX_SIZE];
+	public final float[] ox = new float[MAX_SIZE], oy = new float[MAX_SIZE], oz = new float[MAX_SIZE];
+	public final float[] dx = new float[MAX_SIZE], dy = new float[MAX_SIZE], dz = new float[MAX_SIZE];
+	public final float[] ix = new float[MAX_SIZE], iy = new float[MAX_SIZE], iz = new float[MAX_SIZE];
+
+	/**
+	 * Minimum and maximum origin and inverse direction over all rays, per axis.
+	 */
+	public final float[] originMin = new float[3], originMax = new float[3];
+	public final float[] inverseMin = new float[3], inverseMax = new float[3];
+
+	private int size;
+	private boolean frustum;
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Adds a ray, which must not be changed while the packet is in use.
+	 */
+	public void add(Ray r) {
+		if (size == MAX_SIZE)
+			throw new IllegalStateException("Packet is full");
+		int i = size++;
+		rays[i] = r;
+		ox[i] = r.origin.x;
+		oy[i] = r.origin.y;
+		oz[i] = r.origin.z;
+		dx[i] = r.direction.x;
+		dy[i] = r.direction.y;
+		dz[i] = r.direction.z;
+		ix[i] = 1/dx[i];
+		iy[i] = 1/dy[i];
+		iz[i] = 1/dz[i];
+		if (i == 0) {
+			frustum = true;
+			set(originMin, ox[i], oy[i], oz[i]);
+			set(originMax, ox[i], oy[i], oz[i]);
+			set(inverseMin, ix[i], iy[i], iz[i]);
+			set(inverseMax, ix[i], iy[i], iz[i]);
+		} else {
+			grow(0, ox[i], ix[i]);
+			grow(1, oy[i], iy[i]);
+			grow(2, oz[i], iz[i]);
+		}
+		frustum = frustum && isRegular(ix[i], ix[0]) && isRegular(iy[i], iy[0]) && isRegular(iz[i], iz[0]);
+	}
+
+	private static void set(float[] a, float x, float y, float z) {
+		a[0] = x;
+		a[1] = y;
+		a[2] = z;
+	}
+
+	private void grow(int axis, float o, float inverse) {
+		originMin[axis] = Math.min(originMin[axis], o);
+		originMax[axis] = Math.max(originMax[axis], o);
+		inverseMin[axis] = Math.min(inverseMin[axis], inverse);
+		inverseMax[axis] = Math.max(inverseMax[axis], inverse);
+	}
+
+	/**
+	 * @return true if the inverse direction is finite and has the same sign as the one of the first ray
+	 */
+	private static boolean isRegular(float inverse, float other) {
+		return !Float.isInfinite(inverse) && !Float.isNaN(inverse) && (inverse > 0) == (other > 0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the mask of all rays in the packet
+	 */
+	public long getMask() {
+		return size == MAX_SIZE ? -1L : (1L << size) - 1;
+	}
+
+	/**
+	 * @return true if the directions of all rays have the same sign on each axis, so
+	 * that the interval bounds can be used to cull boxes for the whole packet
+	 */
+	public boolean hasFrustum() {
+		return frustum;
+	}
+
+	/**
+	 * Conservative interval arithmetic test of the whole packet against a box, see Boulos
+	 * et al., "Geometric and Arithmetic Culling Methods for Entire Ray Packets". Uses the
+	 * same float operations as the slab test of single rays, so a box is only rejected if
+	 * every ray of the packet misses it, lies beyond tMax or behind the box.
+	 * Always returns false if the packet has no frustum.
+	 *
+	 * @param tMax the largest closest hit distance of the rays in the packet
+	 */
+	public boolean missesBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float tMax) {
+		if (!frustum)
+			return false;
+		float near = Math.max(Math.max(nearBound(0, minX, maxX), nearBound(1, minY, maxY)), nearBound(2, minZ, maxZ));
+		float far = Math.min(Math.min(farBound(0, minX, maxX), farBound(1, minY, maxY)), farBound(2, minZ, maxZ));
+		return near > far || far < 0 || near > tMax;
+	}
+
+	/**
+	 * @return lower bound of the distances at which the rays enter the slab of an axis
+	 */
+	private float nearBound(int axis, float min, float max) {
+		float entry = inverseMin[axis] > 0 ? min : max;
+		return lowerProduct(entry - originMax[axis], entry - originMin[axis], inverseMin[axis], inverseMax[axis]);
+	}
+
+	/**
+	 * @return upper bound of the distances at which the rays leave the slab of an axis
+	 */
+	private float farBound(int axis, float min, float max) {
+		float exit = inverseMin[axis] > 0 ? max : min;
+		return upperProduct(exit - originMax[axis], exit - originMin[axis], inverseMin[axis], inverseMax[axis]);
+	}
+
+	private static float lowerProduct(float a0, float a1, float b0, float b1) {
+		return Math.min(Math.min(a0*b0, a0*b1), Math.min(a1*b0, a1*b1));
+	}
+
+	private static float upperProduct(float a0, float a1, float b0, float b1) {
+		return Math.max(Math.max(a0*b0, a0*b1), Math.max(a1*b0, a1*b1));
+	}
+
+	/**
+	 * Intersects the rays of the packet with any intersectable, as a packet if it is a
+	 * {@link PacketIntersectable} and ray by ray otherwise.
+	 */
+	public static void intersect(Intersectable intersectable, RayPacket packet, HitRecord[] hits) {
+		if (intersectable instanceof PacketIntersectable) {
+			((PacketIntersectable) intersectable).intersect(packet, hits);
+		} else {
+			for (int i = 0; i < packet.size(); i++)
+				hits[i] = intersectable.intersect(packet.rays[i]);
+		}
+	}
+}
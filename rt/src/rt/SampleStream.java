@@ -0,0 +1,104 @@
+package rt;
+
+/**
+ * The random numbers of one camera sample, made by the {@link Sampler} of its pixel.
+ * Integrators draw all of their random decisions from it. The dimensions have a fixed
+ * layout, so a low discrepancy sampler stratifies each decision over the samples of a
+ * pixel:
+ * <ul>
+ * <li>0, 1: position in the pixel, made by {@link Integrator#makePixelSamples}</li>
+ * <li>{@link #LENS}, {@link #LENS}+1: position on the lens</li>
+ * <li>{@link #TIME}: time</li>
+ * <li>then {@link #BOUNCE_DIMENSIONS} per bounce, from {@link #FIRST_BOUNCE} on, see
+ * {@link #get(int, int)}</li>
+ * </ul>
+ * Decisions that take two dimensions start at an even dimension, so they are pairs of
+ * a sampler that stratifies pairs of dimensions.
+ */
+public class SampleStream {
+
+	public static final int LENS = 2;
+	public static final int TIME = 4;
+	public static final int FIRST_BOUNCE = 6;
+	public static final int BOUNCE_DIMENSIONS = 8;
+
+	// Dimensions of a bounce, relative to its first dimension
+	/** Two dimensions, the position on the light source of next event estimation */
+	public static final int LIGHT_POSITION = 0;
+	/** Two dimensions, the sample of the BSDF for the next direction */
+	public static final int BSDF = 2;
+	/** The light source of next event estimation */
+	public static final int LIGHT_SELECTION = 4;
+	/** Russian roulette for the path */
+	public static final int RUSSIAN_ROULETTE = 5;
+	/** Russian roulette for the shadow ray of next event estimation */
+	public static final int SHADOW_RUSSIAN_ROULETTE = 6;
+
+	private Sampler sampler;
+	private long pixel;
+	private int index;
+
+	/**
+	 * @return the number a {@link Sampler} is initialized with for pixel [x,y], which
+	 * keeps the position of the pixel, see {@link Sampler#init}
+	 */
+	public static long pixel(int x, int y)
+	{
+		return ((long) y << 32) | (x & 0xffffffffL);
+	}
+
+	/**
+	 * Makes the stream of sample index of the pixel, with {@link Sampler#sample}.
+	 */
+	public void set(Sampler sampler, long pixel, int index)
+	{
+		this.sampler = sampler;
+		this.pixel = pixel;
+		this.index = index;
+	}
+
+	/**
+	 * @return the index of the sample in its pixel
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @param pixelSample the position in the pixel, see {@link Integrator#makePixelSamples}
+	 * @return the sample for {@link Camera#makeWorldSpaceRay}, the position in the pixel
+	 * followed by the lens and time dimensions of the stream
+	 */
+	public float[] makeCameraSample(float[] pixelSample)
+	{
+		return new float[] {pixelSample[0], pixelSample[1], get(LENS), get(LENS + 1), get(TIME)};
+	}
+
+	/**
+	 * @return the given dimension of the sample, in [0,1)
+	 */
+	public float get(int dimension)
+	{
+		return sampler.sample(pixel, index, dimension);
+	}
+
+	/**
+	 * @param bounce the bounce of the path, 0 at the first hit
+	 * @param dimension the dimension in the bounce, e.g. {@link #BSDF}
+	 * @return the dimension of the bounce, in [0,1)
+	 */
+	public float get(int bounce, int dimension)
+	{
+		return get(FIRST_BOUNCE + bounce*BOUNCE_DIMENSIONS + dimension);
+	}
+
+	/**
+	 * Fills result with consecutive dimensions of the bounce, starting at the given one.
+	 */
+	public void get(int bounce, int dimension, float[] result)
+	{
+		for (int i = 0; i < result.length; i++)
+			result[i] = get(bounce, dimension + i);
+	}
+}
@@ -20,7 +20,23 @@ public interface Sampler {
 	public float[][] makeSamples(int n, int d);
 
 	/**
-	 * Initializes a random sampler with the given number, so results are deterministic
+	 * Initializes a random sampler with the given number, so results are deterministic.
+	 * {@link rt.Main} initializes the sampler with {@link SampleStream#pixel}, before it
+	 * makes the samples of the pixel, so samplers that work in screen space know its
+	 * position.
 	 */
 	public void init(long i);
+
+	/**
+	 * Returns dimension d of sample i of a pixel, for the {@link SampleStream} of a camera
+	 * sample. Does not depend on {@link #init}, so streams of several pixels can be used
+	 * at once. Samplers that only stratify the first dimensions return random numbers for
+	 * the others.
+	 *
+	 * @param pixel the number the sampler is initialized with for the pixel
+	 * @param i the index of the sample in the pixel
+	 * @param d the dimension, see {@link SampleStream} for the layout
+	 * @return the sample in [0,1)
+	 */
+	public float sample(long pixel, int i, int d);
 }
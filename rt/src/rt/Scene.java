@@ -55,8 +55,14 @@ public abstract class Scene {
 		return tonemapper;
 	}
 	
+	/**
+	 * Called once before rendering. Builds the light selection table of the
+	 * {@link LightList}, scenes that need more preparation override it.
+	 */
 	public void prepare()
 	{
+		if (lightList != null)
+			lightList.prepare();
 	}
 
 }
@@ -43,6 +43,20 @@ public class Spectrum {
 		this.b = f;
 	}
 
+	public void set(Spectrum s)
+	{
+		r = s.r;
+		g = s.g;
+		b = s.b;
+	}
+
+	public void set(float r, float g, float b)
+	{
+		this.r = r;
+		this.g = g;
+		this.b = b;
+	}
+
 	public void mult(float t)
 	{
 		r = r*t;
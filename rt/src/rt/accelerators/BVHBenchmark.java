@@ -0,0 +1,99 @@
+package rt.accelerators;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import rt.FastObjReader;
+import rt.Intersectable;
+import rt.PlyReader;
+import rt.Ray;
+import rt.Timer;
+import rt.intersectables.Mesh;
+
+/**
+ * Compares memory use and ray throughput of the mesh accelerators. Each mesh is
+ * normalized to the unit cube and shot at with the same random rays, from a sphere around
+ * the mesh towards points inside of it.
+ * <p>
+ * Usage: <code>java rt.accelerators.BVHBenchmark [mesh files]</code>, .obj and .ply files
+ * are supported. Without arguments the meshes of the test scenes, the dragon and the
+ * statuette are used, if present.
+ */
+public class BVHBenchmark {
+
+	private static final int NR_RAYS = 1000000;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0)
+			args = new String[] {"../obj/teapot.obj", "../obj/fireman.obj", "../obj/male.obj",
+					"../obj/dragon.obj", "../obj/xyzrgb_statuette.ply"};
+		for (String fileName : args) {
+			if (!new File(fileName).exists()) {
+				System.out.printf("%s not found, skipped.\n", fileName);
+				continue;
+			}
+			Mesh mesh = fileName.endsWith(".ply") ? PlyReader.read(fileName, 1.f) : FastObjReader.read(fileName, 1.f);
+			System.out.printf("%s: %d triangles, %d KB of vertex and index data\n", fileName, mesh.size(),
+					(mesh.vertices.length*4L*2 + mesh.indices.length*4L)/1024);
+
+			Timer timer = new Timer();
+			BSPAccelerator bsp = new BSPAccelerator(mesh);
+			// Its nodes are objects, so there is no simple memory figure
+			report("BSPAccelerator", bsp, -1, -1, timer.timeElapsed());
+			bsp = null;
+
+			timer.reset();
+			MeshBVH bvh = new MeshBVH(mesh);
+			long buildTime = timer.timeElapsed();
+			long triangleList = mesh.size()*4L;
+			report("MeshBVH", bvh, bvh.getNumberOfNodes()*(long) MeshBVH.NODE_SIZE, triangleList, buildTime);
+			for (int bits : new int[] {16, 8}) {
+				timer.reset();
+				QuantizedBVH quantized = new QuantizedBVH(bvh, bits);
+				report("QuantizedBVH " + bits + " bit", quantized, quantized.getNodeBytes(), triangleList,
+						buildTime + timer.timeElapsed());
+			}
+			timer.reset();
+			WideBVH wide = new WideBVH(bvh);
+			report("WideBVH", wide, wide.getNodeBytes(), triangleList, buildTime + timer.timeElapsed());
+		}
+	}
+
+	private static void report(String name, Intersectable accelerator, long nodeBytes, long triangleListBytes, long buildTime) {
+		// Warm up, then measure
+		trace(accelerator, NR_RAYS/10);
+		Timer timer = new Timer();
+		int hits = trace(accelerator, NR_RAYS);
+		long time = Math.max(timer.timeElapsed(), 1);
+		String memory = nodeBytes < 0 ? String.format("%42s", "") : String.format("nodes %8d KB, triangle list %6d KB,",
+				nodeBytes/1024, triangleListBytes/1024);
+		System.out.printf("  %-18s %s build %5d ms, %6.2f Mrays/s (%d hits)\n",
+				name, memory, buildTime, NR_RAYS/(time*1000.f), hits);
+	}
+
+	private static int trace(Intersectable accelerator, int nRays) {
+		Random random = new Random(17);
+		int hits = 0;
+		for (int i = 0; i < nRays; i++) {
+			Vector3f origin = randomPoint(random);
+			origin.normalize();
+			origin.scale(3);
+			Vector3f direction = randomPoint(random);
+			direction.sub(origin);
+			if (accelerator.intersect(new Ray(origin, direction, 0)) != null)
+				hits++;
+		}
+		return hits;
+	}
+
+	private static Vector3f randomPoint(Random random) {
+		Vector3f p;
+		do {
+			p = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, random.nextFloat()*2-1);
+		} while (p.lengthSquared() > 1 || p.lengthSquared() == 0);
+		return p;
+	}
+}
@@ -0,0 +1,182 @@
+package rt.accelerators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.vecmath.Point2f;
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import com.google.common.collect.Lists;
+
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.Ray;
+import rt.intersectables.Aggregate;
+import util.StaticVecmath;
+import util.StaticVecmath.Axis;
+
+/**
+ * Builds a {@link BSPAccelerator} for an aggregate only when a ray first enters its
+ * bounding box. Objects that are never hit, e.g. because they are off-screen or occluded,
+ * are never built, and rendering can start right after the scene is set up.
+ * <p>
+ * With refinement, large aggregates are not built at once but split in two halves along
+ * the longest axis, each again wrapped in a lazy accelerator. Only the parts that rays
+ * actually reach are built then.
+ * <p>
+ * The accelerator is built by the first thread that needs it, all other threads wait
+ * for it and use the same one.
+ */
+public class LazyAccelerator implements Intersectable {
+
+	private final Aggregate aggregate;
+	private final BoundingBox boundingBox;
+	private final int refineThreshold;
+	private volatile Intersectable accelerator;
+
+	/**
+	 * Builds a single accelerator for the whole aggregate on first use.
+	 */
+	public LazyAccelerator(Aggregate aggregate) {
+		this(aggregate, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param refineThreshold aggregates with more primitives than this are split in two
+	 * lazily built halves instead of being built at once
+	 */
+	public LazyAccelerator(Aggregate aggregate, int refineThreshold) {
+		this.aggregate = aggregate;
+		this.boundingBox = aggregate.getBoundingBox();
+		this.refineThreshold = Math.max(refineThreshold, 1);
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		if (boundingBox != null) {
+			Point2f ts = boundingBox.intersectBB(r);
+			if (ts == null || ts.y < 0)
+				return null;
+		}
+		return getAccelerator().intersect(r);
+	}
+
+	/**
+	 * @return true if the accelerator was built already
+	 */
+	public boolean isBuilt() {
+		return accelerator != null;
+	}
+
+	private Intersectable getAccelerator() {
+		Intersectable a = accelerator;
+		if (a == null) {
+			synchronized (this) {
+				a = accelerator;
+				if (a == null) {
+					a = build();
+					accelerator = a;
+				}
+			}
+		}
+		return a;
+	}
+
+	private Intersectable build() {
+		if (aggregate.size() <= refineThreshold || boundingBox == null)
+			return new BSPAccelerator(aggregate);
+
+		List<Intersectable> primitives = Lists.newArrayList(aggregate.iterator());
+		final Axis axis = longestAxis(boundingBox);
+		Collections.sort(primitives, new Comparator<Intersectable>() {
+			@Override
+			public int compare(Intersectable a, Intersectable b) {
+				return Float.compare(StaticVecmath.getDimension(a.getBoundingBox().getCenter(), axis),
+						StaticVecmath.getDimension(b.getBoundingBox().getCenter(), axis));
+			}
+		});
+		int half = primitives.size()/2;
+		return new Split(new LazyAccelerator(new PrimitiveList(primitives.subList(0, half)), refineThreshold),
+				new LazyAccelerator(new PrimitiveList(primitives.subList(half, primitives.size())), refineThreshold));
+	}
+
+	private static Axis longestAxis(BoundingBox b) {
+		Vector3f diagonal = b.getDiagonal();
+		if (diagonal.x >= diagonal.y && diagonal.x >= diagonal.z)
+			return Axis.x;
+		return diagonal.y >= diagonal.z ? Axis.y : Axis.z;
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		return boundingBox;
+	}
+
+	/**
+	 * Two lazily built halves of a refined aggregate.
+	 */
+	private static class Split implements Intersectable {
+
+		private final LazyAccelerator left, right;
+
+		Split(LazyAccelerator left, LazyAccelerator right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public HitRecord intersect(Ray r) {
+			HitRecord leftHit = left.intersect(r);
+			HitRecord rightHit = right.intersect(r);
+			if (leftHit == null)
+				return rightHit;
+			if (rightHit == null)
+				return leftHit;
+			return leftHit.t < rightHit.t ? leftHit : rightHit;
+		}
+
+		@Override
+		public BoundingBox getBoundingBox() {
+			return null;
+		}
+	}
+
+	/**
+	 * The primitives of one half, with their combined bounding box.
+	 */
+	private static class PrimitiveList extends Aggregate {
+
+		private final List<Intersectable> primitives;
+		private final BoundingBox boundingBox;
+
+		PrimitiveList(List<Intersectable> primitives) {
+			this.primitives = new ArrayList<Intersectable>(primitives);
+			Point3f min = new Point3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+			Point3f max = new Point3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+			for (Intersectable i : primitives) {
+				StaticVecmath.elementwiseMin(min, i.getBoundingBox().min);
+				StaticVecmath.elementwiseMax(max, i.getBoundingBox().max);
+			}
+			this.boundingBox = new BoundingBox(min, max);
+		}
+
+		@Override
+		public int size() {
+			return primitives.size();
+		}
+
+		@Override
+		public Iterator<Intersectable> iterator() {
+			return primitives.iterator();
+		}
+
+		@Override
+		public BoundingBox getBoundingBox() {
+			return boundingBox;
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package rt.accelerators;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import javax.vecmath.Tuple3f;
+import javax.vecmath.Vector3f;
+
+import rt.HitRecord;
+import rt.LightGeometry;
+import rt.LightList;
+import util.MyMath;
+
+/**
+ * A bounding volume hierarchy over light sources, to select a light for a shading point
+ * with a probability that roughly follows its contribution, following Conty Estevez and
+ * Kulla, "Importance Sampling of Many Lights with Adaptive Tree Splitting", HPG 2018, as
+ * done in pbrt-v4. Each node bounds the positions, the emission directions and the power
+ * of its lights. Selection walks down from the root, choosing a child with probability
+ * proportional to its importance for the shading point, so it takes time logarithmic in
+ * the number of lights.
+ * <p>
+ * The nodes are stored as flat arrays with {@link #NODE_SIZE} floats per node:
+ * <pre>
+ * minX, minY, minZ, maxX, maxY, maxZ, axisX, axisY, axisZ, cosThetaO, cosThetaE, power
+ * </pre>
+ * The emission directions are the cone of half angle thetaO around the axis, widened by
+ * thetaE, the angle beyond each direction up to which light is emitted. The left child of
+ * an inner node directly follows it, {@link #children} holds the index of the right child,
+ * or -1 - i for a leaf with light i.
+ * <p>
+ * The bounds are found with {@link LightGeometry#getBoundingBox} and a sample of the
+ * light: lights with a normal are taken to be one-sided planar emitters like
+ * {@link rt.lightsources.AreaLight}, the others to emit in all directions.
+ */
+public class LightTree {
+
+	public static final int NODE_SIZE = 12;
+
+	private static final int NR_BINS = 12;
+	// From this depth on, splits are made at the median, so no path is longer than 64 nodes
+	private static final int MAX_SAOH_DEPTH = 32;
+
+	private final List<LightGeometry> lights;
+	private final float[] nodes;
+	private final int[] children;
+	// The path to the leaf of each light, bit d is 1 if it is in the right child at depth d
+	private final long[] paths;
+	private final IdentityHashMap<LightGeometry, Integer> indices;
+
+	/**
+	 * Builds the tree with splits by the surface area orientation heuristic.
+	 */
+	public LightTree(List<LightGeometry> lights) {
+		this.lights = lights;
+		int n = lights.size();
+		nodes = new float[Math.max(2*n - 1, 0)*NODE_SIZE];
+		children = new int[Math.max(2*n - 1, 0)];
+		paths = new long[n];
+		indices = new IdentityHashMap<>();
+		float[] leaves = new float[n*NODE_SIZE];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			indices.put(lights.get(i), i);
+			makeLeaf(lights.get(i), leaves, i*NODE_SIZE);
+		}
+		if (n > 0)
+			build(leaves, order, 0, n, 0, 0, 0);
+	}
+
+	/**
+	 * @return the light selected for the shading point, or null if the tree finds that no
+	 * light can illuminate it. probability[0] receives the probability of the selection.
+	 *
+	 * @param random uniform random number in [0,1)
+	 * @param probability an array of at least one element
+	 */
+	public LightGeometry sample(float random, HitRecord hit, float[] probability) {
+		if (lights.isEmpty() || importance(0, hit.position, hit.normal) == 0)
+			return null;
+		float p = 1;
+		int node = 0;
+		while (children[node] >= 0) {
+			float left = importance(node + 1, hit.position, hit.normal);
+			float right = importance(children[node], hit.position, hit.normal);
+			if (left + right == 0)
+				return null;
+			float pLeft = left/(left + right);
+			if (random < pLeft) {
+				random = Math.min(random/pLeft, 0x1.fffffep-1f);
+				p *= pLeft;
+				node = node + 1;
+			} else {
+				random = Math.min((random - pLeft)/(1 - pLeft), 0x1.fffffep-1f);
+				p *= 1 - pLeft;
+				node = children[node];
+			}
+		}
+		probability[0] = p;
+		return lights.get(-1 - children[node]);
+	}
+
+	/**
+	 * @return the probability that {@link #sample} selects the light for the shading point
+	 */
+	public float getProbability(LightGeometry light, HitRecord hit) {
+		Integer i = indices.get(light);
+		if (i == null || importance(0, hit.position, hit.normal) == 0)
+			return 0;
+		long path = paths[i];
+		float p = 1;
+		int node = 0;
+		for (int depth = 0; children[node] >= 0; depth++) {
+			float left = importance(node + 1, hit.position, hit.normal);
+			float right = importance(children[node], hit.position, hit.normal);
+			if (left + right == 0)
+				return 0;
+			if ((path & (1L << depth)) == 0) {
+				p *= left/(left + right);
+				node = node + 1;
+			} else {
+				p *= right/(left + right);
+				node = children[node];
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * The importance of the lights of a node for a point, an upper bound of their power
+	 * times the cosines at both ends, divided by the squared distance. Zero if none of the
+	 * lights emits towards the point or the point does not face any of them.
+	 *
+	 * @param n the normal at the point, both sides of the point count
+	 */
+	private float importance(int node, Tuple3f p, Vector3f n) {
+		int o = node*NODE_SIZE;
+		float cx = (nodes[o] + nodes[o+3])/2, cy = (nodes[o+1] + nodes[o+4])/2, cz = (nodes[o+2] + nodes[o+5])/2;
+		float dx = nodes[o+3] - nodes[o], dy = nodes[o+4] - nodes[o+1], dz = nodes[o+5] - nodes[o+2];
+		float r2 = (dx*dx + dy*dy + dz*dz)/4;
+		float wx = p.x - cx, wy = p.y - cy, wz = p.z - cz;
+		float d2 = wx*wx + wy*wy + wz*wz;
+		float d = MyMath.sqrt(d2);
+		if (d > 0) {
+			wx /= d;
+			wy /= d;
+			wz /= d;
+		}
+		// The points inside the bounding sphere see the node in all directions
+		float cosB = d2 > r2 ? MyMath.sqrt(1 - r2/d2) : -1;
+		float sinB = sqrt1m(cosB);
+
+		// The smallest angle between the emission cone and the direction to the point,
+		// less the angle of the bounding sphere
+		float cosW = nodes[o+6]*wx + nodes[o+7]*wy + nodes[o+8]*wz;
+		float sinW = sqrt1m(cosW);
+		float cosO = nodes[o+9], sinO = sqrt1m(cosO);
+		float cosX = cosSub(sinW, cosW, sinO, cosO);
+		float sinX = sinSub(sinW, cosW, sinO, cosO);
+		float cosTheta = cosSub(sinX, cosX, sinB, cosB);
+		if (cosTheta <= nodes[o+10])
+			return 0;
+
+		float cosI = Math.abs(n.x*wx + n.y*wy + n.z*wz);
+		float cosThetaI = cosSub(sqrt1m(cosI), cosI, sinB, cosB);
+		return Math.max(nodes[o+11]*cosTheta*cosThetaI/Math.max(d2, r2), 0);
+	}
+
+	/**
+	 * @return cos(max(0, a - b)) from the sines and cosines of a and b in [0, pi]
+	 */
+	private static float cosSub(float sinA, float cosA, float sinB, float cosB) {
+		return cosA > cosB ? 1 : cosA*cosB + sinA*sinB;
+	}
+
+	/**
+	 * @return sin(max(0, a - b)) from the sines and cosines of a and b in [0, pi]
+	 */
+	private static float sinSub(float sinA, float cosA, float sinB, float cosB) {
+		return cosA > cosB ? 0 : sinA*cosB - cosA*sinB;
+	}
+
+	private static float sqrt1m(float cos) {
+		return MyMath.sqrt(Math.max(1 - cos*cos, 0));
+	}
+
+	private static void makeLeaf(LightGeometry light, float[] leaves, int o) {
+		HitRecord h = light.sample(new float[] {0.5f, 0.5f});
+		BoundingBox box = light.getBoundingBox();
+		if (box != null) {
+			leaves[o] = box.min.x; leaves[o+1] = box.min.y; leaves[o+2] = box.min.z;
+			leaves[o+3] = box.max.x; leaves[o+4] = box.max.y; leaves[o+5] = box.max.z;
+		} else {
+			leaves[o] = leaves[o+3] = h.position.x;
+			leaves[o+1] = leaves[o+4] = h.position.y;
+			leaves[o+2] = leaves[o+5] = h.position.z;
+		}
+		if (h.normal != null) {
+			Vector3f axis = new Vector3f(h.normal);
+			axis.normalize();
+			leaves[o+6] = axis.x; leaves[o+7] = axis.y; leaves[o+8] = axis.z;
+			leaves[o+9] = 1;
+		} else {
+			leaves[o+8] = 1;
+			leaves[o+9] = -1;
+		}
+		leaves[o+10] = 0;
+		leaves[o+11] = LightList.estimatePower(light);
+	}
+
+	/**
+	 * Builds the node for the lights order[from, to) at the given index.
+	 *
+	 * @return the index after the last node of the subtree
+	 */
+	private int build(final float[] leaves, Integer[] order, int from, int to, int node, int depth, long path) {
+		if (to - from == 1) {
+			int light = order[from];
+			System.arraycopy(leaves, light*NODE_SIZE, nodes, node*NODE_SIZE, NODE_SIZE);
+			children[node] = -1 - light;
+			paths[light] = path;
+			return node + 1;
+		}
+		float[] bounds = new float[NODE_SIZE];
+		float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+		float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		for (int i = from; i < to; i++) {
+			if (i == from)
+				System.arraycopy(leaves, order[i]*NODE_SIZE, bounds, 0, NODE_SIZE);
+			else
+				union(bounds, 0, leaves, order[i]*NODE_SIZE, bounds, 0);
+			for (int k = 0; k < 3; k++) {
+				float c = center(leaves, order[i], k);
+				min[k] = Math.min(min[k], c);
+				max[k] = Math.max(max[k], c);
+			}
+		}
+
+		int mid = depth < MAX_SAOH_DEPTH ? partition(leaves, order, from, to, bounds, min, max) : from;
+		if (mid == from || mid == to) {
+			int axis = 0;
+			for (int k = 1; k < 3; k++)
+				if (max[k] - min[k] > max[axis] - min[axis])
+					axis = k;
+			final int k = axis;
+			Arrays.sort(order, from, to, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Float.compare(center(leaves, a, k), center(leaves, b, k));
+				}
+			});
+			mid = (from + to)/2;
+		}
+		int right = build(leaves, order, from, mid, node + 1, depth + 1, path);
+		children[node] = right;
+		int end = build(leaves, order, mid, to, right, depth + 1, path | (1L << depth));
+		System.arraycopy(bounds, 0, nodes, node*NODE_SIZE, NODE_SIZE);
+		return end;
+	}
+
+	/**
+	 * Splits the lights with the surface area orientation heuristic of Conty Estevez and
+	 * Kulla: the lights are put into bins along each axis, and the boundary between bins
+	 * with the lowest {@link #cost} of the two sides is chosen.
+	 *
+	 * @return the index of the first light of the right side in the reordered lights, from
+	 * or to if no split was found
+	 */
+	private static int partition(float[] leaves, Integer[] order, int from, int to, float[] bounds, float[] min, float[] max) {
+		float bestCost = Float.POSITIVE_INFINITY;
+		int bestAxis = -1, bestBin = 0;
+		float[] bins = new float[NR_BINS*NODE_SIZE];
+		boolean[] empty = new boolean[NR_BINS];
+		float[] below = new float[NR_BINS*NODE_SIZE];
+		float[] above = new float[NODE_SIZE];
+		for (int k = 0; k < 3; k++) {
+			if (max[k] == min[k])
+				continue;
+			Arrays.fill(empty, true);
+			for (int i = from; i < to; i++) {
+				int b = bin(leaves, order[i], k, min[k], max[k]);
+				if (empty[b])
+					System.arraycopy(leaves, order[i]*NODE_SIZE, bins, b*NODE_SIZE, NODE_SIZE);
+				else
+					union(bins, b*NODE_SIZE, leaves, order[i]*NODE_SIZE, bins, b*NODE_SIZE);
+				empty[b] = false;
+			}
+			// below holds the union of the bins up to each bin, above the ones after it
+			boolean emptyBelow = true;
+			for (int b = 0; b < NR_BINS; b++) {
+				if (b > 0)
+					System.arraycopy(below, (b - 1)*NODE_SIZE, below, b*NODE_SIZE, NODE_SIZE);
+				if (!empty[b]) {
+					if (emptyBelow)
+						System.arraycopy(bins, b*NODE_SIZE, below, b*NODE_SIZE, NODE_SIZE);
+					else
+						union(below, b*NODE_SIZE, bins, b*NODE_SIZE, below, b*NODE_SIZE);
+					emptyBelow = false;
+				}
+			}
+			boolean emptyAbove = true;
+			float kr = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]))/(bounds[k+3] - bounds[k]);
+			for (int b = NR_BINS - 1; b > 0; b--) {
+				if (!empty[b]) {
+					if (emptyAbove)
+						System.arraycopy(bins, b*NODE_SIZE, above, 0, NODE_SIZE);
+					else
+						union(above, 0, bins, b*NODE_SIZE, above, 0);
+					emptyAbove = false;
+				}
+				float cost = kr*(cost(below, (b - 1)*NODE_SIZE) + cost(above, 0));
+				if (!emptyAbove && cost < bestCost) {
+					bestCost = cost;
+					bestAxis = k;
+					bestBin = b;
+				}
+			}
+		}
+		if (bestAxis < 0)
+			return from;
+		int mid = from;
+		for (int i = from; i < to; i++) {
+			if (bin(leaves, order[i], bestAxis, min[bestAxis], max[bestAxis]) < bestBin) {
+				Integer light = order[i];
+				order[i] = order[mid];
+				order[mid++] = light;
+			}
+		}
+		return mid;
+	}
+
+	/**
+	 * The cost of a node in the surface area orientation heuristic, its power times the
+	 * surface area of its bounds times the solid angle of its emission directions, weighted
+	 * by the cosine of the angle to the cone.
+	 */
+	private static float cost(float[] node, int o) {
+		float dx = node[o+3] - node[o], dy = node[o+4] - node[o+1], dz = node[o+5] - node[o+2];
+		float area = 2*(dx*dy + dx*dz + dy*dz);
+		float thetaO = (float) Math.acos(node[o+9]), thetaE = (float) Math.acos(node[o+10]);
+		float thetaW = Math.min(thetaO + thetaE, MyMath.PI);
+		float sinO = sqrt1m(node[o+9]);
+		float omega = 2*MyMath.PI*(1 - node[o+9]) + MyMath.PI/2*(2*thetaW*sinO
+				- (float) Math.cos(thetaO - 2*thetaW) - 2*thetaO*sinO + node[o+9]);
+		return node[o+11]*omega*area;
+	}
+
+	private static float center(float[] leaves, int light, int k) {
+		return (leaves[light*NODE_SIZE + k] + leaves[light*NODE_SIZE + k + 3])/2;
+	}
+
+	private static int bin(float[] leaves, int light, int k, float min, float max) {
+		return Math.min((int) (NR_BINS*(center(leaves, light, k) - min)/(max - min)), NR_BINS - 1);
+	}
+
+	/**
+	 * Writes the union of the bounds at a[oa] and b[ob] to result[o], which may be one of
+	 * them.
+	 */
+	private static void union(float[] a, int oa, float[] b, int ob, float[] result, int o) {
+		for (int k = 0; k < 3; k++) {
+			result[o+k] = Math.min(a[oa+k], b[ob+k]);
+			result[o+k+3] = Math.max(a[oa+k+3], b[ob+k+3]);
+		}
+		result[o+10] = Math.min(a[oa+10], b[ob+10]);
+		result[o+11] = a[oa+11] + b[ob+11];
+
+		// The union of the cones
+		float thetaA = (float) Math.acos(a[oa+9]), thetaB = (float) Math.acos(b[ob+9]);
+		float cosD = a[oa+6]*b[ob+6] + a[oa+7]*b[ob+7] + a[oa+8]*b[ob+8];
+		float thetaD = (float) Math.acos(Math.max(-1, Math.min(1, cosD)));
+		if (Math.min(thetaD + thetaB, MyMath.PI) <= thetaA) {
+			System.arraycopy(a, oa+6, result, o+6, 4);
+			return;
+		}
+		if (Math.min(thetaD + thetaA, MyMath.PI) <= thetaB) {
+			System.arraycopy(b, ob+6, result, o+6, 4);
+			return;
+		}
+		float thetaO = (thetaA + thetaD + thetaB)/2;
+		Vector3f wa = new Vector3f(a[oa+6], a[oa+7], a[oa+8]);
+		Vector3f wb = new Vector3f(b[ob+6], b[ob+7], b[ob+8]);
+		Vector3f wr = new Vector3f();
+		wr.cross(wa, wb);
+		if (thetaO >= MyMath.PI || wr.lengthSquared() == 0) {
+			result[o+6] = 0; result[o+7] = 0; result[o+8] = 1;
+			result[o+9] = -1;
+			return;
+		}
+		// Rotate the axis of a towards b by the angle that centers the new cone
+		wr.normalize();
+		float thetaR = thetaO - thetaA;
+		float cos = (float) Math.cos(thetaR), sin = (float) Math.sin(thetaR);
+		Vector3f w = new Vector3f();
+		w.cross(wr, wa);
+		w.scale(sin);
+		wa.scale(cos);
+		w.add(wa);
+		w.normalize();
+		result[o+6] = w.x; result[o+7] = w.y; result[o+8] = w.z;
+		result[o+9] = (float) Math.cos(thetaO);
+	}
+}
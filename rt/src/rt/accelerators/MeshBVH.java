@@ -0,0 +1,525 @@
+package rt.accelerators;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import rt.HitRecord;
+import rt.PacketIntersectable;
+import rt.Ray;
+import rt.RayPacket;
+import rt.intersectables.Mesh;
+import util.FloatArrayList;
+import util.IntArrayList;
+
+/**
+ * A bounding volume hierarchy over the triangles of a {@link Mesh}, stored as flat arrays
+ * instead of node and triangle objects. Each node takes {@link #NODE_SIZE} bytes:
+ * <pre>
+ * float minX, minY, minZ, maxX, maxY, maxZ, int offset, int count
+ * </pre>
+ * Inner nodes have count 0, their left child directly follows them and offset is the
+ * index of the right child. Leaves refer to count triangles starting at offset in the
+ * triangle index list.
+ * <p>
+ * The nodes and the triangle index list are kept in heap or direct buffers, see
+ * {@link #MeshBVH(Mesh, boolean)}. Together with an off-heap mesh this keeps all the
+ * geometry out of the heap. Traversal and triangle intersection only read primitive
+ * values, a {@link HitRecord} is made for the closest hit only. Coherent rays can be
+ * traced together as a {@link RayPacket}.
+ */
+public class MeshBVH implements PacketIntersectable {
+
+	public static final int NODE_SIZE = 32;
+
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final int MAX_DEPTH = 60;
+	private static final int NR_BINS = 16;
+	private static final float COST_TRAVERSAL = 1.f;
+	private static final float COST_INTERSECT = 2.f;
+	private static final int MIN_ACTIVE_RAYS = 4;
+
+	private final Mesh mesh;
+	private final ByteBuffer nodes;
+	private final IntBuffer triangles;
+	private final int nNodes;
+
+	/**
+	 * Builds the hierarchy on the heap.
+	 */
+	public MeshBVH(Mesh mesh) {
+		this(mesh, false);
+	}
+
+	/**
+	 * Builds the hierarchy using binned surface area heuristic splits.
+	 *
+	 * @param direct if true, the nodes and triangle indices are stored in direct buffers
+	 */
+	public MeshBVH(Mesh mesh, boolean direct) {
+		this.mesh = mesh;
+		Builder builder = new Builder(mesh);
+		builder.build(0, mesh.size(), 0);
+		nNodes = builder.offsets.size();
+
+		nodes = allocate(nNodes*NODE_SIZE, direct);
+		float[] bounds = builder.bounds.elements();
+		for (int i = 0; i < nNodes; i++) {
+			for (int k = 0; k < 6; k++)
+				nodes.putFloat(i*NODE_SIZE + k*4, bounds[i*6+k]);
+			nodes.putInt(i*NODE_SIZE + 24, builder.offsets.get(i));
+			nodes.putInt(i*NODE_SIZE + 28, builder.counts.get(i));
+		}
+		triangles = allocate(builder.triangles.length*4, direct).asIntBuffer();
+		triangles.put(builder.triangles);
+	}
+
+	/**
+	 * Wraps nodes and triangle indices that were built before, e.g. mapped from a file.
+	 */
+	public MeshBVH(Mesh mesh, ByteBuffer nodes, IntBuffer triangles) {
+		this.mesh = mesh;
+		this.nodes = nodes;
+		this.triangles = triangles;
+		this.nNodes = nodes.limit()/NODE_SIZE;
+	}
+
+	private static ByteBuffer allocate(int size, boolean direct) {
+		ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+		return buffer.order(ByteOrder.nativeOrder());
+	}
+
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * @return the node buffer, laid out as described in the class comment
+	 */
+	public ByteBuffer getNodes() {
+		return nodes.duplicate().order(nodes.order());
+	}
+
+	/**
+	 * @return the triangle index list referred to by the leaves
+	 */
+	public IntBuffer getTriangles() {
+		return triangles.duplicate();
+	}
+
+	public int getNumberOfNodes() {
+		return nNodes;
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+		float ix = 1/r.direction.x, iy = 1/r.direction.y, iz = 1/r.direction.z;
+
+		Hit hit = new Hit();
+		if (slabs(0, ox, oy, oz, ix, iy, iz, hit.t) == Float.POSITIVE_INFINITY)
+			return null;
+		traverse(0, ox, oy, oz, r.direction.x, r.direction.y, r.direction.z, ix, iy, iz, hit);
+		return hit.triangle < 0 ? null : makeHitRecord(mesh, r, hit);
+	}
+
+	/**
+	 * Traverses the subtree below a node whose box is hit by the ray.
+	 */
+	private void traverse(int node, float ox, float oy, float oz, float dx, float dy, float dz,
+			float ix, float iy, float iz, Hit hit) {
+		int[] stack = new int[MAX_DEPTH + 2];
+		int stackSize = 0;
+		while (true) {
+			int base = node*NODE_SIZE;
+			int count = nodes.getInt(base + 28);
+			int offset = nodes.getInt(base + 24);
+			if (count > 0) {
+				for (int i = offset; i < offset + count; i++)
+					intersectTriangle(mesh, triangles.get(i), ox, oy, oz, dx, dy, dz, hit);
+			} else {
+				int left = node + 1, right = offset;
+				float tLeft = slabs(left, ox, oy, oz, ix, iy, iz, hit.t);
+				float tRight = slabs(right, ox, oy, oz, ix, iy, iz, hit.t);
+				if (tLeft != Float.POSITIVE_INFINITY && tRight != Float.POSITIVE_INFINITY) {
+					// Visit the closer child first
+					if (tRight < tLeft) {
+						node = right;
+						stack[stackSize++] = left;
+					} else {
+						node = left;
+						stack[stackSize++] = right;
+					}
+					continue;
+				} else if (tLeft != Float.POSITIVE_INFINITY) {
+					node = left;
+					continue;
+				} else if (tRight != Float.POSITIVE_INFINITY) {
+					node = right;
+					continue;
+				}
+			}
+			if (stackSize == 0)
+				break;
+			node = stack[--stackSize];
+		}
+	}
+
+	/**
+	 * Traverses the hierarchy once for the whole packet. Each node is first tested against
+	 * the frustum of the packet, then against the rays that are still active, which are
+	 * kept as a bit mask per stack entry. When fewer than {@link #MIN_ACTIVE_RAYS} rays
+	 * remain, the packet has diverged and these rays continue on their own.
+	 */
+	@Override
+	public void intersect(RayPacket packet, HitRecord[] hits) {
+		int n = packet.size();
+		Hit[] packetHits = new Hit[n];
+		for (int i = 0; i < n; i++)
+			packetHits[i] = new Hit();
+
+		int[] stack = new int[MAX_DEPTH + 2];
+		long[] stackMasks = new long[MAX_DEPTH + 2];
+		int stackSize = 0;
+		int node = 0;
+		long mask = packet.getMask();
+		float tMax = Float.POSITIVE_INFINITY;
+		while (true) {
+			mask = intersectNode(node, packet, mask, packetHits, tMax);
+			if (mask != 0) {
+				int base = node*NODE_SIZE;
+				int count = nodes.getInt(base + 28);
+				int offset = nodes.getInt(base + 24);
+				if (Long.bitCount(mask) < MIN_ACTIVE_RAYS) {
+					for (long m = mask; m != 0; m &= m - 1) {
+						int i = Long.numberOfTrailingZeros(m);
+						traverse(node, packet.ox[i], packet.oy[i], packet.oz[i], packet.dx[i], packet.dy[i], packet.dz[i],
+								packet.ix[i], packet.iy[i], packet.iz[i], packetHits[i]);
+					}
+					tMax = maxDistance(packetHits);
+				} else if (count > 0) {
+					for (int t = offset; t < offset + count; t++) {
+						int triangle = triangles.get(t);
+						for (long m = mask; m != 0; m &= m - 1) {
+							int i = Long.numberOfTrailingZeros(m);
+							intersectTriangle(mesh, triangle, packet.ox[i], packet.oy[i], packet.oz[i],
+									packet.dx[i], packet.dy[i], packet.dz[i], packetHits[i]);
+						}
+					}
+					tMax = maxDistance(packetHits);
+				} else {
+					// Visit the child first that lies ahead along the first active ray
+					int left = node + 1, right = offset;
+					int first = Long.numberOfTrailingZeros(mask);
+					boolean rightFirst = centerDistance(left, right, packet.dx[first], packet.dy[first], packet.dz[first]) < 0;
+					node = rightFirst ? right : left;
+					stack[stackSize] = rightFirst ? left : right;
+					stackMasks[stackSize++] = mask;
+					continue;
+				}
+			}
+			if (stackSize == 0)
+				break;
+			stackSize--;
+			node = stack[stackSize];
+			mask = stackMasks[stackSize];
+		}
+		for (int i = 0; i < n; i++)
+			hits[i] = packetHits[i].triangle < 0 ? null : makeHitRecord(mesh, packet.rays[i], packetHits[i]);
+	}
+
+	/**
+	 * @return the rays of the mask that hit the box of the node
+	 */
+	private long intersectNode(int node, RayPacket packet, long mask, Hit[] hits, float tMax) {
+		int base = node*NODE_SIZE;
+		float minX = nodes.getFloat(base), minY = nodes.getFloat(base+4), minZ = nodes.getFloat(base+8);
+		float maxX = nodes.getFloat(base+12), maxY = nodes.getFloat(base+16), maxZ = nodes.getFloat(base+20);
+		if (packet.missesBox(minX, minY, minZ, maxX, maxY, maxZ, tMax))
+			return 0;
+		long hitMask = 0;
+		for (long m = mask; m != 0; m &= m - 1) {
+			int i = Long.numberOfTrailingZeros(m);
+			if (slabs(minX, minY, minZ, maxX, maxY, maxZ, packet.ox[i], packet.oy[i], packet.oz[i],
+					packet.ix[i], packet.iy[i], packet.iz[i], hits[i].t) != Float.POSITIVE_INFINITY)
+				hitMask |= 1L << i;
+		}
+		return hitMask;
+	}
+
+	/**
+	 * @return the offset from the center of the left to the one of the right box, along the direction
+	 */
+	private float centerDistance(int left, int right, float dx, float dy, float dz) {
+		int l = left*NODE_SIZE, r = right*NODE_SIZE;
+		float cx = nodes.getFloat(r) + nodes.getFloat(r+12) - nodes.getFloat(l) - nodes.getFloat(l+12);
+		float cy = nodes.getFloat(r+4) + nodes.getFloat(r+16) - nodes.getFloat(l+4) - nodes.getFloat(l+16);
+		float cz = nodes.getFloat(r+8) + nodes.getFloat(r+20) - nodes.getFloat(l+8) - nodes.getFloat(l+20);
+		return cx*dx + cy*dy + cz*dz;
+	}
+
+	private static float maxDistance(Hit[] hits) {
+		float max = 0;
+		for (Hit hit : hits)
+			max = Math.max(max, hit.t);
+		return max;
+	}
+
+	/**
+	 * Closest hit found so far during traversal.
+	 */
+	static class Hit {
+		float t = Float.POSITIVE_INFINITY;
+		float beta, gamma;
+		int triangle = -1;
+	}
+
+	/**
+	 * Intersects the ray with the box of a node.
+	 *
+	 * @return the entry distance, or infinity if the box is missed or lies beyond tMax
+	 */
+	private float slabs(int node, float ox, float oy, float oz, float ix, float iy, float iz, float tMax) {
+		int base = node*NODE_SIZE;
+		return slabs(nodes.getFloat(base), nodes.getFloat(base+4), nodes.getFloat(base+8),
+				nodes.getFloat(base+12), nodes.getFloat(base+16), nodes.getFloat(base+20),
+				ox, oy, oz, ix, iy, iz, tMax);
+	}
+
+	static float slabs(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+			float ox, float oy, float oz, float ix, float iy, float iz, float tMax) {
+		float t0 = (minX - ox)*ix, t1 = (maxX - ox)*ix;
+		float tNear = Math.min(t0, t1), tFar = Math.max(t0, t1);
+		t0 = (minY - oy)*iy;
+		t1 = (maxY - oy)*iy;
+		tNear = Math.max(tNear, Math.min(t0, t1));
+		tFar = Math.min(tFar, Math.max(t0, t1));
+		t0 = (minZ - oz)*iz;
+		t1 = (maxZ - oz)*iz;
+		tNear = Math.max(tNear, Math.min(t0, t1));
+		tFar = Math.min(tFar, Math.max(t0, t1));
+		// Boxes behind the origin or beyond the closest hit can be skipped
+		if (tNear > tFar || tFar < 0 || tNear > tMax)
+			return Float.POSITIVE_INFINITY;
+		return tNear;
+	}
+
+	/**
+	 * Moeller-Trumbore test of a ray against a mesh triangle. Like {@link rt.intersectables.MeshTriangle},
+	 * hits on the edges of the triangle are ignored. Updates the hit if the triangle is closer.
+	 */
+	static void intersectTriangle(Mesh mesh, int triangle, float ox, float oy, float oz,
+			float dx, float dy, float dz, Hit hit) {
+		int a = mesh.index(triangle*3)*3, b = mesh.index(triangle*3+1)*3, c = mesh.index(triangle*3+2)*3;
+		float ax = mesh.vertex(a), ay = mesh.vertex(a+1), az = mesh.vertex(a+2);
+		float e1x = mesh.vertex(b) - ax, e1y = mesh.vertex(b+1) - ay, e1z = mesh.vertex(b+2) - az;
+		float e2x = mesh.vertex(c) - ax, e2y = mesh.vertex(c+1) - ay, e2z = mesh.vertex(c+2) - az;
+		float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+		float det = e1x*px + e1y*py + e1z*pz;
+		if (det == 0)
+			return;
+		float invDet = 1/det;
+		float sx = ox - ax, sy = oy - ay, sz = oz - az;
+		float beta = (sx*px + sy*py + sz*pz)*invDet;
+		if (beta <= 0 || beta >= 1)
+			return;
+		float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+		float gamma = (dx*qx + dy*qy + dz*qz)*invDet;
+		if (gamma <= 0 || beta + gamma >= 1)
+			return;
+		float t = (e2x*qx + e2y*qy + e2z*qz)*invDet;
+		if (t > 0 && t < hit.t) {
+			hit.t = t;
+			hit.beta = beta;
+			hit.gamma = gamma;
+			hit.triangle = triangle;
+		}
+	}
+
+	/**
+	 * Makes the hit record for the closest hit, with the normal interpolated like in
+	 * {@link rt.intersectables.MeshTriangle}.
+	 */
+	static HitRecord makeHitRecord(Mesh mesh, Ray r, Hit hit) {
+		int triangle = hit.triangle;
+		int a = mesh.index(triangle*3)*3, b = mesh.index(triangle*3+1)*3, c = mesh.index(triangle*3+2)*3;
+		float alpha = 1 - hit.beta - hit.gamma;
+		Vector3f normal = new Vector3f(
+				alpha*mesh.normal(a) + hit.beta*mesh.normal(b) + hit.gamma*mesh.normal(c),
+				alpha*mesh.normal(a+1) + hit.beta*mesh.normal(b+1) + hit.gamma*mesh.normal(c+1),
+				alpha*mesh.normal(a+2) + hit.beta*mesh.normal(b+2) + hit.gamma*mesh.normal(c+2));
+		normal.normalize();
+		Vector3f wIn = new Vector3f(r.direction);
+		wIn.normalize();
+		wIn.negate();
+		return new HitRecord(hit.t, r.pointAt(hit.t), normal, wIn, mesh.getTriangle(triangle), mesh.material, 0, 0);
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		return new BoundingBox(new Point3f(nodes.getFloat(0), nodes.getFloat(4), nodes.getFloat(8)),
+				new Point3f(nodes.getFloat(12), nodes.getFloat(16), nodes.getFloat(20)));
+	}
+
+	/**
+	 * Builds the nodes in depth first order into growable arrays, sorting the triangle
+	 * index list in place. Per triangle bounds and centroids are only kept during the build.
+	 */
+	static class Builder {
+
+		final int[] triangles;
+		final FloatArrayList bounds = new FloatArrayList();
+		final IntArrayList offsets = new IntArrayList();
+		final IntArrayList counts = new IntArrayList();
+		private final float[] triangleBounds;
+
+		Builder(Mesh mesh) {
+			int n = mesh.size();
+			triangles = new int[n];
+			triangleBounds = new float[n*6];
+			for (int i = 0; i < n; i++) {
+				triangles[i] = i;
+				int a = mesh.index(i*3)*3, b = mesh.index(i*3+1)*3, c = mesh.index(i*3+2)*3;
+				for (int k = 0; k < 3; k++) {
+					float va = mesh.vertex(a+k), vb = mesh.vertex(b+k), vc = mesh.vertex(c+k);
+					triangleBounds[i*6+k] = Math.min(va, Math.min(vb, vc));
+					triangleBounds[i*6+3+k] = Math.max(va, Math.max(vb, vc));
+				}
+			}
+		}
+
+		private float centroid(int triangle, int axis) {
+			return 0.5f*(triangleBounds[triangle*6+axis] + triangleBounds[triangle*6+3+axis]);
+		}
+
+		/**
+		 * Builds the subtree over triangles[start, end).
+		 *
+		 * @return index of the subtree's root node
+		 */
+		int build(int start, int end, int depth) {
+			int node = offsets.size();
+			float[] box = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+					Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+			float[] centroidBox = box.clone();
+			for (int i = start; i < end; i++) {
+				int t = triangles[i];
+				for (int k = 0; k < 3; k++) {
+					box[k] = Math.min(box[k], triangleBounds[t*6+k]);
+					box[3+k] = Math.max(box[3+k], triangleBounds[t*6+3+k]);
+					float c = centroid(t, k);
+					centroidBox[k] = Math.min(centroidBox[k], c);
+					centroidBox[3+k] = Math.max(centroidBox[3+k], c);
+				}
+			}
+			for (int k = 0; k < 6; k++)
+				bounds.add(box[k]);
+			offsets.add(start);
+			counts.add(end - start);
+
+			int n = end - start;
+			if (n <= MAX_LEAF_SIZE || depth >= MAX_DEPTH)
+				return node;
+
+			// Find the best split with binned surface area heuristic
+			float bestCost = Float.POSITIVE_INFINITY;
+			int bestAxis = -1, bestBin = -1;
+			int[] binCounts = new int[NR_BINS];
+			float[] binBounds = new float[NR_BINS*6];
+			float[] rightAreas = new float[NR_BINS];
+			for (int axis = 0; axis < 3; axis++) {
+				float cMin = centroidBox[axis], extent = centroidBox[3+axis] - cMin;
+				if (extent <= 0)
+					continue;
+				Arrays.fill(binCounts, 0);
+				for (int b = 0; b < NR_BINS; b++) {
+					for (int k = 0; k < 3; k++) {
+						binBounds[b*6+k] = Float.POSITIVE_INFINITY;
+						binBounds[b*6+3+k] = Float.NEGATIVE_INFINITY;
+					}
+				}
+				for (int i = start; i < end; i++) {
+					int t = triangles[i];
+					int b = bin(centroid(t, axis), cMin, extent);
+					binCounts[b]++;
+					for (int k = 0; k < 3; k++) {
+						binBounds[b*6+k] = Math.min(binBounds[b*6+k], triangleBounds[t*6+k]);
+						binBounds[b*6+3+k] = Math.max(binBounds[b*6+3+k], triangleBounds[t*6+3+k]);
+					}
+				}
+				// Sweep from the right, then from the left
+				float[] acc = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+						Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+				int[] rightCounts = new int[NR_BINS];
+				int count = 0;
+				for (int b = NR_BINS - 1; b > 0; b--) {
+					grow(acc, binBounds, b);
+					count += binCounts[b];
+					rightCounts[b] = count;
+					rightAreas[b] = area(acc);
+				}
+				acc = new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+						Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+				count = 0;
+				for (int b = 0; b < NR_BINS - 1; b++) {
+					grow(acc, binBounds, b);
+					count += binCounts[b];
+					if (count == 0 || rightCounts[b+1] == 0)
+						continue;
+					float cost = area(acc)*count + rightAreas[b+1]*rightCounts[b+1];
+					if (cost < bestCost) {
+						bestCost = cost;
+						bestAxis = axis;
+						bestBin = b;
+					}
+				}
+			}
+			if (bestAxis < 0)
+				return node;
+			float leafCost = COST_INTERSECT*n;
+			float splitCost = COST_TRAVERSAL + COST_INTERSECT*bestCost/area(box);
+			if (splitCost >= leafCost && n <= 4*MAX_LEAF_SIZE)
+				return node;
+
+			// Partition in place
+			float cMin = centroidBox[bestAxis], extent = centroidBox[3+bestAxis] - cMin;
+			int i = start, j = end - 1;
+			while (i <= j) {
+				if (bin(centroid(triangles[i], bestAxis), cMin, extent) <= bestBin) {
+					i++;
+				} else {
+					int tmp = triangles[i];
+					triangles[i] = triangles[j];
+					triangles[j--] = tmp;
+				}
+			}
+			counts.set(node, 0);
+			build(start, i, depth + 1);
+			offsets.set(node, build(i, end, depth + 1));
+			return node;
+		}
+
+		private static int bin(float centroid, float cMin, float extent) {
+			int b = (int) (NR_BINS*(centroid - cMin)/extent);
+			return Math.min(Math.max(b, 0), NR_BINS - 1);
+		}
+
+		private static void grow(float[] box, float[] binBounds, int b) {
+			for (int k = 0; k < 3; k++) {
+				box[k] = Math.min(box[k], binBounds[b*6+k]);
+				box[3+k] = Math.max(box[3+k], binBounds[b*6+3+k]);
+			}
+		}
+
+		private static float area(float[] box) {
+			float x = box[3] - box[0], y = box[4] - box[1], z = box[5] - box[2];
+			if (x < 0 || y < 0 || z < 0)
+				return 0;
+			return 2*(x*y + x*z + y*z);
+		}
+	}
+}
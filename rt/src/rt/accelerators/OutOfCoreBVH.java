@@ -0,0 +1,534 @@
+package rt.accelerators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.Material;
+import rt.Ray;
+import rt.Spectrum;
+import rt.intersectables.Mesh;
+import rt.materials.Diffuse;
+import util.FloatArrayList;
+import util.IntArrayList;
+
+/**
+ * A {@link MeshBVH} that is paged in from a file on demand, for meshes that do not fit
+ * into memory. The top of the hierarchy always stays in memory. Its leaves refer to
+ * treelets, i.e. subtrees together with the vertex data of their triangles, which are
+ * read from the file when a ray first reaches them and kept in a least recently used
+ * cache with a fixed size in bytes. Rendering a mesh larger than the cache is slower,
+ * but does not run out of memory.
+ * <p>
+ * Use {@link #write(MeshBVH, String, int)} to make the file, the mesh of the BVH may be
+ * off-heap, e.g. mapped with {@link rt.BinaryMeshFile#readMapped(String)}. All values
+ * are little-endian. The file starts with a 16 byte header
+ * <pre>
+ * int magic ("RTOC"), int version, int nTopNodes, int nTreelets
+ * </pre>
+ * followed by the top nodes, laid out like in {@link MeshBVH} except that the leaves have
+ * count -1 and store the treelet index as offset, then a long file offset and an int size
+ * per treelet plus an int of padding, and finally the treelets. A treelet holds
+ * <pre>
+ * int nNodes, int nTriangles, nodes, float[nTriangles*9] vertices, float[nTriangles*9] normals
+ * </pre>
+ * where the nodes refer to the local triangle numbers.
+ */
+public class OutOfCoreBVH implements Intersectable, Closeable {
+
+	public static final int MAGIC = 'R' | 'T' << 8 | 'O' << 16 | 'C' << 24;
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int DIRECTORY_ENTRY_SIZE = 16;
+	private static final int TREELET_HEADER_SIZE = 8;
+	private static final int NODE_SIZE = MeshBVH.NODE_SIZE;
+	private static final int MAX_TREELET_DEPTH = 64;
+
+	/**
+	 * The material of the mesh, not stored in the file.
+	 */
+	public Material material = new Diffuse(new Spectrum(1.f, 1.f, 1.f));
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer topNodes;
+	private final long[] treeletOffsets;
+	private final int[] treeletSizes;
+	private final TreeletCache cache;
+
+	/**
+	 * Opens a file made by {@link #write(MeshBVH, String, int)}. Only the top of the
+	 * hierarchy is read now.
+	 *
+	 * @param cacheSize maximum number of bytes of the treelets kept in memory
+	 */
+	public OutOfCoreBVH(String fileName, long cacheSize) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		try {
+			ByteBuffer header = read(0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Not an out-of-core BVH file");
+			if (header.getInt(4) != VERSION)
+				throw new IOException("Unsupported out-of-core BVH file version " + header.getInt(4));
+			int nTopNodes = header.getInt(8);
+			int nTreelets = header.getInt(12);
+			topNodes = read(HEADER_SIZE, nTopNodes*NODE_SIZE);
+			ByteBuffer directory = read(HEADER_SIZE + (long) nTopNodes*NODE_SIZE, nTreelets*DIRECTORY_ENTRY_SIZE);
+			treeletOffsets = new long[nTreelets];
+			treeletSizes = new int[nTreelets];
+			for (int i = 0; i < nTreelets; i++) {
+				treeletOffsets[i] = directory.getLong(i*DIRECTORY_ENTRY_SIZE);
+				treeletSizes[i] = directory.getInt(i*DIRECTORY_ENTRY_SIZE + 8);
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		cache = new TreeletCache(cacheSize);
+	}
+
+	/**
+	 * Reads size bytes at the given position. Positional reads do not change the state
+	 * of the channel, so several threads may read at the same time.
+	 */
+	private ByteBuffer read(long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Out-of-core BVH file is truncated");
+		}
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+		float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+		float ix = 1/dx, iy = 1/dy, iz = 1/dz;
+
+		TreeletHit hit = new TreeletHit();
+		int[] stack = new int[MAX_TREELET_DEPTH];
+		int stackSize = 0;
+		int node = 0;
+		if (slabs(topNodes, node, ox, oy, oz, ix, iy, iz, hit.t) == Float.POSITIVE_INFINITY)
+			return null;
+		while (true) {
+			int base = node*NODE_SIZE;
+			int offset = topNodes.getInt(base + 24);
+			if (topNodes.getInt(base + 28) < 0) {
+				ByteBuffer treelet = cache.get(offset);
+				if (intersectTreelet(treelet, ox, oy, oz, dx, dy, dz, ix, iy, iz, hit))
+					hit.treelet = treelet;
+			} else {
+				int left = node + 1, right = offset;
+				float tLeft = slabs(topNodes, left, ox, oy, oz, ix, iy, iz, hit.t);
+				float tRight = slabs(topNodes, right, ox, oy, oz, ix, iy, iz, hit.t);
+				if (tLeft != Float.POSITIVE_INFINITY && tRight != Float.POSITIVE_INFINITY) {
+					if (tRight < tLeft) {
+						node = right;
+						stack[stackSize++] = left;
+					} else {
+						node = left;
+						stack[stackSize++] = right;
+					}
+					continue;
+				} else if (tLeft != Float.POSITIVE_INFINITY) {
+					node = left;
+					continue;
+				} else if (tRight != Float.POSITIVE_INFINITY) {
+					node = right;
+					continue;
+				}
+			}
+			if (stackSize == 0)
+				break;
+			node = stack[--stackSize];
+		}
+		return hit.treelet == null ? null : makeHitRecord(r, hit);
+	}
+
+	/**
+	 * Closest hit found so far, the triangle is local to the treelet.
+	 */
+	private static class TreeletHit extends MeshBVH.Hit {
+		ByteBuffer treelet;
+	}
+
+	/**
+	 * @return true if a hit closer than hit.t was found in the treelet
+	 */
+	private static boolean intersectTreelet(ByteBuffer treelet, float ox, float oy, float oz,
+			float dx, float dy, float dz, float ix, float iy, float iz, MeshBVH.Hit hit) {
+		int nNodes = treelet.getInt(0);
+		int vertices = TREELET_HEADER_SIZE + nNodes*NODE_SIZE;
+		int previous = hit.triangle;
+		hit.triangle = -1;
+
+		int[] stack = new int[MAX_TREELET_DEPTH];
+		int stackSize = 0;
+		int node = 0;
+		while (true) {
+			int base = TREELET_HEADER_SIZE + node*NODE_SIZE;
+			int count = treelet.getInt(base + 28);
+			int offset = treelet.getInt(base + 24);
+			if (count > 0) {
+				for (int i = offset; i < offset + count; i++)
+					intersectTriangle(treelet, vertices + i*36, i, ox, oy, oz, dx, dy, dz, hit);
+			} else {
+				int left = node + 1, right = offset;
+				float tLeft = slabs(treelet, TREELET_HEADER_SIZE, left, ox, oy, oz, ix, iy, iz, hit.t);
+				float tRight = slabs(treelet, TREELET_HEADER_SIZE, right, ox, oy, oz, ix, iy, iz, hit.t);
+				if (tLeft != Float.POSITIVE_INFINITY && tRight != Float.POSITIVE_INFINITY) {
+					if (tRight < tLeft) {
+						node = right;
+						stack[stackSize++] = left;
+					} else {
+						node = left;
+						stack[stackSize++] = right;
+					}
+					continue;
+				} else if (tLeft != Float.POSITIVE_INFINITY) {
+					node = left;
+					continue;
+				} else if (tRight != Float.POSITIVE_INFINITY) {
+					node = right;
+					continue;
+				}
+			}
+			if (stackSize == 0)
+				break;
+			node = stack[--stackSize];
+		}
+		if (hit.triangle < 0) {
+			hit.triangle = previous;
+			return false;
+		}
+		return true;
+	}
+
+	private static float slabs(ByteBuffer nodes, int node, float ox, float oy, float oz,
+			float ix, float iy, float iz, float tMax) {
+		return slabs(nodes, 0, node, ox, oy, oz, ix, iy, iz, tMax);
+	}
+
+	private static float slabs(ByteBuffer nodes, int start, int node, float ox, float oy, float oz,
+			float ix, float iy, float iz, float tMax) {
+		int base = start + node*NODE_SIZE;
+		return MeshBVH.slabs(nodes.getFloat(base), nodes.getFloat(base+4), nodes.getFloat(base+8),
+				nodes.getFloat(base+12), nodes.getFloat(base+16), nodes.getFloat(base+20),
+				ox, oy, oz, ix, iy, iz, tMax);
+	}
+
+	/**
+	 * Same test as {@link MeshBVH}, on the three vertices stored at the given position.
+	 */
+	private static void intersectTriangle(ByteBuffer treelet, int v, int triangle, float ox, float oy, float oz,
+			float dx, float dy, float dz, MeshBVH.Hit hit) {
+		float ax = treelet.getFloat(v), ay = treelet.getFloat(v+4), az = treelet.getFloat(v+8);
+		float e1x = treelet.getFloat(v+12) - ax, e1y = treelet.getFloat(v+16) - ay, e1z = treelet.getFloat(v+20) - az;
+		float e2x = treelet.getFloat(v+24) - ax, e2y = treelet.getFloat(v+28) - ay, e2z = treelet.getFloat(v+32) - az;
+		float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+		float det = e1x*px + e1y*py + e1z*pz;
+		if (det == 0)
+			return;
+		float invDet = 1/det;
+		float sx = ox - ax, sy = oy - ay, sz = oz - az;
+		float beta = (sx*px + sy*py + sz*pz)*invDet;
+		if (beta <= 0 || beta >= 1)
+			return;
+		float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+		float gamma = (dx*qx + dy*qy + dz*qz)*invDet;
+		if (gamma <= 0 || beta + gamma >= 1)
+			return;
+		float t = (e2x*qx + e2y*qy + e2z*qz)*invDet;
+		if (t > 0 && t < hit.t) {
+			hit.t = t;
+			hit.beta = beta;
+			hit.gamma = gamma;
+			hit.triangle = triangle;
+		}
+	}
+
+	private HitRecord makeHitRecord(Ray r, TreeletHit hit) {
+		ByteBuffer treelet = hit.treelet;
+		int nNodes = treelet.getInt(0);
+		int nTriangles = treelet.getInt(4);
+		int n = TREELET_HEADER_SIZE + nNodes*NODE_SIZE + nTriangles*36 + hit.triangle*36;
+		float alpha = 1 - hit.beta - hit.gamma;
+		Vector3f normal = new Vector3f(
+				alpha*treelet.getFloat(n) + hit.beta*treelet.getFloat(n+12) + hit.gamma*treelet.getFloat(n+24),
+				alpha*treelet.getFloat(n+4) + hit.beta*treelet.getFloat(n+16) + hit.gamma*treelet.getFloat(n+28),
+				alpha*treelet.getFloat(n+8) + hit.beta*treelet.getFloat(n+20) + hit.gamma*treelet.getFloat(n+32));
+		normal.normalize();
+		Vector3f wIn = new Vector3f(r.direction);
+		wIn.normalize();
+		wIn.negate();
+		return new HitRecord(hit.t, r.pointAt(hit.t), normal, wIn, this, material, 0, 0);
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		return new BoundingBox(new Point3f(topNodes.getFloat(0), topNodes.getFloat(4), topNodes.getFloat(8)),
+				new Point3f(topNodes.getFloat(12), topNodes.getFloat(16), topNodes.getFloat(20)));
+	}
+
+	public int getNumberOfTreelets() {
+		return treeletOffsets.length;
+	}
+
+	public long getHits() {
+		synchronized (cache) {
+			return cache.hits;
+		}
+	}
+
+	public long getMisses() {
+		synchronized (cache) {
+			return cache.misses;
+		}
+	}
+
+	public long getBytesRead() {
+		synchronized (cache) {
+			return cache.bytesRead;
+		}
+	}
+
+	public long getEvictions() {
+		synchronized (cache) {
+			return cache.evictions;
+		}
+	}
+
+	/**
+	 * @return number of bytes of the treelets currently in memory
+	 */
+	public long getCachedBytes() {
+		synchronized (cache) {
+			return cache.bytes;
+		}
+	}
+
+	/**
+	 * Resets the statistics, e.g. before rendering the next frame. The cache is kept.
+	 */
+	public void resetStatistics() {
+		synchronized (cache) {
+			cache.hits = cache.misses = cache.bytesRead = cache.evictions = 0;
+		}
+	}
+
+	public String getStatistics() {
+		synchronized (cache) {
+			long requests = cache.hits + cache.misses;
+			return String.format("Treelet cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %.1f MB read, %.1f of %.1f MB in use",
+					cache.hits, cache.misses, requests == 0 ? 0 : 100.f*cache.hits/requests, cache.evictions,
+					cache.bytesRead/1e6, cache.bytes/1e6, cache.maxBytes/1e6);
+		}
+	}
+
+	/**
+	 * Keeps the least recently used treelets up to a maximum number of bytes. Files are
+	 * read without holding the lock, so threads missing different treelets do not wait
+	 * for each other. If two threads miss the same treelet, it is read twice but only
+	 * cached once.
+	 */
+	private class TreeletCache {
+
+		private final long maxBytes;
+		private final LinkedHashMap<Integer, ByteBuffer> treelets = new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true);
+		private long bytes, hits, misses, bytesRead, evictions;
+
+		TreeletCache(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		ByteBuffer get(int treelet) {
+			synchronized (this) {
+				ByteBuffer cached = treelets.get(treelet);
+				if (cached != null) {
+					hits++;
+					return cached;
+				}
+				misses++;
+			}
+			ByteBuffer loaded;
+			try {
+				loaded = read(treeletOffsets[treelet], treeletSizes[treelet]);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read treelet " + treelet, e);
+			}
+			synchronized (this) {
+				bytesRead += loaded.capacity();
+				ByteBuffer cached = treelets.get(treelet);
+				if (cached != null)
+					return cached;
+				treelets.put(treelet, loaded);
+				bytes += loaded.capacity();
+				// Evict the least recently used treelets, but always keep the new one
+				Iterator<Map.Entry<Integer, ByteBuffer>> it = treelets.entrySet().iterator();
+				while (bytes > maxBytes && treelets.size() > 1) {
+					ByteBuffer evicted = it.next().getValue();
+					it.remove();
+					bytes -= evicted.capacity();
+					evictions++;
+				}
+				return loaded;
+			}
+		}
+	}
+
+	/**
+	 * Splits a BVH into a top part and treelets and writes them to a file.
+	 *
+	 * @param maxTreeletTriangles subtrees with at most this many triangles become a treelet
+	 */
+	public static void write(MeshBVH bvh, String fileName, int maxTreeletTriangles) throws IOException {
+		Mesh mesh = bvh.getMesh();
+		ByteBuffer nodes = bvh.getNodes();
+		IntBuffer triangles = bvh.getTriangles();
+		int nNodes = bvh.getNumberOfNodes();
+
+		// Number of triangles below each node. The subtree of a node is stored right after
+		// it, so each subtree is a contiguous range of nodes and of the triangle list.
+		int[] subtreeTriangles = new int[nNodes];
+		int[] firstTriangle = new int[nNodes];
+		for (int node = nNodes - 1; node >= 0; node--) {
+			int count = nodes.getInt(node*NODE_SIZE + 28);
+			int offset = nodes.getInt(node*NODE_SIZE + 24);
+			if (count > 0) {
+				subtreeTriangles[node] = count;
+				firstTriangle[node] = offset;
+			} else {
+				subtreeTriangles[node] = subtreeTriangles[node + 1] + subtreeTriangles[offset];
+				firstTriangle[node] = firstTriangle[node + 1];
+			}
+		}
+
+		FloatArrayList topBounds = new FloatArrayList();
+		IntArrayList topOffsets = new IntArrayList();
+		IntArrayList topCounts = new IntArrayList();
+		IntArrayList treeletRoots = new IntArrayList();
+		cut(nodes, 0, subtreeTriangles, maxTreeletTriangles, topBounds, topOffsets, topCounts, treeletRoots);
+
+		int nTopNodes = topOffsets.size();
+		int nTreelets = treeletRoots.size();
+		try (RandomAccessFile out = new RandomAccessFile(fileName, "rw");
+				FileChannel channel = out.getChannel()) {
+			channel.truncate(0);
+			ByteBuffer top = ByteBuffer.allocate(HEADER_SIZE + nTopNodes*NODE_SIZE + nTreelets*DIRECTORY_ENTRY_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			top.putInt(MAGIC).putInt(VERSION).putInt(nTopNodes).putInt(nTreelets);
+			for (int i = 0; i < nTopNodes; i++) {
+				for (int k = 0; k < 6; k++)
+					top.putFloat(topBounds.get(i*6+k));
+				top.putInt(topOffsets.get(i)).putInt(topCounts.get(i));
+			}
+			long offset = top.capacity();
+			for (int i = 0; i < nTreelets; i++) {
+				int root = treeletRoots.get(i);
+				int size = treeletSize(root, nodes, subtreeTriangles);
+				top.putLong(offset).putInt(size).putInt(0);
+				offset += size;
+			}
+			top.flip();
+			while (top.hasRemaining())
+				channel.write(top);
+
+			for (int i = 0; i < nTreelets; i++) {
+				int root = treeletRoots.get(i);
+				ByteBuffer treelet = makeTreelet(root, mesh, nodes, triangles, subtreeTriangles, firstTriangle);
+				treelet.flip();
+				while (treelet.hasRemaining())
+					channel.write(treelet);
+			}
+		}
+	}
+
+	/**
+	 * Copies the nodes above the treelets, depth first like in {@link MeshBVH}.
+	 *
+	 * @return index of the new top node
+	 */
+	private static int cut(ByteBuffer nodes, int node, int[] subtreeTriangles, int maxTreeletTriangles,
+			FloatArrayList topBounds, IntArrayList topOffsets, IntArrayList topCounts, IntArrayList treeletRoots) {
+		int topNode = topOffsets.size();
+		for (int k = 0; k < 6; k++)
+			topBounds.add(nodes.getFloat(node*NODE_SIZE + k*4));
+		int count = nodes.getInt(node*NODE_SIZE + 28);
+		if (count > 0 || subtreeTriangles[node] <= maxTreeletTriangles) {
+			topOffsets.add(treeletRoots.size());
+			topCounts.add(-1);
+			treeletRoots.add(node);
+		} else {
+			topOffsets.add(0);
+			topCounts.add(0);
+			cut(nodes, node + 1, subtreeTriangles, maxTreeletTriangles, topBounds, topOffsets, topCounts, treeletRoots);
+			int right = cut(nodes, nodes.getInt(node*NODE_SIZE + 24), subtreeTriangles, maxTreeletTriangles,
+					topBounds, topOffsets, topCounts, treeletRoots);
+			topOffsets.set(topNode, right);
+		}
+		return topNode;
+	}
+
+	private static int treeletNodes(int root, ByteBuffer nodes) {
+		// The last node of a subtree is the last node of its rightmost path
+		int node = root;
+		while (nodes.getInt(node*NODE_SIZE + 28) == 0)
+			node = nodes.getInt(node*NODE_SIZE + 24);
+		return node - root + 1;
+	}
+
+	private static int treeletSize(int root, ByteBuffer nodes, int[] subtreeTriangles) {
+		return TREELET_HEADER_SIZE + treeletNodes(root, nodes)*NODE_SIZE + subtreeTriangles[root]*72;
+	}
+
+	private static ByteBuffer makeTreelet(int root, Mesh mesh, ByteBuffer nodes, IntBuffer triangles,
+			int[] subtreeTriangles, int[] firstTriangle) {
+		int nNodes = treeletNodes(root, nodes);
+		int nTriangles = subtreeTriangles[root];
+		int first = firstTriangle[root];
+		ByteBuffer treelet = ByteBuffer.allocate(treeletSize(root, nodes, subtreeTriangles)).order(ByteOrder.LITTLE_ENDIAN);
+		treelet.putInt(nNodes).putInt(nTriangles);
+		for (int node = root; node < root + nNodes; node++) {
+			for (int k = 0; k < 6; k++)
+				treelet.putFloat(nodes.getFloat(node*NODE_SIZE + k*4));
+			int count = nodes.getInt(node*NODE_SIZE + 28);
+			int offset = nodes.getInt(node*NODE_SIZE + 24);
+			treelet.putInt(count > 0 ? offset - first : offset - root).putInt(count);
+		}
+		for (int i = first; i < first + nTriangles; i++) {
+			int triangle = triangles.get(i);
+			for (int j = 0; j < 3; j++) {
+				int v = mesh.index(triangle*3 + j)*3;
+				treelet.putFloat(mesh.vertex(v)).putFloat(mesh.vertex(v+1)).putFloat(mesh.vertex(v+2));
+			}
+		}
+		for (int i = first; i < first + nTriangles; i++) {
+			int triangle = triangles.get(i);
+			for (int j = 0; j < 3; j++) {
+				int v = mesh.index(triangle*3 + j)*3;
+				treelet.putFloat(mesh.normal(v)).putFloat(mesh.normal(v+1)).putFloat(mesh.normal(v+2));
+			}
+		}
+		return treelet;
+	}
+}
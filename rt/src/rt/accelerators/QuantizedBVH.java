@@ -0,0 +1,300 @@
+package rt.accelerators;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import javax.vecmath.Point3f;
+
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.Ray;
+import rt.intersectables.Mesh;
+import util.IntArrayList;
+
+/**
+ * A compressed version of a {@link MeshBVH}. Each node stores the boxes of its two
+ * children, quantized to 8 or 16 bits per coordinate relative to the box of the node
+ * itself. Only the root box is stored as floats, the boxes of all other nodes are
+ * reconstructed during traversal. Quantization rounds outwards, with the same float
+ * arithmetic that is used for dequantization, so the reconstructed boxes always contain
+ * the exact ones and the same hits are found as with the uncompressed hierarchy.
+ * <p>
+ * Leaves are not stored as nodes but encoded in the child references: a reference
+ * r &gt;= 0 is an inner node, otherwise -r-1 holds the first triangle (upper 27 bits) and
+ * the number of triangles (lower 4 bits). Larger leaves are split into chains of nodes.
+ * A node takes 12 (8 bit) or 24 (16 bit) bytes for the child boxes plus 8 bytes for
+ * the child references.
+ */
+public class QuantizedBVH implements Intersectable {
+
+	private static final int MAX_LEAF_SIZE = 15;
+	private static final int MAX_STACK_SIZE = 64;
+
+	private final Mesh mesh;
+	private final IntBuffer triangles;
+	private final ByteBuffer nodes;
+	private final int bits, levels, nodeSize, refsOffset;
+	private final float[] rootBox = new float[6];
+
+	/**
+	 * Compresses the given hierarchy into nodes on the heap.
+	 *
+	 * @param bits 8 or 16
+	 */
+	public QuantizedBVH(MeshBVH bvh, int bits) {
+		this(bvh, bits, false);
+	}
+
+	/**
+	 * Compresses the given hierarchy. The triangle index list is shared with it.
+	 *
+	 * @param bits 8 or 16
+	 * @param direct if true, the nodes are stored in a direct buffer
+	 */
+	public QuantizedBVH(MeshBVH bvh, int bits, boolean direct) {
+		if (bits != 8 && bits != 16)
+			throw new IllegalArgumentException("Only 8 or 16 bit quantization is supported");
+		this.bits = bits;
+		this.levels = (1 << bits) - 1;
+		this.refsOffset = 12*bits/8;
+		this.nodeSize = refsOffset + 8;
+		this.mesh = bvh.getMesh();
+		this.triangles = bvh.getTriangles();
+
+		ByteBuffer source = bvh.getNodes();
+		if (mesh.size() >= 1 << 27)
+			throw new IllegalArgumentException("Too many triangles for quantized nodes");
+		for (int k = 0; k < 6; k++)
+			rootBox[k] = source.getFloat(k*4);
+
+		Builder builder = new Builder(source);
+		if (source.getInt(28) > 0)
+			builder.makeLeafChain(source.getInt(24), source.getInt(28), rootBox);
+		else
+			builder.convert(0, rootBox);
+
+		int nNodes = builder.refs.size()/2;
+		nodes = (direct ? ByteBuffer.allocateDirect(nNodes*nodeSize) : ByteBuffer.allocate(nNodes*nodeSize))
+				.order(ByteOrder.nativeOrder());
+		for (int i = 0; i < nNodes; i++) {
+			for (int k = 0; k < 12; k++) {
+				if (bits == 8)
+					nodes.put(i*nodeSize + k, (byte) builder.quantized.get(i*12 + k));
+				else
+					nodes.putShort(i*nodeSize + k*2, (short) builder.quantized.get(i*12 + k));
+			}
+			nodes.putInt(i*nodeSize + refsOffset, builder.refs.get(i*2));
+			nodes.putInt(i*nodeSize + refsOffset + 4, builder.refs.get(i*2 + 1));
+		}
+	}
+
+	/**
+	 * @return number of bytes taken by the nodes, without the triangle index list
+	 */
+	public long getNodeBytes() {
+		return nodes.capacity();
+	}
+
+	public int getNumberOfNodes() {
+		return nodes.capacity()/nodeSize;
+	}
+
+	/**
+	 * @return the quantized value of coordinate k of a child box, 0-5 for the left and 6-11 for the right child
+	 */
+	private int quantized(int node, int k) {
+		if (bits == 8)
+			return nodes.get(node*nodeSize + k) & 0xff;
+		return nodes.getShort(node*nodeSize + k*2) & 0xffff;
+	}
+
+	/**
+	 * Reconstructs a coordinate from its quantized value. The maximum value maps exactly to
+	 * the upper bound of the parent box.
+	 */
+	private static float dequantize(int q, int levels, float min, float max, float step) {
+		return q == levels ? max : min + q*step;
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+		float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+		float ix = 1/dx, iy = 1/dy, iz = 1/dz;
+
+		MeshBVH.Hit hit = new MeshBVH.Hit();
+		if (MeshBVH.slabs(rootBox[0], rootBox[1], rootBox[2], rootBox[3], rootBox[4], rootBox[5],
+				ox, oy, oz, ix, iy, iz, hit.t) == Float.POSITIVE_INFINITY)
+			return null;
+
+		int[] stack = new int[MAX_STACK_SIZE];
+		float[] stackBoxes = new float[MAX_STACK_SIZE*6];
+		float[] box = rootBox.clone();
+		float[] left = new float[6], right = new float[6];
+		int stackSize = 0;
+		int node = 0;
+		while (true) {
+			// Reconstruct the child boxes
+			for (int k = 0; k < 3; k++) {
+				float min = box[k], max = box[3+k], step = (max - min)/levels;
+				left[k] = dequantize(quantized(node, k), levels, min, max, step);
+				left[3+k] = dequantize(quantized(node, 3+k), levels, min, max, step);
+				right[k] = dequantize(quantized(node, 6+k), levels, min, max, step);
+				right[3+k] = dequantize(quantized(node, 9+k), levels, min, max, step);
+			}
+			int leftRef = nodes.getInt(node*nodeSize + refsOffset);
+			int rightRef = nodes.getInt(node*nodeSize + refsOffset + 4);
+			float tLeft = MeshBVH.slabs(left[0], left[1], left[2], left[3], left[4], left[5],
+					ox, oy, oz, ix, iy, iz, hit.t);
+			float tRight = MeshBVH.slabs(right[0], right[1], right[2], right[3], right[4], right[5],
+					ox, oy, oz, ix, iy, iz, hit.t);
+			if (tLeft != Float.POSITIVE_INFINITY && leftRef < 0) {
+				intersectLeaf(leftRef, ox, oy, oz, dx, dy, dz, hit);
+				tLeft = Float.POSITIVE_INFINITY;
+			}
+			if (tRight != Float.POSITIVE_INFINITY && rightRef < 0) {
+				intersectLeaf(rightRef, ox, oy, oz, dx, dy, dz, hit);
+				tRight = Float.POSITIVE_INFINITY;
+			}
+
+			if (tLeft != Float.POSITIVE_INFINITY && tRight != Float.POSITIVE_INFINITY) {
+				// Visit the closer child first, remember the other one with its box
+				boolean rightFirst = tRight < tLeft;
+				stack[stackSize] = rightFirst ? leftRef : rightRef;
+				System.arraycopy(rightFirst ? left : right, 0, stackBoxes, stackSize*6, 6);
+				stackSize++;
+				node = rightFirst ? rightRef : leftRef;
+				System.arraycopy(rightFirst ? right : left, 0, box, 0, 6);
+				continue;
+			} else if (tLeft != Float.POSITIVE_INFINITY) {
+				node = leftRef;
+				System.arraycopy(left, 0, box, 0, 6);
+				continue;
+			} else if (tRight != Float.POSITIVE_INFINITY) {
+				node = rightRef;
+				System.arraycopy(right, 0, box, 0, 6);
+				continue;
+			}
+			if (stackSize == 0)
+				break;
+			stackSize--;
+			node = stack[stackSize];
+			System.arraycopy(stackBoxes, stackSize*6, box, 0, 6);
+		}
+		return hit.triangle < 0 ? null : MeshBVH.makeHitRecord(mesh, r, hit);
+	}
+
+	private void intersectLeaf(int ref, float ox, float oy, float oz, float dx, float dy, float dz, MeshBVH.Hit hit) {
+		int leaf = -ref - 1;
+		int offset = leaf >>> 4, count = leaf & MAX_LEAF_SIZE;
+		for (int i = offset; i < offset + count; i++)
+			MeshBVH.intersectTriangle(mesh, triangles.get(i), ox, oy, oz, dx, dy, dz, hit);
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		return new BoundingBox(new Point3f(rootBox[0], rootBox[1], rootBox[2]),
+				new Point3f(rootBox[3], rootBox[4], rootBox[5]));
+	}
+
+	/**
+	 * Converts the nodes of a {@link MeshBVH} depth first, keeping track of the
+	 * reconstructed boxes that traversal will see.
+	 */
+	private class Builder {
+
+		final ByteBuffer source;
+		final IntArrayList quantized = new IntArrayList();
+		final IntArrayList refs = new IntArrayList();
+
+		Builder(ByteBuffer source) {
+			this.source = source;
+		}
+
+		private int addNode() {
+			int node = refs.size()/2;
+			for (int k = 0; k < 12; k++)
+				quantized.add(0);
+			refs.add(0);
+			refs.add(0);
+			return node;
+		}
+
+		/**
+		 * @param box the reconstructed box of the inner node
+		 * @return index of the new node
+		 */
+		int convert(int sourceNode, float[] box) {
+			int node = addNode();
+			int[] children = {sourceNode + 1, source.getInt(sourceNode*MeshBVH.NODE_SIZE + 24)};
+			for (int c = 0; c < 2; c++) {
+				int child = children[c];
+				int base = child*MeshBVH.NODE_SIZE;
+				float[] childBox = new float[6];
+				for (int k = 0; k < 6; k++)
+					childBox[k] = source.getFloat(base + k*4);
+				float[] reconstructed = quantize(node, c, childBox, box);
+				int count = source.getInt(base + 28);
+				int ref;
+				if (count > MAX_LEAF_SIZE)
+					ref = makeLeafChain(source.getInt(base + 24), count, reconstructed);
+				else if (count > 0)
+					ref = leaf(source.getInt(base + 24), count);
+				else
+					ref = convert(child, reconstructed);
+				refs.set(node*2 + c, ref);
+			}
+			return node;
+		}
+
+		/**
+		 * Makes nodes for a leaf with too many triangles, each taking up to
+		 * {@link QuantizedBVH#MAX_LEAF_SIZE} of them.
+		 */
+		int makeLeafChain(int offset, int count, float[] box) {
+			int node = addNode();
+			quantize(node, 0, box, box);
+			quantize(node, 1, box, box);
+			int n = Math.min(count, MAX_LEAF_SIZE);
+			refs.set(node*2, leaf(offset, n));
+			int rest = count - n;
+			refs.set(node*2 + 1, rest > MAX_LEAF_SIZE ? makeLeafChain(offset + n, rest, box) : leaf(offset + n, rest));
+			return node;
+		}
+
+		private int leaf(int offset, int count) {
+			return -((offset << 4) | count) - 1;
+		}
+
+		/**
+		 * Stores the child box of the node, rounded outwards.
+		 *
+		 * @return the reconstructed child box
+		 */
+		private float[] quantize(int node, int child, float[] childBox, float[] box) {
+			float[] reconstructed = new float[6];
+			for (int k = 0; k < 3; k++) {
+				float min = box[k], max = box[3+k], step = (max - min)/levels;
+				int qMin = 0, qMax = levels;
+				if (step > 0) {
+					qMin = clamp((int) Math.floor((childBox[k] - min)/step));
+					qMax = clamp((int) Math.ceil((childBox[3+k] - min)/step));
+				}
+				while (qMin > 0 && dequantize(qMin, levels, min, max, step) > childBox[k])
+					qMin--;
+				while (qMax < levels && dequantize(qMax, levels, min, max, step) < childBox[3+k])
+					qMax++;
+				quantized.set(node*12 + child*6 + k, qMin);
+				quantized.set(node*12 + child*6 + 3 + k, qMax);
+				reconstructed[k] = dequantize(qMin, levels, min, max, step);
+				reconstructed[3+k] = dequantize(qMax, levels, min, max, step);
+			}
+			return reconstructed;
+		}
+
+		private int clamp(int q) {
+			return Math.min(Math.max(q, 0), levels);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package rt.accelerators;
+
+/**
+ * Inner loops of BVH traversal, testing one ray against several boxes or triangles
+ * stored as structure of arrays. {@link #get()} selects the fastest implementation
+ * available at runtime.
+ * <p>
+ * On Java 17 and later, {@link #get()} uses the <code>jdk.incubator.vector</code>
+ * implementation in <code>src17</code>, which the maven profile vector-kernels compiles
+ * into the Java 17 part of the multi-release jar. It is only found if the jar is on the
+ * class path and the JVM runs with <code>--add-modules jdk.incubator.vector</code>. In
+ * all other cases, or with <code>-Drt.kernels=scalar</code>, the {@link ScalarRayKernels}
+ * are used. Both give bit identical results.
+ */
+public abstract class RayKernels {
+
+	private static final String VECTOR_KERNELS = "rt.accelerators.VectorRayKernels";
+
+	private static RayKernels instance;
+
+	/**
+	 * @return the kernels to use, the same instance for all callers
+	 */
+	public static synchronized RayKernels get() {
+		if (instance == null) {
+			if (!"scalar".equals(System.getProperty("rt.kernels"))) {
+				try {
+					instance = (RayKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+				} catch (ReflectiveOperationException | LinkageError e) {
+					// No Java 17 classes or no vector module
+				}
+			}
+			if (instance == null)
+				instance = new ScalarRayKernels();
+		}
+		return instance;
+	}
+
+	/**
+	 * Tests a ray against the four boxes of a {@link WideBVH} node, stored at offset as
+	 * minX[4], minY[4], minZ[4], maxX[4], maxY[4], maxZ[4].
+	 *
+	 * @param ix inverse of the x component of the ray direction, same for iy and iz
+	 * @param tNear receives the entry distance of each box, or infinity if the box is
+	 * missed, lies behind the origin or beyond tMax
+	 */
+	public abstract void intersectBoxes(float[] bounds, int offset, float ox, float oy, float oz,
+			float ix, float iy, float iz, float tMax, float[] tNear);
+
+	/**
+	 * Tests a ray against the triangles [start, end) of a packed triangle array. Triangle
+	 * i is stored as ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z at i, n+i, 2n+i, ... where
+	 * e1 and e2 are the edges from a to the second and third vertex. The test is the one
+	 * of {@link MeshBVH}, hits on the edges are ignored.
+	 *
+	 * @param n number of triangles in the array
+	 * @param hit t of the closest hit so far, followed by beta and gamma of the closest hit,
+	 * updated if a closer hit is found
+	 * @return the closest triangle that is hit closer than hit[0], or -1
+	 */
+	public abstract int intersectTriangles(float[] triangles, int n, int start, int end,
+			float ox, float oy, float oz, float dx, float dy, float dz, float[] hit);
+}
@@ -0,0 +1,58 @@
+package rt.accelerators;
+
+/**
+ * Plain Java {@link RayKernels}, used if the vector kernels are not available.
+ */
+public class ScalarRayKernels extends RayKernels {
+
+	@Override
+	public void intersectBoxes(float[] bounds, int offset, float ox, float oy, float oz,
+			float ix, float iy, float iz, float tMax, float[] tNear) {
+		int b = offset;
+		for (int c = 0; c < 4; c++) {
+			float t0 = (bounds[b+c] - ox)*ix, t1 = (bounds[b+12+c] - ox)*ix;
+			float near = Math.min(t0, t1), far = Math.max(t0, t1);
+			t0 = (bounds[b+4+c] - oy)*iy;
+			t1 = (bounds[b+16+c] - oy)*iy;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+			t0 = (bounds[b+8+c] - oz)*iz;
+			t1 = (bounds[b+20+c] - oz)*iz;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+			tNear[c] = near <= far && far >= 0 && near <= tMax ? near : Float.POSITIVE_INFINITY;
+		}
+	}
+
+	@Override
+	public int intersectTriangles(float[] triangles, int n, int start, int end,
+			float ox, float oy, float oz, float dx, float dy, float dz, float[] hit) {
+		int closest = -1;
+		for (int i = start; i < end; i++) {
+			float ax = triangles[i], ay = triangles[n+i], az = triangles[2*n+i];
+			float e1x = triangles[3*n+i], e1y = triangles[4*n+i], e1z = triangles[5*n+i];
+			float e2x = triangles[6*n+i], e2y = triangles[7*n+i], e2z = triangles[8*n+i];
+			float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+			float det = e1x*px + e1y*py + e1z*pz;
+			if (det == 0)
+				continue;
+			float invDet = 1/det;
+			float sx = ox - ax, sy = oy - ay, sz = oz - az;
+			float beta = (sx*px + sy*py + sz*pz)*invDet;
+			if (beta <= 0 || beta >= 1)
+				continue;
+			float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+			float gamma = (dx*qx + dy*qy + dz*qz)*invDet;
+			if (gamma <= 0 || beta + gamma >= 1)
+				continue;
+			float t = (e2x*qx + e2y*qy + e2z*qz)*invDet;
+			if (t > 0 && t < hit[0]) {
+				hit[0] = t;
+				hit[1] = beta;
+				hit[2] = gamma;
+				closest = i;
+			}
+		}
+		return closest;
+	}
+}
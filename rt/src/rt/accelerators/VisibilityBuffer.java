@@ -0,0 +1,307 @@
+package rt.accelerators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Point2f;
+import javax.vecmath.Point3f;
+
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.IntersectableList;
+import rt.Material;
+import rt.Ray;
+import rt.Scene;
+import rt.cameras.PinholeCamera;
+import rt.intersectables.Instance;
+import rt.intersectables.InstanceHelper;
+import rt.intersectables.Mesh;
+
+/**
+ * Finds the first hits of camera rays by rasterizing the triangles of the meshes in the
+ * scene instead of traversing an accelerator. All vertices are projected once through
+ * the {@link PinholeCamera}, which gives a screen box per triangle, and the triangles
+ * are sorted into screen bins. For a batch of camera rays, each triangle in the bins
+ * overlapping the batch is then tested only against the samples in the pixels it
+ * covers, keeping the closest triangle and its barycentric coordinates per sample. The
+ * hit records are made for the closest triangles only.
+ * <p>
+ * The triangle test is the one of {@link MeshBVH}, with the rays transformed into
+ * instance space like {@link Instance} does, so the hits are the same as with ray casting.
+ * Meshes, {@link MeshBVH}s and instances of them are rasterized, all other intersectables
+ * in the scene, e.g. CSG solids or planes, are ray cast.
+ * <p>
+ * The projected triangles are shared, so several threads can fill visibility buffers for
+ * their tiles in parallel.
+ */
+public class VisibilityBuffer {
+
+	/**
+	 * Screen boxes are grown by this many pixels to be safe from rounding.
+	 */
+	private static final float MARGIN = 0.01f;
+	/**
+	 * Size of the square screen bins the triangles are sorted into, in pixels.
+	 */
+	private static final int BIN_SIZE = 16;
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final List<Intersectable> others = new ArrayList<Intersectable>();
+	private final int width, height;
+	private final int binsX, binsY;
+
+	/**
+	 * A rasterized mesh with the screen boxes of its triangles.
+	 */
+	private static class Entry {
+		Mesh mesh;
+		InstanceHelper instanceHelper;
+		Material material;
+		/**
+		 * minX, minY, maxX, maxY in pixels, per triangle
+		 */
+		int[] screenBoxes;
+		/**
+		 * The triangles overlapping bin b are binTriangles[binStart[b]] to binTriangles[binStart[b+1]-1]
+		 */
+		int[] binStart, binTriangles;
+	}
+
+	/**
+	 * @return true if the scene has a {@link PinholeCamera}, which is needed for rasterization
+	 */
+	public static boolean isSupported(Scene scene) {
+		return scene.getCamera() instanceof PinholeCamera;
+	}
+
+	public VisibilityBuffer(Scene scene) {
+		if (!isSupported(scene))
+			throw new IllegalArgumentException("Rasterization needs a pinhole camera");
+		PinholeCamera camera = (PinholeCamera) scene.getCamera();
+		width = scene.getFilm().getWidth();
+		height = scene.getFilm().getHeight();
+		binsX = (width + BIN_SIZE)/BIN_SIZE + 1;
+		binsY = (height + BIN_SIZE)/BIN_SIZE + 1;
+		collect(scene.getIntersectable());
+		for (Entry e : entries)
+			project(e, camera);
+	}
+
+	private void collect(Intersectable i) {
+		if (i instanceof IntersectableList) {
+			Iterator<Intersectable> it = ((IntersectableList) i).iterator();
+			while (it.hasNext())
+				collect(it.next());
+			return;
+		}
+		Intersectable geometry = i instanceof Instance ? ((Instance) i).getIntersectable() : i;
+		Mesh mesh = null;
+		if (geometry instanceof Mesh)
+			mesh = (Mesh) geometry;
+		else if (geometry instanceof MeshBVH)
+			mesh = ((MeshBVH) geometry).getMesh();
+		if (mesh == null) {
+			others.add(i);
+			return;
+		}
+		Entry e = new Entry();
+		e.mesh = mesh;
+		e.material = mesh.material;
+		if (i instanceof Instance) {
+			e.instanceHelper = ((Instance) i).getInstanceHelper();
+			e.material = ((Instance) i).material;
+		}
+		entries.add(e);
+	}
+
+	/**
+	 * @return the number of meshes that are rasterized
+	 */
+	public int getNumberOfRasterizedMeshes() {
+		return entries.size();
+	}
+
+	private void project(Entry e, PinholeCamera camera) {
+		Mesh mesh = e.mesh;
+		int nVertices = vertexCount(mesh);
+		float[] screen = new float[nVertices*2];
+		boolean[] visible = new boolean[nVertices];
+		Matrix4f t = e.instanceHelper == null ? null : e.instanceHelper.getTransformation();
+		Point3f p = new Point3f();
+		Point2f pixel = new Point2f();
+		for (int v = 0; v < nVertices; v++) {
+			p.set(mesh.vertex(v*3), mesh.vertex(v*3+1), mesh.vertex(v*3+2));
+			if (t != null)
+				t.transform(p);
+			visible[v] = camera.project(p, pixel);
+			screen[v*2] = pixel.x;
+			screen[v*2+1] = pixel.y;
+		}
+
+		int n = mesh.size();
+		e.screenBoxes = new int[n*4];
+		for (int i = 0; i < n; i++) {
+			float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+			boolean behind = false;
+			for (int k = 0; k < 3; k++) {
+				int v = mesh.index(i*3 + k);
+				behind |= !visible[v];
+				minX = Math.min(minX, screen[v*2]);
+				minY = Math.min(minY, screen[v*2+1]);
+				maxX = Math.max(maxX, screen[v*2]);
+				maxY = Math.max(maxY, screen[v*2+1]);
+			}
+			if (behind) {
+				// Crosses the plane of the eye, its projection is unbounded
+				minX = minY = 0;
+				maxX = width;
+				maxY = height;
+			}
+			e.screenBoxes[i*4] = clamp((int) Math.floor(minX - MARGIN), width);
+			e.screenBoxes[i*4+1] = clamp((int) Math.floor(minY - MARGIN), height);
+			e.screenBoxes[i*4+2] = clamp((int) Math.floor(maxX + MARGIN), width);
+			e.screenBoxes[i*4+3] = clamp((int) Math.floor(maxY + MARGIN), height);
+		}
+
+		// Sort the triangles into the bins they overlap
+		e.binStart = new int[binsX*binsY + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			int[] next = pass == 0 ? null : e.binStart.clone();
+			for (int i = 0; i < n; i++) {
+				for (int by = bin(e.screenBoxes[i*4+1]); by <= bin(e.screenBoxes[i*4+3]); by++) {
+					for (int bx = bin(e.screenBoxes[i*4]); bx <= bin(e.screenBoxes[i*4+2]); bx++) {
+						if (pass == 0)
+							e.binStart[by*binsX + bx + 1]++;
+						else
+							e.binTriangles[next[by*binsX + bx]++] = i;
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int b = 0; b < binsX*binsY; b++)
+					e.binStart[b+1] += e.binStart[b];
+				e.binTriangles = new int[e.binStart[binsX*binsY]];
+			}
+		}
+	}
+
+	/**
+	 * @return the bin of a pixel coordinate in [-1, size], shifted so it is not negative
+	 */
+	private static int bin(int x) {
+		return (x + 1)/BIN_SIZE;
+	}
+
+	private static int vertexCount(Mesh mesh) {
+		int max = -1;
+		for (int i = 0; i < mesh.size()*3; i++)
+			max = Math.max(max, mesh.index(i));
+		return max + 1;
+	}
+
+	private static int clamp(int x, int size) {
+		return Math.min(Math.max(x, -1), size);
+	}
+
+	/**
+	 * Finds the first hits of a batch of camera rays.
+	 *
+	 * @param rays camera rays, only the first n are used
+	 * @param filmX horizontal position of the sample of each ray on the film, in pixels
+	 * @param filmY vertical position of the sample of each ray on the film, in pixels
+	 * @param n the number of rays
+	 * @param hits receives the hit record of ray i at index i, or null if it hits nothing
+	 */
+	public void intersect(Ray[] rays, float[] filmX, float[] filmY, int n, HitRecord[] hits) {
+		if (n == 0)
+			return;
+		// Bucket the samples by pixel
+		int left = Integer.MAX_VALUE, bottom = Integer.MAX_VALUE, right = Integer.MIN_VALUE, top = Integer.MIN_VALUE;
+		int[] pixelX = new int[n], pixelY = new int[n];
+		for (int s = 0; s < n; s++) {
+			pixelX[s] = (int) Math.floor(filmX[s]);
+			pixelY[s] = (int) Math.floor(filmY[s]);
+			left = Math.min(left, pixelX[s]);
+			right = Math.max(right, pixelX[s]);
+			bottom = Math.min(bottom, pixelY[s]);
+			top = Math.max(top, pixelY[s]);
+		}
+		int columns = right - left + 1, rows = top - bottom + 1;
+		int[] pixelStart = new int[columns*rows + 1];
+		for (int s = 0; s < n; s++)
+			pixelStart[(pixelY[s] - bottom)*columns + pixelX[s] - left + 1]++;
+		for (int p = 0; p < columns*rows; p++)
+			pixelStart[p+1] += pixelStart[p];
+		int[] samples = new int[n];
+		int[] next = pixelStart.clone();
+		for (int s = 0; s < n; s++)
+			samples[next[(pixelY[s] - bottom)*columns + pixelX[s] - left]++] = s;
+
+		MeshBVH.Hit[] closest = new MeshBVH.Hit[n];
+		int[] closestEntry = new int[n];
+		for (int s = 0; s < n; s++)
+			closest[s] = new MeshBVH.Hit();
+		Ray[] entryRays = new Ray[n];
+		Ray[][] instanceRays = new Ray[entries.size()][];
+
+		for (int e = 0; e < entries.size(); e++) {
+			Entry entry = entries.get(e);
+			for (int s = 0; s < n; s++)
+				entryRays[s] = entry.instanceHelper == null ? rays[s] : entry.instanceHelper.transform(rays[s]);
+			int[] boxes = entry.screenBoxes;
+			for (int by = bin(Math.max(bottom, -1)); by <= bin(Math.min(top, height)); by++) {
+				for (int bx = bin(Math.max(left, -1)); bx <= bin(Math.min(right, width)); bx++) {
+					int b = by*binsX + bx;
+					for (int j = entry.binStart[b]; j < entry.binStart[b+1]; j++) {
+						int i = entry.binTriangles[j];
+						int x0 = Math.max(boxes[i*4], left), y0 = Math.max(boxes[i*4+1], bottom);
+						int x1 = Math.min(boxes[i*4+2], right), y1 = Math.min(boxes[i*4+3], top);
+						// Rasterize each triangle only in the first bin where it overlaps the batch
+						if (x0 > x1 || y0 > y1 || bin(x0) != bx || bin(y0) != by)
+							continue;
+						for (int y = y0; y <= y1; y++) {
+							for (int x = x0; x <= x1; x++) {
+								int p = (y - bottom)*columns + x - left;
+								for (int k = pixelStart[p]; k < pixelStart[p+1]; k++) {
+									int s = samples[k];
+									Ray r = entryRays[s];
+									float t = closest[s].t;
+									MeshBVH.intersectTriangle(entry.mesh, i, r.origin.x, r.origin.y, r.origin.z,
+											r.direction.x, r.direction.y, r.direction.z, closest[s]);
+									if (closest[s].t < t)
+										closestEntry[s] = e;
+								}
+							}
+						}
+					}
+				}
+			}
+			if (entry.instanceHelper != null)
+				instanceRays[e] = entryRays.clone();
+		}
+
+		for (int s = 0; s < n; s++) {
+			HitRecord hit = null;
+			if (closest[s].triangle >= 0) {
+				Entry entry = entries.get(closestEntry[s]);
+				if (entry.instanceHelper == null) {
+					hit = MeshBVH.makeHitRecord(entry.mesh, rays[s], closest[s]);
+				} else {
+					hit = entry.instanceHelper.transformBack(
+							MeshBVH.makeHitRecord(entry.mesh, instanceRays[closestEntry[s]][s], closest[s]));
+				}
+				hit.material = entry.material;
+			}
+			// Everything that is not rasterized is ray cast
+			for (Intersectable o : others) {
+				HitRecord h = o.intersect(rays[s]);
+				if (h != null && h.t > 0 && (hit == null || h.t < hit.t))
+					hit = h;
+			}
+			hits[s] = hit;
+		}
+	}
+}
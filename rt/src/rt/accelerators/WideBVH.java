@@ -0,0 +1,269 @@
+package rt.accelerators;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import javax.vecmath.Point3f;
+
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.Ray;
+import rt.intersectables.Mesh;
+import util.FloatArrayList;
+import util.IntArrayList;
+
+/**
+ * A bounding volume hierarchy with four children per node, made by collapsing a binary
+ * {@link MeshBVH}. The child boxes of a node are stored as structure of arrays,
+ * <pre>
+ * minX[4], minY[4], minZ[4], maxX[4], maxY[4], maxZ[4]
+ * </pre>
+ * so all four slab tests can run in one SIMD operation per coordinate. The hit children
+ * are visited front to back.
+ * <p>
+ * For each child, offset and count are stored like in the {@link MeshBVH} leaves: count
+ * &gt; 0 for leaves, 0 for inner nodes, where offset is the index of the node, and -1 for
+ * unused slots.
+ * <p>
+ * The triangles are copied in the order of the leaves into a packed structure of arrays,
+ * which takes 36 bytes per triangle. The box and triangle tests are done by the
+ * {@link RayKernels}, which use SIMD instructions if the Vector API is available.
+ */
+public class WideBVH implements Intersectable {
+
+	public static final int WIDTH = 4;
+	private static final int MAX_STACK_SIZE = 256;
+	private static final int EMPTY = -1;
+
+	private final Mesh mesh;
+	private final IntBuffer triangles;
+	private final float[] bounds;
+	private final int[] offsets;
+	private final int[] counts;
+	private final float[] rootBox = new float[6];
+	private final float[] packedTriangles;
+	private final RayKernels kernels;
+
+	/**
+	 * Builds a {@link MeshBVH} and collapses it.
+	 */
+	public WideBVH(Mesh mesh) {
+		this(new MeshBVH(mesh));
+	}
+
+	/**
+	 * Collapses the binary hierarchy, using the kernels selected by {@link RayKernels#get()}.
+	 * The triangle index list is shared with it.
+	 */
+	public WideBVH(MeshBVH bvh) {
+		this(bvh, RayKernels.get());
+	}
+
+	public WideBVH(MeshBVH bvh, RayKernels kernels) {
+		this.kernels = kernels;
+		this.mesh = bvh.getMesh();
+		this.triangles = bvh.getTriangles();
+		ByteBuffer source = bvh.getNodes();
+		for (int k = 0; k < 6; k++)
+			rootBox[k] = source.getFloat(k*4);
+
+		Collapser collapser = new Collapser(source);
+		collapser.collapse(0);
+		bounds = collapser.bounds.toArray();
+		offsets = collapser.offsets.toArray();
+		counts = collapser.counts.toArray();
+		packedTriangles = pack(mesh, triangles);
+	}
+
+	/**
+	 * Packs the triangles as described in {@link RayKernels#intersectTriangles}.
+	 */
+	private static float[] pack(Mesh mesh, IntBuffer triangles) {
+		int n = triangles.limit();
+		float[] packed = new float[n*9];
+		for (int i = 0; i < n; i++) {
+			int triangle = triangles.get(i);
+			int a = mesh.index(triangle*3)*3, b = mesh.index(triangle*3+1)*3, c = mesh.index(triangle*3+2)*3;
+			for (int k = 0; k < 3; k++) {
+				float ak = mesh.vertex(a+k);
+				packed[k*n + i] = ak;
+				packed[(3+k)*n + i] = mesh.vertex(b+k) - ak;
+				packed[(6+k)*n + i] = mesh.vertex(c+k) - ak;
+			}
+		}
+		return packed;
+	}
+
+	public int getNumberOfNodes() {
+		return counts.length/WIDTH;
+	}
+
+	/**
+	 * @return number of bytes taken by the nodes, without the triangle index list
+	 */
+	public long getNodeBytes() {
+		return bounds.length*4L + offsets.length*4L + counts.length*4L;
+	}
+
+	/**
+	 * @return number of bytes taken by the packed triangles
+	 */
+	public long getPackedTriangleBytes() {
+		return packedTriangles.length*4L;
+	}
+
+	@Override
+	public HitRecord intersect(Ray r) {
+		float ox = r.origin.x, oy = r.origin.y, oz = r.origin.z;
+		float dx = r.direction.x, dy = r.direction.y, dz = r.direction.z;
+		float ix = 1/dx, iy = 1/dy, iz = 1/dz;
+
+		// t, beta and gamma of the closest hit
+		float[] hit = {Float.POSITIVE_INFINITY, 0, 0};
+		int closest = -1;
+		if (MeshBVH.slabs(rootBox[0], rootBox[1], rootBox[2], rootBox[3], rootBox[4], rootBox[5],
+				ox, oy, oz, ix, iy, iz, hit[0]) == Float.POSITIVE_INFINITY)
+			return null;
+		int n = packedTriangles.length/9;
+
+		// Stack of child slots (node*WIDTH + child) with their entry distances
+		int[] stack = new int[MAX_STACK_SIZE];
+		float[] stackT = new float[MAX_STACK_SIZE];
+		float[] tNear = new float[WIDTH];
+		int[] order = new int[WIDTH];
+		int stackSize = 0;
+		int node = 0;
+		while (true) {
+			kernels.intersectBoxes(bounds, node*WIDTH*6, ox, oy, oz, ix, iy, iz, hit[0], tNear);
+
+			// Sort the hit children front to back
+			int nHit = 0;
+			for (int c = 0; c < WIDTH; c++) {
+				if (tNear[c] == Float.POSITIVE_INFINITY || counts[node*WIDTH + c] == EMPTY)
+					continue;
+				int i = nHit++;
+				while (i > 0 && tNear[order[i-1]] > tNear[c]) {
+					order[i] = order[i-1];
+					i--;
+				}
+				order[i] = c;
+			}
+			// Push the farthest first, so the closest is visited next
+			for (int i = nHit - 1; i >= 0; i--) {
+				stack[stackSize] = node*WIDTH + order[i];
+				stackT[stackSize] = tNear[order[i]];
+				stackSize++;
+			}
+
+			node = -1;
+			while (stackSize > 0 && node < 0) {
+				stackSize--;
+				if (stackT[stackSize] > hit[0])
+					continue;
+				int slot = stack[stackSize];
+				int count = counts[slot], offset = offsets[slot];
+				if (count > 0) {
+					int i = kernels.intersectTriangles(packedTriangles, n, offset, offset + count,
+							ox, oy, oz, dx, dy, dz, hit);
+					if (i >= 0)
+						closest = i;
+				} else {
+					node = offset;
+				}
+			}
+			if (node < 0)
+				break;
+		}
+		if (closest < 0)
+			return null;
+		MeshBVH.Hit meshHit = new MeshBVH.Hit();
+		meshHit.t = hit[0];
+		meshHit.beta = hit[1];
+		meshHit.gamma = hit[2];
+		meshHit.triangle = triangles.get(closest);
+		return MeshBVH.makeHitRecord(mesh, r, meshHit);
+	}
+
+	@Override
+	public BoundingBox getBoundingBox() {
+		return new BoundingBox(new Point3f(rootBox[0], rootBox[1], rootBox[2]),
+				new Point3f(rootBox[3], rootBox[4], rootBox[5]));
+	}
+
+	/**
+	 * Collapses the binary nodes depth first. A node takes the children of its binary
+	 * counterpart, and the inner child with the largest surface area is replaced by its
+	 * own children until there are four.
+	 */
+	private static class Collapser {
+
+		final ByteBuffer source;
+		final FloatArrayList bounds = new FloatArrayList();
+		final IntArrayList offsets = new IntArrayList();
+		final IntArrayList counts = new IntArrayList();
+
+		Collapser(ByteBuffer source) {
+			this.source = source;
+		}
+
+		private boolean isLeaf(int node) {
+			return source.getInt(node*MeshBVH.NODE_SIZE + 28) > 0;
+		}
+
+		private float area(int node) {
+			int base = node*MeshBVH.NODE_SIZE;
+			float x = source.getFloat(base+12) - source.getFloat(base);
+			float y = source.getFloat(base+16) - source.getFloat(base+4);
+			float z = source.getFloat(base+20) - source.getFloat(base+8);
+			return x*y + x*z + y*z;
+		}
+
+		/**
+		 * @return index of the new node
+		 */
+		int collapse(int binaryNode) {
+			int node = counts.size()/WIDTH;
+			for (int i = 0; i < WIDTH*6; i++)
+				bounds.add(0);
+			for (int c = 0; c < WIDTH; c++) {
+				offsets.add(0);
+				counts.add(EMPTY);
+			}
+
+			int[] children = new int[WIDTH];
+			int n = 0;
+			if (isLeaf(binaryNode)) {
+				children[n++] = binaryNode;
+			} else {
+				children[n++] = binaryNode + 1;
+				children[n++] = source.getInt(binaryNode*MeshBVH.NODE_SIZE + 24);
+			}
+			while (n < WIDTH) {
+				int largest = -1;
+				for (int c = 0; c < n; c++) {
+					if (!isLeaf(children[c]) && (largest < 0 || area(children[c]) > area(children[largest])))
+						largest = c;
+				}
+				if (largest < 0)
+					break;
+				int expanded = children[largest];
+				children[largest] = expanded + 1;
+				children[n++] = source.getInt(expanded*MeshBVH.NODE_SIZE + 24);
+			}
+
+			for (int c = 0; c < n; c++) {
+				int base = children[c]*MeshBVH.NODE_SIZE;
+				for (int k = 0; k < 6; k++)
+					bounds.set(node*WIDTH*6 + k*WIDTH + c, source.getFloat(base + k*4));
+				if (isLeaf(children[c])) {
+					offsets.set(node*WIDTH + c, source.getInt(base + 24));
+					counts.set(node*WIDTH + c, source.getInt(base + 28));
+				} else {
+					counts.set(node*WIDTH + c, 0);
+					offsets.set(node*WIDTH + c, collapse(children[c]));
+				}
+			}
+			return node;
+		}
+	}
+}
@@ -4,7 +4,7 @@ import rt.*;
 import rt.cameras.DummyCamera;
 import rt.films.BoxFilterFilm;
 import rt.integrators.MandelbrotIntegratorFactory;
-import rt.samplers.RandomSamplerFactory;
+import rt.samplers.CounterSamplerFactory;
 import rt.tonemappers.ClampTonemapper;
 
 /**
@@ -31,7 +31,7 @@ public final class Mandelbrot extends Scene {
 		
 		// Specify the integrator and sampler to use
 		integratorFactory = new MandelbrotIntegratorFactory();
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 	}
 	
 }
@@ -1,15 +1,20 @@
 package rt.cameras;
 
 import javax.vecmath.Matrix4f;
+import javax.vecmath.Point2f;
+import javax.vecmath.Tuple3f;
 import javax.vecmath.Vector3f;
 import javax.vecmath.Vector4f;
 
 import rt.Camera;
 import rt.Ray;
+import rt.SampleStream;
+import rt.samplers.CounterSampler;
 
 public class PinholeCamera implements Camera {
 
 	Matrix4f m = new Matrix4f();
+	Matrix4f mInverse;
 	Vector3f eye;
 	
 	public PinholeCamera(Vector3f eye, Vector3f lookAt, Vector3f up, float fov,
@@ -42,6 +47,8 @@ public class PinholeCamera implements Camera {
 		p.m33 = 1;
 		
 		m.mul(p);
+		mInverse = new Matrix4f(m);
+		mInverse.invert();
 	}
 
 	@Override
@@ -56,8 +63,37 @@ public class PinholeCamera implements Camera {
 		// Make ray consisting of origin and direction in world coordinates
 		Vector3f dir = new Vector3f(d.x, d.y, d.z);
 		dir.sub(eye);
-		//TODO: somehow decide on time in a cleaner fashion
-		return new Ray(new Vector3f(eye), dir, (float) Math.random());
+		return new Ray(new Vector3f(eye), dir, time(i, j, samples));
+	}
+
+	/**
+	 * The time of a camera ray, from the samples if they have a time dimension. Otherwise a
+	 * hash of the pixel and the sample, which is random but reproducible on any thread.
+	 */
+	private static float time(int i, int j, float[] samples) {
+		if (samples.length > SampleStream.TIME)
+			return samples[SampleStream.TIME];
+		int sample = Float.floatToIntBits(samples[0])*31 + Float.floatToIntBits(samples[1]);
+		return CounterSampler.random(SampleStream.pixel(i, j), sample, SampleStream.TIME);
+	}
+
+	/**
+	 * Projects a point in world coordinates onto the image, the inverse of
+	 * {@link #makeWorldSpaceRay}.
+	 *
+	 * @param p the point
+	 * @param pixel receives the position in viewport coordinates, pixel [i,j] being the
+	 * square [i,i+1] x [j,j+1]
+	 * @return false if the point is not in front of the camera
+	 */
+	public boolean project(Tuple3f p, Point2f pixel) {
+		Vector4f d = new Vector4f(p.x, p.y, p.z, 1);
+		mInverse.transform(d);
+		// The image plane is at z = -1
+		if (d.z >= 0)
+			return false;
+		pixel.set(d.x/-d.z, d.y/-d.z);
+		return true;
 	}
 
 }
@@ -2,53 +2,59 @@ package rt.integrators;
 
 import javax.vecmath.Vector3f;
 
+import rt.FirstHitIntegrator;
 import rt.HitRecord;
-import rt.Integrator;
 import rt.Intersectable;
 import rt.LightGeometry;
 import rt.LightList;
 import rt.Material.ShadingSample;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
 import rt.integrators.heuristics.*;
-import rt.samplers.RandomSampler;
 import rt.samplers.UniformSampler;
 import util.FloatFunction;
 import util.StaticVecmath;
 
-public class AreaLightIntegrator implements Integrator {
+public class AreaLightIntegrator implements FirstHitIntegrator {
 
 	LightList lightList;
 	Intersectable root;
-	public final Sampler sampler;
+	private SampleStream stream;
 	private final FloatFunction heuristic;
 	
 	public AreaLightIntegrator(Scene scene)
 	{
 		this.lightList = scene.getLightList();
 		this.root = scene.getIntersectable();
-		this.sampler = new RandomSampler();
-		sampler.init(2);
 		this.heuristic = new PowerHeuristic();
 	}
 
+	@Override
+	public void startSample(SampleStream sample) {
+		stream = sample;
+	}
+
 	/**
 	 * Basic integrator that simply iterates over the light sources and accumulates
 	 * their contributions. No shadow testing, reflection, refraction, or 
 	 * area light sources, etc. supported.
 	 */
 	public Spectrum integrate(Ray r) {
+		return integrate(r, root.intersect(r));
+	}
 
-		HitRecord hitRecord = root.intersect(r);
+	@Override
+	public Spectrum integrate(Ray r, HitRecord hitRecord) {
 		if(hitRecord != null)
 		{
 			Spectrum emission = hitRecord.material.evaluateEmission(hitRecord, hitRecord.w);
 			if (emission != null) // hit light => return emission of light directly
 				return emission;
 							
-			Spectrum lightSampledSpectrum = sampleLight(hitRecord, lightList.getRandomLight(sampler.makeSamples(1, 1)), r.t);
+			Spectrum lightSampledSpectrum = sampleLight(hitRecord, r.t);
 			Spectrum brdfSampledSpectrum = sampleBRDF(hitRecord, r.t);
 						
 			Spectrum[] specs = new Spectrum[]{lightSampledSpectrum, brdfSampledSpectrum};
@@ -64,8 +70,10 @@ public class AreaLightIntegrator implements Integrator {
 	}
 	
 	private Spectrum sampleBRDF(HitRecord hitRecord, float t) {
-		ShadingSample shadingSample = hitRecord.material.getShadingSample(hitRecord, this.sampler.makeSamples(1, 2)[0]);
-		//TODO: every material should return a shading sample
+		float[] sample = new float[2];
+		stream.get(0, SampleStream.BSDF, sample);
+		ShadingSample shadingSample = hitRecord.material.getShadingSample(hitRecord, sample);
+		// No sample, e.g. for total internal reflection
 		if (shadingSample != null) { 
 			Ray shadingSampleRay = new Ray(hitRecord.position, shadingSample.w, t, 0, true);
 			HitRecord shadingSampleHit = root.intersect(shadingSampleRay);
@@ -78,34 +86,40 @@ public class AreaLightIntegrator implements Integrator {
 				float cosTheta_i = hitRecord.normal.dot(hitRecord.w);
 				assert cosTheta_i >= 0: "went into strange direction: " + cosTheta_i;
 
-
-				if (emission != null && shadingSampleHit.normal.dot(shadingSampleHit.w) > 0) { // hit light from ahead
+				float cosLight = shadingSampleHit.normal.dot(shadingSampleHit.w);
+				if (emission != null && cosLight > 0) { // hit light from ahead
 					// compute area probability for this ray
-					float areaProbablity = shadingSampleHit.p/lightList.size();
-					// make directional probability
-					areaProbablity *= Math.abs(cosTheta_i); // abs should not matter
-					areaProbablity /= StaticVecmath.dist2(hitRecord.position, shadingSampleHit.position);
+					float areaProbablity = shadingSampleHit.p;
+					if (shadingSampleHit.intersectable instanceof LightGeometry)
+						areaProbablity *= lightList.getProbability((LightGeometry) shadingSampleHit.intersectable, hitRecord);
+					else
+						areaProbablity /= lightList.size();
+					float d2 = StaticVecmath.dist2(hitRecord.position, shadingSampleHit.position);
 					 
 					emission.mult(shadingSample.brdf);
 					emission.mult(cosTheta_i/shadingSample.p);
-					float weight = heuristic.evaluate(shadingSample.p)/(heuristic.evaluate(shadingSample.p) + heuristic.evaluate(areaProbablity));
-					emission.mult(weight);
+					emission.mult(brdfSampleWeight(heuristic, shadingSample.p, areaProbablity, cosLight, d2));
 					
 					return emission;
 				} else //didn't hit light -> stay dark
 					return new Spectrum();
 			} else // return black with probablity 0, since infinitely far away hit
 				return new Spectrum();
-		} else //this should not happen and is only here for lazyness
-			return new Spectrum(1,0,0);
+		} else
+			return new Spectrum();
 	}
 	
-	private Spectrum sampleLight(HitRecord hitRecord, LightGeometry lightSource, float t) {
-		float[][] sample = this.sampler.makeSamples(1, 2);
+	private Spectrum sampleLight(HitRecord hitRecord, float t) {
+		float[] selectionProbability = new float[1];
+		LightGeometry lightSource = lightList.getRandomLight(stream.get(0, SampleStream.LIGHT_SELECTION), hitRecord, selectionProbability);
+		if (lightSource == null) // no light can illuminate the hit
+			return new Spectrum();
+		float[] sample = new float[2];
+		stream.get(0, SampleStream.LIGHT_POSITION, sample);
 		// Make direction from hit point to light source position; this is only supposed to work with point lights
-		HitRecord lightHit = lightSource.sample(sample[0]);
+		HitRecord lightHit = lightSource.sample(sample);
 		// adapt probability to hit exactly that light
-		lightHit.p *= 1f/lightList.size(); 
+		lightHit.p *= selectionProbability[0];
 		
 		Vector3f lightDir = StaticVecmath.sub(lightHit.position, hitRecord.position);
 		float d2 = lightDir.lengthSquared();
@@ -117,36 +131,53 @@ public class AreaLightIntegrator implements Integrator {
 				StaticVecmath.dist2(shadowHit.position, hitRecord.position) + 1e-5f < d2) //only if closer than light
 			return new Spectrum();
 		
-		// Evaluate the BRDF, probability is saved in p of hitRecord
-		Spectrum brdfValue = hitRecord.material.evaluateBRDF(hitRecord, hitRecord.w, lightDir);		 
-		
 		// Multiply together factors relevant for shading, that is, brdf * emission * ndotl * geometry term
-		Spectrum s = new Spectrum(brdfValue);
+		Spectrum s = new Spectrum();
+		// Evaluate the BRDF and the probability that BRDF sampling finds this direction
+		float brdfProbability = hitRecord.material.evaluateBRDFAndPdf(hitRecord, hitRecord.w, lightDir, s);
 		
 		// Multiply with emission
 		s.mult(lightHit.material.evaluateEmission(lightHit, StaticVecmath.negate(lightDir)));
 		
 		// Multiply with cosine of surface normal and incident direction
 		float ndotl = hitRecord.normal.dot(lightDir);
-		ndotl = Math.max(ndotl, 0.f);
+		if (ndotl <= 0) // light is below the surface, its directional probability would be 0/0
+			return new Spectrum();
 		s.mult(ndotl);
 		
-		float brdfProbability = hitRecord.p;
-		//make area probability
-		brdfProbability /= Math.abs(ndotl); // abs should not matter
-		brdfProbability *= StaticVecmath.dist2(hitRecord.position, lightHit.position);
-
-
 		// Geometry term
 		s.mult(1.f/(d2*lightHit.p));
 		float cos = Math.max(lightHit.normal.dot(StaticVecmath.negate(lightDir)), 0);
 		s.mult(cos);
 		
-		float weight = heuristic.evaluate(lightHit.p)/(heuristic.evaluate(lightHit.p) + heuristic.evaluate(brdfProbability));
-		s.mult(weight);
+		s.mult(lightSampleWeight(heuristic, lightHit.p, brdfProbability, cos, d2));
 		return s;
 	}
 
+	/**
+	 * Returns the MIS weight of a direction found by sampling the light. Both densities are
+	 * compared in area measure at the light, so the weights of {@link #brdfSampleWeight}
+	 * for the same direction add up to 1.
+	 * 
+	 * @param lightProbability the area density of the light sample, including the light selection
+	 * @param brdfProbability the solid angle density with which the BRDF samples the direction
+	 * @param cosLight the cosine between the normal of the light and the direction to the shading point
+	 * @param d2 the squared distance between the shading point and the light
+	 */
+	public static float lightSampleWeight(FloatFunction heuristic, float lightProbability, float brdfProbability, float cosLight, float d2) {
+		float light = heuristic.evaluate(lightProbability);
+		return light/(light + heuristic.evaluate(brdfProbability*cosLight/d2));
+	}
+
+	/**
+	 * Returns the MIS weight of a direction found by sampling the BRDF, with the same
+	 * parameters as {@link #lightSampleWeight}.
+	 */
+	public static float brdfSampleWeight(FloatFunction heuristic, float brdfProbability, float lightProbability, float cosLight, float d2) {
+		float brdf = heuristic.evaluate(brdfProbability*cosLight/d2);
+		return brdf/(brdf + heuristic.evaluate(lightProbability));
+	}
+
 	public float[][] makePixelSamples(Sampler sampler, int n) {
 		return sampler.makeSamples(n, 2);
 	}
@@ -16,11 +16,11 @@ import rt.LightGeometry;
 import rt.LightList;
 import rt.Material.ShadingSample;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
 import rt.films.BoxFilterFilm;
-import rt.samplers.RandomSampler;
 import util.HistHelper;
 import util.StaticVecmath;
 
@@ -29,19 +29,24 @@ public class BidirectionalPathTracingIntegrator implements Integrator {
 	private LightList lightList;
 	private Film lightFilm;
 	private Intersectable root;
-	private RandomSampler sampler;
-	private static int count = 0;
+	private SampleStream stream;
 	private final int MAX_EYE_BOUNCES = 20;
 	private final int MAX_LIGHT_BOUNCES = 20; // minimum here is 1, 0 will be treated as 1
 	
 	public BidirectionalPathTracingIntegrator(Scene scene) {
 		this.lightList = scene.getLightList();
 		this.root = scene.getIntersectable();
-		this.sampler = new RandomSampler();
-		this.sampler.init(count++);
 		this.lightFilm = new BoxFilterFilm(scene.getFilm().getWidth(), scene.getFilm().getHeight());
 	}
 	
+	/**
+	 * Vertex s of the eye path uses the dimensions of bounce 2s of the stream, vertex
+	 * t of the light path the ones of bounce 2t+1.
+	 */
+	@Override
+	public void startSample(SampleStream sample) {
+		stream = sample;
+	}
 	
 	@Override
 	public Spectrum integrate(Ray primaryRay) {
@@ -52,7 +57,7 @@ public class BidirectionalPathTracingIntegrator implements Integrator {
 			Vector3f lastDir = lightNode.next.w;
 			Tuple3f lastOrigin = lightNode.h.position;
 			Ray r = new Ray(lastOrigin, lastDir, t, true);
-			lightNode = makePathNode(r);
+			lightNode = makePathNode(r, 2*t + 1);
 			//TODO: russian roulette
 			if (lightNode == null) {
 				break;
@@ -65,7 +70,7 @@ public class BidirectionalPathTracingIntegrator implements Integrator {
 		Ray r = primaryRay;
 		boolean segmentIsSpecular = false;
 		for (int s = 0; s < MAX_EYE_BOUNCES; s++) {
-			PathNode eye = makePathNode(r);
+			PathNode eye = makePathNode(r, 2*s);
 			if (eye == null)
 				return outgoing;
 			Spectrum emission = eye.h.material.evaluateEmission(eye.h, eye.h.w);
@@ -131,12 +136,13 @@ public class BidirectionalPathTracingIntegrator implements Integrator {
 			return s;
 	}
 	
-	public PathNode makePathNode(Ray r) {
+	public PathNode makePathNode(Ray r, int bounce) {
 		HitRecord h = root.intersect(r);
 		if (h == null)
 			return null;		
-		float[][] sample = this.sampler.makeSamples(1, 2);
-		ShadingSample next = h.material.getShadingSample(h, sample[0]);
+		float[] sample = new float[2];
+		stream.get(bounce, SampleStream.BSDF, sample);
+		ShadingSample next = h.material.getShadingSample(h, sample);
 		float Gp = 1/next.p;
 		if (!next.isSpecular)
 			Gp *= h.normal.dot(next.w);
@@ -144,12 +150,14 @@ public class BidirectionalPathTracingIntegrator implements Integrator {
 	}
 	
 	private PathNode traceLightRay() {
-		LightGeometry lightSource = lightList.getRandomLight(this.sampler.makeSamples(1, 2));
-		float[][] sample = this.sampler.makeSamples(1, 2);
-		HitRecord lightHit = lightSource.sample(sample[0]);
-		lightHit.p *= 1f/lightList.size();
-		sample = this.sampler.makeSamples(1, 2);
-		ShadingSample emission = lightHit.material.getEmissionSample(lightHit, sample[0]);
+		LightGeometry lightSource = lightList.getRandomLight(stream.get(1, SampleStream.LIGHT_SELECTION));
+		float[] sample = new float[2];
+		stream.get(1, SampleStream.LIGHT_POSITION, sample);
+		HitRecord lightHit = lightSource.sample(sample);
+		lightHit.p *= lightList.getProbability(lightSource);
+		// The direction of the emission is sampled like a BSDF
+		stream.get(1, SampleStream.BSDF, sample);
+		ShadingSample emission = lightHit.material.getEmissionSample(lightHit, sample);
 
 		float Gp = 1/lightHit.p;
 		return new PathNode(lightHit, Gp, emission, 0);
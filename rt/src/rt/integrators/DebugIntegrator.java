@@ -5,6 +5,7 @@ import javax.vecmath.Vector3f;
 import rt.HitRecord;
 import rt.Integrator;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
@@ -47,6 +48,12 @@ public class DebugIntegrator implements Integrator {
 		// return new Spectrum(r.direction.x/2.f+0.5f, r.direction.y/2.f+0.5f, 0.f);
 	}
 
+	/**
+	 * Does nothing, the integrator is deterministic.
+	 */
+	public void startSample(SampleStream sample) {
+	}
+
 	/**
 	 * Make sample budget for a pixel. Since this integrator only samples the 2D 
 	 * pixel area itself, the samples are 2D.
@@ -2,6 +2,7 @@ package rt.integrators;
 
 import rt.Integrator;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Spectrum;
 
@@ -36,6 +37,11 @@ public class MandelbrotIntegrator implements Integrator {
 		return new Spectrum((float)iteration/(float)max_iteration, (float)iteration/(float)max_iteration, (float)iteration/(float)max_iteration);
 	}
 	
+	public void startSample(SampleStream sample)
+	{
+		// deterministic, nothing to do
+	}
+
 	public float[][] makePixelSamples(Sampler sampler, int n)
 	{
 		return sampler.makeSamples(n, 2);
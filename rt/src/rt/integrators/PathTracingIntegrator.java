@@ -1,73 +1,106 @@
 package rt.integrators;
 
-import java.util.Random;
-
 import javax.vecmath.Vector3f;
 
+import rt.FirstHitIntegrator;
 import rt.HitRecord;
-import rt.Integrator;
 import rt.Intersectable;
 import rt.LightGeometry;
 import rt.LightList;
 import rt.Material.ShadingSample;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
-import rt.samplers.RandomSampler;
-import util.StaticVecmath;
 import util.StdHelper;
 
-public class PathTracingIntegrator implements Integrator {
+/**
+ * A path tracer with next event estimation and Russian roulette. The rays, spectra and
+ * samples of a path are scratch objects of the integrator, which are overwritten on each
+ * bounce, so an integrator must only be used by one thread.
+ */
+public class PathTracingIntegrator implements FirstHitIntegrator {
 
 	private LightList lightList;
 	private Intersectable root;
-	private RandomSampler sampler;
-	private Random bulletGenerator;
+	private SampleStream stream;
 	private StdHelper stdHelper;
 	private final int MAX_BOUNCES = 10;
-	private static int count = 0;
-	
+
+	// Scratch objects, reused for every bounce
+	private final RussianRouletteIterator rr = new RussianRouletteIterator(0,0,0,0,.5f);
+	private final Ray currentRay = new Ray();
+	private final Ray shadowRay = new Ray();
+	private final Spectrum alpha = new Spectrum();
+	private final Spectrum lightContribution = new Spectrum();
+	private final Spectrum emission = new Spectrum();
+	private final Spectrum brdf = new Spectrum();
+	private final ShadingSample shadingSample = new ShadingSample();
+	private final Vector3f lightDir = new Vector3f();
+	private final Vector3f towardsHit = new Vector3f();
+	private final float[] sample = new float[2];
+	private final float[] selectionProbability = new float[1];
+
 	public PathTracingIntegrator(Scene scene) {
 		this.lightList = scene.getLightList();
 		this.root = scene.getIntersectable();
-		this.sampler = new RandomSampler();
-		this.bulletGenerator = new Random(count);
-		this.sampler.init(count++);
 		this.stdHelper = new StdHelper(scene.getSPP());
 		this.stdHelper.update(1, 1); //add some dummy to prevent NaN in beginning
 	}
-	
+
+	/**
+	 * Also restarts the standard deviation estimate for shadow ray russian roulette at
+	 * the first sample of a pixel, so the pixel does not depend on the ones before it.
+	 * When {@link rt.Main} traces camera rays as packets, the samples of the pixels of a
+	 * packet are interleaved, and the estimate is shared by these pixels.
+	 */
+	@Override
+	public void startSample(SampleStream sample) {
+		stream = sample;
+		if (sample.getIndex() == 0) {
+			stdHelper.clear();
+			stdHelper.update(1, 1);
+		}
+	}
+
 	@Override
 	public Spectrum integrate(Ray primaryRay) {
-		Ray currentRay = primaryRay;
+		return integrate(primaryRay, root.intersect(primaryRay));
+	}
+
+	@Override
+	public Spectrum integrate(Ray primaryRay, HitRecord firstHit) {
+		Ray ray = primaryRay;
 		Spectrum outgoing = new Spectrum();
-		Spectrum alpha = new Spectrum(1);
-		RussianRouletteIterator rr = new RussianRouletteIterator(0,0,0,0,.5f);
+		alpha.set(1, 1, 1);
+		rr.reset();
 		int bounce = 0;
 		boolean segmentIsSpecular = false;
 		for(;bounce < MAX_BOUNCES ;bounce++) {
-			HitRecord hit = root.intersect(currentRay);
+			HitRecord hit = bounce == 0 ? firstHit : root.intersect(ray);
 			if (hit == null)
 				break;
-			Spectrum emission = hit.material.evaluateEmission(hit, hit.w);
-			if (emission != null) {
+			if (hit.material.evaluateEmission(hit, hit.w, emission)) {
 				if (bounce == 0 || segmentIsSpecular)
 					outgoing.add(emission);
 				break;
 			}
 
-			Spectrum x = sampleLight(hit, currentRay.t);
-			Spectrum currentBounceContribution = new Spectrum(alpha);
-			currentBounceContribution.mult(x);
-			outgoing.add(currentBounceContribution);
-			Float rrProbability = rr.next();
-			if (bulletGenerator.nextFloat() < rrProbability)
+			if (sampleLight(hit, ray.t, bounce, lightContribution)) {
+				outgoing.r += alpha.r*lightContribution.r;
+				outgoing.g += alpha.g*lightContribution.g;
+				outgoing.b += alpha.b*lightContribution.b;
+			}
+			float rrProbability = rr.nextProbability();
+			if (stream.get(bounce, SampleStream.RUSSIAN_ROULETTE) < rrProbability)
 				break;
-			ShadingSample s = hit.material.getShadingSample(hit, this.sampler.makeSamples(1, 2)[0]);
-			if (s == null) // Total internal refraction or some bs
+			stream.get(bounce, SampleStream.BSDF, sample);
+			ShadingSample s = shadingSample;
+			if (!hit.material.getShadingSample(hit, sample, s)) // Total internal refraction or some bs
 				break;
-			currentRay = new Ray(hit.position, s.w, currentRay.t, bounce + 1, true);
+			currentRay.set(hit.position, s.w, ray.t, bounce + 1, true);
+			ray = currentRay;
 			alpha.mult(s.brdf);
 			if (!s.isSpecular) {
 				segmentIsSpecular = false;
@@ -80,63 +113,69 @@ public class PathTracingIntegrator implements Integrator {
 		stdHelper.update(outgoing.getLuminance(), bounce + 1);
 		return outgoing;
 	}
-	
-	private Spectrum sampleLight(HitRecord hitRecord, float t) {
-		float[][] sample = this.sampler.makeSamples(1, 2);
-		LightGeometry lightSource = lightList.getRandomLight(this.sampler.makeSamples(1, 2));
-
-		HitRecord lightHit = lightSource.sample(sample[0]);
-		
-		Vector3f lightDir = StaticVecmath.sub(lightHit.position, hitRecord.position);
+
+	/**
+	 * Samples a random light source and writes its contribution to the hit into result.
+	 *
+	 * @return false if the light does not contribute, result is undefined then
+	 */
+	private boolean sampleLight(HitRecord hitRecord, float t, int bounce, Spectrum result) {
+		stream.get(bounce, SampleStream.LIGHT_POSITION, sample);
+		LightGeometry lightSource = lightList.getRandomLight(stream.get(bounce, SampleStream.LIGHT_SELECTION), hitRecord, selectionProbability);
+		if (lightSource == null)
+			return false;
+
+		HitRecord lightHit = lightSource.sample(sample);
+
+		lightDir.sub(lightHit.position, hitRecord.position);
 		float d2 = lightDir.lengthSquared();
 		lightDir.normalize();
-		
+		towardsHit.negate(lightDir);
+
 		float cosLight;
 		if (lightHit.normal != null) {
-			cosLight = lightHit.normal.dot(StaticVecmath.negate(lightDir));
+			cosLight = lightHit.normal.dot(towardsHit);
 			if (cosLight <= 0)
-				return new Spectrum(); // stay black if hit light from behind
+				return false; // stay black if hit light from behind
 		} else cosLight = 1; //for point lights
-		
-		// Evaluate the BRDF, probability is saved in p of hitRecord, must be done first bc may change hitRecord.normal
-		Spectrum brdfValue = hitRecord.material.evaluateBRDF(hitRecord, hitRecord.w, lightDir);		 
+
+		// Evaluate the BRDF, must be done first bc may change hitRecord.normal
+		hitRecord.material.evaluateBRDF(hitRecord, hitRecord.w, lightDir, brdf);
 
 		float cosHit = hitRecord.normal.dot(lightDir);
 		cosHit = Math.max(cosHit, 0.f);
-		
-		Spectrum s = new Spectrum(brdfValue);
-		// Multiply with emission
-		Spectrum emission = lightHit.material.evaluateEmission(lightHit, StaticVecmath.negate(lightDir));
-		
-		// Multiply with cosine of surface normal and incident direction
-		emission.mult(cosHit);
-		
-		s.mult(emission);	
-		
-		
+
+		result.set(brdf);
+		// Multiply with emission and cosine of surface normal and incident direction
+		lightHit.material.evaluateEmission(lightHit, towardsHit, emission);
+		result.mult(emission);
+		result.mult(cosHit);
+
 		// adapt probability to hit exactly that light
-		float probability = lightHit.p/lightList.size();
+		float probability = lightHit.p*selectionProbability[0];
 
 		// turn into directional probability
 		float dirProbablity = probability * d2 / cosLight;
-		s.mult(1f/dirProbablity);
-		
+		result.mult(1f/dirProbablity);
+
 		// russian roulette for shadow ray, probability for continuing ray
 		float delta = stdHelper.getDelta();
-		float contribution = s.getLuminance();
+		float contribution = result.getLuminance();
 		float rrProbability = Math.min(1, contribution/(delta + 1e-5f));
-		if (bulletGenerator.nextFloat() > rrProbability || contribution == 0)
-			return new Spectrum();
-		
-		Ray shadowRay = new Ray(hitRecord.position, lightDir, t, 0, true);
+		if (stream.get(bounce, SampleStream.SHADOW_RUSSIAN_ROULETTE) > rrProbability || contribution == 0)
+			return false;
+
+		shadowRay.set(hitRecord.position, lightDir, t, 0, true);
 		HitRecord shadowHit = root.intersect(shadowRay);
-		if (shadowHit != null &&
-				StaticVecmath.dist2(shadowHit.position, hitRecord.position) + 1e-5f < d2) //only if closer than light
-			return new Spectrum();
+		if (shadowHit != null) {
+			towardsHit.sub(shadowHit.position, hitRecord.position);
+			if (towardsHit.lengthSquared() + 1e-5f < d2) //only if closer than light
+				return false;
+		}
 
-		s.mult(1f/rrProbability);
-		assert !Float.isNaN(s.getLuminance());
-		return s;
+		result.mult(1f/rrProbability);
+		assert !Float.isNaN(result.getLuminance());
+		return true;
 	}
 
 	@Override
@@ -4,12 +4,13 @@ import java.util.Iterator;
 
 import javax.vecmath.*;
 
+import rt.FirstHitIntegrator;
 import rt.HitRecord;
-import rt.Integrator;
 import rt.Intersectable;
 import rt.LightList;
 import rt.LightGeometry;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
@@ -18,7 +19,7 @@ import util.StaticVecmath;
 /**
  * Integrator for Whitted style ray tracing. This is a basic version that needs to be extended!
  */
-public class PointLightIntegrator implements Integrator {
+public class PointLightIntegrator implements FirstHitIntegrator {
 
 	LightList lightList;
 	Intersectable root;
@@ -35,8 +36,11 @@ public class PointLightIntegrator implements Integrator {
 	 * area light sources, etc. supported.
 	 */
 	public Spectrum integrate(Ray r) {
+		return integrate(r, root.intersect(r));
+	}
 
-		HitRecord hitRecord = root.intersect(r);
+	@Override
+	public Spectrum integrate(Ray r, HitRecord hitRecord) {
 		if(hitRecord != null)
 		{
 			Spectrum outgoing = new Spectrum(0.f, 0.f, 0.f);
@@ -88,6 +92,10 @@ public class PointLightIntegrator implements Integrator {
 		
 	}
 
+	public void startSample(SampleStream sample) {
+		// deterministic, nothing to do
+	}
+
 	public float[][] makePixelSamples(Sampler sampler, int n) {
 		return sampler.makeSamples(n, 2);
 	}
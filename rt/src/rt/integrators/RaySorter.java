@@ -0,0 +1,130 @@
+package rt.integrators;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import rt.HitRecord;
+import rt.Material;
+import rt.Ray;
+
+/**
+ * Reorders queues of rays and hits of batched integrators for coherence. Rays are sorted
+ * by the octant of their direction and then by the Morton code of the cell of their
+ * origin, on a 1024^3 grid over the origins of the queue. Rays that start close to each
+ * other and go in similar directions then traverse the scene one after the other and
+ * find the same nodes and primitives in the caches. Hits are grouped by the class of
+ * their material, so the same shading code runs on consecutive hits.
+ * <p>
+ * The queues hold indices into arrays of rays or hits. They are sorted with a stable
+ * radix sort, the sorter keeps its buffers between calls.
+ */
+public class RaySorter {
+
+	private static final int CELL_BITS = 10;
+	private static final int RADIX_BITS = 11;
+
+	private long[] keys = new long[0], keysTmp = new long[0];
+	private int[] queueTmp = new int[0];
+	private final HashMap<Class<? extends Material>, Integer> materialIds = new HashMap<>();
+
+	/**
+	 * Sorts the first n entries of the queue by direction octant and origin cell of their rays.
+	 */
+	public void sortByOrigin(int[] queue, int n, Ray[] rays) {
+		if (n < 2)
+			return;
+		ensureCapacity(n);
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int k = 0; k < n; k++) {
+			Ray r = rays[queue[k]];
+			minX = Math.min(minX, r.origin.x);
+			minY = Math.min(minY, r.origin.y);
+			minZ = Math.min(minZ, r.origin.z);
+			maxX = Math.max(maxX, r.origin.x);
+			maxY = Math.max(maxY, r.origin.y);
+			maxZ = Math.max(maxZ, r.origin.z);
+		}
+		for (int k = 0; k < n; k++) {
+			Ray r = rays[queue[k]];
+			long octant = (r.direction.x < 0 ? 1 : 0) | (r.direction.y < 0 ? 2 : 0) | (r.direction.z < 0 ? 4 : 0);
+			long morton = spread(cell(r.origin.x, minX, maxX)) | spread(cell(r.origin.y, minY, maxY)) << 1
+					| spread(cell(r.origin.z, minZ, maxZ)) << 2;
+			keys[k] = octant << 3*CELL_BITS | morton;
+		}
+		sortByKeys(queue, n, 3*CELL_BITS + 3);
+	}
+
+	/**
+	 * Sorts the first n entries of the queue by the material class of their hits, misses first.
+	 */
+	public void sortByMaterial(int[] queue, int n, HitRecord[] hits) {
+		if (n < 2)
+			return;
+		ensureCapacity(n);
+		for (int k = 0; k < n; k++) {
+			HitRecord hit = hits[queue[k]];
+			keys[k] = hit == null || hit.material == null ? 0 : materialId(hit.material);
+		}
+		sortByKeys(queue, n, 32 - Integer.numberOfLeadingZeros(materialIds.size()));
+	}
+
+	private int materialId(Material material) {
+		Integer id = materialIds.get(material.getClass());
+		if (id == null) {
+			id = materialIds.size() + 1;
+			materialIds.put(material.getClass(), id);
+		}
+		return id;
+	}
+
+	private static long cell(float x, float min, float max) {
+		if (max <= min)
+			return 0;
+		int cells = 1 << CELL_BITS;
+		return Math.min((int) ((x - min)/(max - min)*cells), cells - 1);
+	}
+
+	/**
+	 * Spreads the lower 10 bits of x so there are two zero bits between each of them.
+	 */
+	private static long spread(long x) {
+		x = (x | x << 16) & 0x30000ff;
+		x = (x | x << 8) & 0x300f00f;
+		x = (x | x << 4) & 0x30c30c3;
+		x = (x | x << 2) & 0x9249249;
+		return x;
+	}
+
+	/**
+	 * Least significant digit radix sort of the queue by the lower bits of the keys.
+	 */
+	private void sortByKeys(int[] queue, int n, int bits) {
+		int[] counts = new int[(1 << RADIX_BITS) + 1];
+		for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+			Arrays.fill(counts, 0);
+			int mask = (1 << RADIX_BITS) - 1;
+			for (int k = 0; k < n; k++)
+				counts[(int) (keys[k] >>> shift & mask) + 1]++;
+			for (int d = 0; d < 1 << RADIX_BITS; d++)
+				counts[d+1] += counts[d];
+			for (int k = 0; k < n; k++) {
+				int to = counts[(int) (keys[k] >>> shift & mask)]++;
+				keysTmp[to] = keys[k];
+				queueTmp[to] = queue[k];
+			}
+			long[] tmp = keys;
+			keys = keysTmp;
+			keysTmp = tmp;
+			System.arraycopy(queueTmp, 0, queue, 0, n);
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if (keys.length >= n)
+			return;
+		keys = new long[n];
+		keysTmp = new long[n];
+		queueTmp = new int[n];
+	}
+}
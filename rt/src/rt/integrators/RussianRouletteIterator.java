@@ -19,6 +19,13 @@ public class RussianRouletteIterator implements Iterator<Float>{
 
 	@Override
 	public Float next() {
+		return nextProbability();
+	}
+
+	/**
+	 * Like {@link #next()}, without boxing the probability.
+	 */
+	public float nextProbability() {
 		if (i + 1 < floats.length) {
 			float next = floats[i];
 			i++;
@@ -27,6 +34,13 @@ public class RussianRouletteIterator implements Iterator<Float>{
 			return last;
 	}
 
+	/**
+	 * Starts over with the first probability, so an iterator can be reused for the next path.
+	 */
+	public void reset() {
+		i = 0;
+	}
+
 	@Override
 	public void remove() {
 		throw new RuntimeException("Not supported.");
@@ -0,0 +1,299 @@
+package rt.integrators;
+
+import javax.vecmath.Vector3f;
+
+import rt.BatchIntegrator;
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.LightGeometry;
+import rt.LightList;
+import rt.Material.ShadingSample;
+import rt.Ray;
+import rt.SampleStream;
+import rt.Sampler;
+import rt.Scene;
+import rt.Spectrum;
+import util.StaticVecmath;
+
+/**
+ * A path tracer that advances a whole batch of paths one bounce at a time, in stages
+ * that each process all paths of the batch:
+ * <ol>
+ * <li>extend: find the next hit of all active paths,</li>
+ * <li>shade: add emission, sample a light source and the next direction,</li>
+ * <li>connect: trace the shadow rays of the light samples,</li>
+ * <li>accumulate: add the unoccluded light samples to the paths.</li>
+ * </ol>
+ * The state of the paths is kept in primitive arrays indexed by path. The queues of
+ * active paths and shadow rays are compacted after each stage, and the active paths
+ * are ordered by the octant of their ray direction before they are extended. Optionally,
+ * a {@link RaySorter} also orders secondary and shadow rays by their origin and groups
+ * the hits by material before shading.
+ * <p>
+ * Samples the same estimator as {@link PathTracingIntegrator}, with next event
+ * estimation and Russian roulette after four bounces, but traces every shadow ray
+ * instead of applying Russian roulette to them. Emission that is reached by specular
+ * bounces is weighted with the throughput of the path.
+ */
+public class WavefrontPathTracingIntegrator implements BatchIntegrator {
+
+	private static final int MAX_BOUNCES = 10;
+	/**
+	 * Probability to terminate a path, per bounce, the last one is used for all later bounces.
+	 */
+	private static final float[] TERMINATION_PROBABILITIES = {0, 0, 0, 0, .5f};
+
+	private final LightList lightList;
+	private final Intersectable root;
+	private final RaySorter sorter;
+	private SampleStream stream;
+
+	// Path state
+	private Ray[] rays = new Ray[0];
+	private HitRecord[] hits = new HitRecord[0];
+	private float[] throughput = new float[0];
+	private float[] radiance = new float[0];
+	private boolean[] specular = new boolean[0];
+	private SampleStream[] samples = new SampleStream[0];
+	private int[] queue = new int[0], nextQueue = new int[0];
+
+	// Shadow ray queue
+	private int[] shadowPaths = new int[0];
+	private Ray[] shadowRays = new Ray[0];
+	private float[] shadowContributions = new float[0];
+	private float[] shadowDistances2 = new float[0];
+	private boolean[] shadowVisible = new boolean[0];
+	private int[] shadowOrder = new int[0];
+	private int nShadowRays;
+
+	// Scratch objects for shading
+	private final Spectrum emission = new Spectrum();
+	private final Spectrum brdf = new Spectrum();
+	private final ShadingSample shadingSample = new ShadingSample();
+	private final Vector3f lightDir = new Vector3f();
+	private final Vector3f towardsHit = new Vector3f();
+	private final float[] sample = new float[2];
+	private final float[] selectionProbability = new float[1];
+
+	public WavefrontPathTracingIntegrator(Scene scene) {
+		this(scene, false);
+	}
+
+	/**
+	 * @param sortRays if true, rays are sorted by origin and direction and hits by material
+	 */
+	public WavefrontPathTracingIntegrator(Scene scene, boolean sortRays) {
+		this.sorter = sortRays ? new RaySorter() : null;
+		this.lightList = scene.getLightList();
+		this.root = scene.getIntersectable();
+	}
+
+	@Override
+	public void startSample(SampleStream sample) {
+		this.stream = sample;
+	}
+
+	@Override
+	public Spectrum integrate(Ray r) {
+		Spectrum[] result = new Spectrum[1];
+		integrate(new Ray[] {r}, new SampleStream[] {stream}, 1, result);
+		return result[0];
+	}
+
+	@Override
+	public void integrate(Ray[] cameraRays, SampleStream[] cameraSamples, int n, Spectrum[] results) {
+		ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			rays[i] = cameraRays[i];
+			samples[i] = cameraSamples[i];
+			throughput[i*3] = throughput[i*3+1] = throughput[i*3+2] = 1;
+			radiance[i*3] = radiance[i*3+1] = radiance[i*3+2] = 0;
+			specular[i] = false;
+			queue[i] = i;
+		}
+		int active = n;
+		for (int bounce = 0; bounce < MAX_BOUNCES && active > 0; bounce++) {
+			if (sorter != null && bounce > 0)
+				sorter.sortByOrigin(queue, active, rays);
+			else
+				sortByOctant(active);
+			extend(active);
+			if (sorter != null)
+				sorter.sortByMaterial(queue, active, hits);
+			active = shade(active, bounce);
+			connect();
+			accumulate();
+			int[] tmp = queue;
+			queue = nextQueue;
+			nextQueue = tmp;
+		}
+		for (int i = 0; i < n; i++)
+			results[i] = new Spectrum(radiance[i*3], radiance[i*3+1], radiance[i*3+2]);
+	}
+
+	private void ensureCapacity(int n) {
+		if (rays.length >= n)
+			return;
+		rays = new Ray[n];
+		hits = new HitRecord[n];
+		throughput = new float[n*3];
+		radiance = new float[n*3];
+		specular = new boolean[n];
+		samples = new SampleStream[n];
+		queue = new int[n];
+		nextQueue = new int[n];
+		shadowPaths = new int[n];
+		shadowRays = new Ray[n];
+		shadowContributions = new float[n*3];
+		shadowDistances2 = new float[n];
+		shadowVisible = new boolean[n];
+		shadowOrder = new int[n];
+	}
+
+	/**
+	 * Reorders the active paths by the octant of their ray direction, so rays that
+	 * traverse the scene in the same order are traced one after the other.
+	 */
+	private void sortByOctant(int active) {
+		int[] start = new int[9];
+		for (int k = 0; k < active; k++)
+			start[octant(rays[queue[k]]) + 1]++;
+		for (int o = 0; o < 8; o++)
+			start[o+1] += start[o];
+		for (int k = 0; k < active; k++)
+			nextQueue[start[octant(rays[queue[k]])]++] = queue[k];
+		int[] tmp = queue;
+		queue = nextQueue;
+		nextQueue = tmp;
+	}
+
+	private static int octant(Ray r) {
+		return (r.direction.x < 0 ? 1 : 0) | (r.direction.y < 0 ? 2 : 0) | (r.direction.z < 0 ? 4 : 0);
+	}
+
+	private void extend(int active) {
+		for (int k = 0; k < active; k++) {
+			int path = queue[k];
+			hits[path] = root.intersect(rays[path]);
+		}
+	}
+
+	/**
+	 * Shades the hits of the active paths. Queues a shadow ray for each light sample and
+	 * the paths that continue into {@link #nextQueue}.
+	 *
+	 * @return the number of paths that continue
+	 */
+	private int shade(int active, int bounce) {
+		float terminationProbability = TERMINATION_PROBABILITIES[Math.min(bounce, TERMINATION_PROBABILITIES.length - 1)];
+		nShadowRays = 0;
+		int next = 0;
+		for (int k = 0; k < active; k++) {
+			int path = queue[k];
+			HitRecord hit = hits[path];
+			if (hit == null)
+				continue;
+			if (hit.material.evaluateEmission(hit, hit.w, emission)) {
+				if (bounce == 0 || specular[path]) {
+					radiance[path*3] += throughput[path*3]*emission.r;
+					radiance[path*3+1] += throughput[path*3+1]*emission.g;
+					radiance[path*3+2] += throughput[path*3+2]*emission.b;
+				}
+				continue;
+			}
+
+			sampleLight(path, hit, bounce);
+			if (samples[path].get(bounce, SampleStream.RUSSIAN_ROULETTE) < terminationProbability)
+				continue;
+			samples[path].get(bounce, SampleStream.BSDF, sample);
+			ShadingSample s = shadingSample;
+			if (!hit.material.getShadingSample(hit, sample, s)) // Total internal reflection
+				continue;
+			rays[path] = new Ray(hit.position, s.w, rays[path].t, bounce + 1, true);
+			float weight = 1/(s.p*(1 - terminationProbability));
+			if (!s.isSpecular)
+				weight *= hit.normal.dot(s.w);
+			specular[path] = s.isSpecular;
+			throughput[path*3] *= s.brdf.r*weight;
+			throughput[path*3+1] *= s.brdf.g*weight;
+			throughput[path*3+2] *= s.brdf.b*weight;
+			nextQueue[next++] = path;
+		}
+		return next;
+	}
+
+	/**
+	 * Samples a random light source and queues a shadow ray for it, if it contributes.
+	 */
+	private void sampleLight(int path, HitRecord hit, int bounce) {
+		samples[path].get(bounce, SampleStream.LIGHT_POSITION, sample);
+		LightGeometry lightSource = lightList.getRandomLight(samples[path].get(bounce, SampleStream.LIGHT_SELECTION), hit, selectionProbability);
+		if (lightSource == null)
+			return;
+		HitRecord lightHit = lightSource.sample(sample);
+
+		lightDir.sub(lightHit.position, hit.position);
+		float d2 = lightDir.lengthSquared();
+		lightDir.normalize();
+		towardsHit.negate(lightDir);
+		float cosLight = 1; // for point lights
+		if (lightHit.normal != null) {
+			cosLight = lightHit.normal.dot(towardsHit);
+			if (cosLight <= 0)
+				return;
+		}
+
+		// May change the normal of the hit record, so it comes first
+		hit.material.evaluateBRDF(hit, hit.w, lightDir, brdf);
+		float cosHit = Math.max(hit.normal.dot(lightDir), 0.f);
+		lightHit.material.evaluateEmission(lightHit, towardsHit, emission);
+		float directionalProbability = lightHit.p*selectionProbability[0]*d2/cosLight;
+		float weight = cosHit/directionalProbability;
+		float r = brdf.r*emission.r*weight, g = brdf.g*emission.g*weight, b = brdf.b*emission.b*weight;
+		if (r == 0 && g == 0 && b == 0)
+			return;
+
+		int i = nShadowRays++;
+		shadowPaths[i] = path;
+		shadowRays[i] = new Ray(hit.position, lightDir, rays[path].t, 0, true);
+		shadowDistances2[i] = d2;
+		shadowContributions[i*3] = throughput[path*3]*r;
+		shadowContributions[i*3+1] = throughput[path*3+1]*g;
+		shadowContributions[i*3+2] = throughput[path*3+2]*b;
+	}
+
+	/**
+	 * Traces the queued shadow rays.
+	 */
+	private void connect() {
+		for (int k = 0; k < nShadowRays; k++)
+			shadowOrder[k] = k;
+		if (sorter != null)
+			sorter.sortByOrigin(shadowOrder, nShadowRays, shadowRays);
+		for (int k = 0; k < nShadowRays; k++) {
+			int i = shadowOrder[k];
+			HitRecord shadowHit = root.intersect(shadowRays[i]);
+			shadowVisible[i] = shadowHit == null ||
+					StaticVecmath.dist2(shadowHit.position, hits[shadowPaths[i]].position) + 1e-5f >= shadowDistances2[i];
+		}
+	}
+
+	/**
+	 * Adds the contributions of the unoccluded light samples to their paths.
+	 */
+	private void accumulate() {
+		for (int i = 0; i < nShadowRays; i++) {
+			if (!shadowVisible[i])
+				continue;
+			int path = shadowPaths[i];
+			radiance[path*3] += shadowContributions[i*3];
+			radiance[path*3+1] += shadowContributions[i*3+1];
+			radiance[path*3+2] += shadowContributions[i*3+2];
+		}
+	}
+
+	@Override
+	public float[][] makePixelSamples(Sampler sampler, int n) {
+		return sampler.makeSamples(n, 2);
+	}
+}
@@ -0,0 +1,34 @@
+package rt.integrators;
+
+import rt.Integrator;
+import rt.IntegratorFactory;
+import rt.Scene;
+
+public class WavefrontPathTracingIntegratorFactory implements IntegratorFactory {
+
+	private final boolean sortRays;
+
+	public WavefrontPathTracingIntegratorFactory() {
+		this(false);
+	}
+
+	/**
+	 * @param sortRays if true, secondary and shadow rays are sorted for coherence, see {@link RaySorter}
+	 */
+	public WavefrontPathTracingIntegratorFactory(boolean sortRays) {
+		this.sortRays = sortRays;
+	}
+
+	@Override
+	public Integrator make(Scene scene) {
+		return new WavefrontPathTracingIntegrator(scene, sortRays);
+	}
+
+	@Override
+	public void prepareScene(Scene scene) {
+		// NOTHING
+	}
+
+	@Override
+	public void finish(Scene scene) {}
+}
@@ -5,37 +5,44 @@ import java.util.Iterator;
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
 
+import rt.FirstHitIntegrator;
 import rt.HitRecord;
-import rt.Integrator;
 import rt.Intersectable;
 import rt.LightGeometry;
 import rt.LightList;
 import rt.Material.ShadingSample;
-import rt.samplers.RandomSampler;
 import rt.Ray;
+import rt.SampleStream;
 import rt.Sampler;
 import rt.Scene;
 import rt.Spectrum;
 import util.StaticVecmath;
 
-public class WhittedIntegrator implements Integrator {
+public class WhittedIntegrator implements FirstHitIntegrator {
 
 	LightList lightList;
 	Intersectable root;
 	private final int MAX_DEPTH = 5;
-	private RandomSampler sampler;
+	private SampleStream stream;
 	
 	public WhittedIntegrator(Scene scene)
 	{
 		this.lightList = scene.getLightList();
 		this.root = scene.getIntersectable();
-		this.sampler = new RandomSampler();
+	}
+
+	@Override
+	public void startSample(SampleStream sample) {
+		stream = sample;
 	}
 
 	@Override
 	public Spectrum integrate(Ray r) {
+		return integrate(r, root.intersect(r));
+	}
 
-		HitRecord hitRecord = root.intersect(r);
+	@Override
+	public Spectrum integrate(Ray r, HitRecord hitRecord) {
 		if (hitRecord == null)
 			return new Spectrum(0.f,0.f,0.f);
 		
@@ -77,12 +84,14 @@ public class WhittedIntegrator implements Integrator {
 		Spectrum brdfValue;
 		// Iterate over all light sources
 		Iterator<LightGeometry> it = lightList.iterator();
+		// The same sample for all light sources
+		float[] sample = new float[2];
+		stream.get(r.depth, SampleStream.LIGHT_POSITION, sample);
 		while(it.hasNext())
 		{
 			LightGeometry lightSource = it.next();
 			
-			float[][] sample = this.sampler.makeSamples(1, 2);
-			HitRecord lightHit = lightSource.sample(sample[0]);
+			HitRecord lightHit = lightSource.sample(sample);
 			Vector3f lightDir = StaticVecmath.sub(lightHit.position, hitRecord.position);
 			float d2 = lightDir.lengthSquared();
 			lightDir.normalize();
@@ -6,11 +6,13 @@ import javax.vecmath.Point3f;
 import rt.HitRecord;
 import rt.Intersectable;
 import rt.Material;
+import rt.PacketIntersectable;
 import rt.Ray;
+import rt.RayPacket;
 import rt.accelerators.BoundingBox;
 import rt.materials.Diffuse;
 
-public class Instance implements Intersectable {
+public class Instance implements PacketIntersectable {
 
 	private Intersectable intersectable;
 	public Material material;
@@ -22,6 +24,14 @@ public class Instance implements Intersectable {
 		this.material = new Diffuse(); //default material
 	}
 
+	public Intersectable getIntersectable() {
+		return intersectable;
+	}
+
+	public InstanceHelper getInstanceHelper() {
+		return instanceHelper;
+	}
+
 	@Override
 	public HitRecord intersect(Ray r) {
 		Ray instanceRay = instanceHelper.transform(r);
@@ -33,6 +43,20 @@ public class Instance implements Intersectable {
 		return h;
 	}
 
+	@Override
+	public void intersect(RayPacket packet, HitRecord[] hits) {
+		RayPacket instancePacket = new RayPacket();
+		for (int i = 0; i < packet.size(); i++)
+			instancePacket.add(instanceHelper.transform(packet.rays[i]));
+		RayPacket.intersect(intersectable, instancePacket, hits);
+		for (int i = 0; i < packet.size(); i++) {
+			if (hits[i] != null) {
+				hits[i] = instanceHelper.transformBack(hits[i]);
+				hits[i].material = this.material;
+			}
+		}
+	}
+
 	@Override
 	public BoundingBox getBoundingBox() {
 		return instanceHelper.transform(intersectable.getBoundingBox());
@@ -22,6 +22,13 @@ public class InstanceHelper {
 		this.tinverseTanspose.transpose();
 	}
 	
+	/**
+	 * @return a copy of the transformation from instance to world coordinates
+	 */
+	public Matrix4f getTransformation() {
+		return new Matrix4f(t);
+	}
+
 	public Ray transform(Ray r) {
 		Point3f instanceOrigin = new Point3f(r.origin);
 		Vector3f instanceDir = new Vector3f(r.direction);
@@ -1,5 +1,9 @@
 package rt.intersectables;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.Iterator;
 
 import javax.vecmath.Point3f;
@@ -15,6 +19,13 @@ import util.StaticVecmath;
  * A triangle mesh. The mesh internally stores the triangles using vertex
  * and index arrays. The mesh also instantiates a {@link MeshTriangle} for each triangle,
  * and the mesh provides an iterator to iterate through the triangles.
+ * <p>
+ * For huge meshes the data may instead be kept off the heap, in direct or memory mapped
+ * buffers, see {@link #Mesh(FloatBuffer, FloatBuffer, FloatBuffer, IntBuffer)} and
+ * {@link #toDirect()}. The arrays are null then and the triangles are only made on demand,
+ * so the heap does not grow with the size of the mesh. Code that should work with both
+ * kinds of meshes reads the data through {@link #vertex(int)}, {@link #normal(int)},
+ * {@link #texCoord(int)} and {@link #index(int)}.
  */
 public class Mesh extends Aggregate {
 
@@ -28,15 +39,30 @@ public class Mesh extends Aggregate {
 	 */
 	public float[] normals;
 	
+	/**
+	 * Array of texture coordinates (one per vertex). Stores u,v coordinates for each vertex 
+	 * consecutively. May be null if the mesh has no texture coordinates.
+	 */
+	public float[] texCoords;
+	
 	/**
 	 * Index array. Each triangle is defined by three consecutive
-	 * indices in this array. The indices refer to the {@link Mesh#vertices} 
-	 * and {@link Mesh#normals} arrays that store vertex and normal coordinates.
+	 * indices in this array. The indices refer to the {@link Mesh#vertices}, 
+	 * {@link Mesh#normals} and {@link Mesh#texCoords} arrays that store vertex, normal 
+	 * and texture coordinates. Vertices may be shared by several triangles.
 	 */
 	public int[] indices;
 	
 	/**
-	 * Array of triangles stored in the mesh.
+	 * Off-heap storage, only used if the arrays above are null.
+	 */
+	private FloatBuffer vertexBuffer, normalBuffer, texCoordBuffer;
+	private IntBuffer indexBuffer;
+	
+	private final int nTriangles;
+	
+	/**
+	 * Array of triangles stored in the mesh, null for off-heap meshes.
 	 */
 	private MeshTriangle[] triangles;
 	
@@ -51,13 +77,24 @@ public class Mesh extends Aggregate {
 	 * Make a mesh from arrays with vertices, normals, and indices.
 	 */
 	public Mesh(float[] vertices, float[] normals, int[] indices)
+	{
+		this(vertices, normals, null, indices);
+	}
+	
+	/**
+	 * Make a mesh from arrays with vertices, normals, texture coordinates and indices.
+	 * The texture coordinates may be null.
+	 */
+	public Mesh(float[] vertices, float[] normals, float[] texCoords, int[] indices)
 	{
 		material = new Diffuse(new Spectrum(1.f, 1.f, 1.f));
 		
 		this.vertices = vertices;
 		this.normals = normals;
+		this.texCoords = texCoords;
 		this.indices = indices;
-		triangles = new MeshTriangle[indices.length/3];		
+		nTriangles = indices.length/3;
+		triangles = new MeshTriangle[nTriangles];		
 		
 		Point3f min = new Point3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
 		Point3f max = new Point3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
@@ -73,31 +110,141 @@ public class Mesh extends Aggregate {
 		this.boundingBox = new BoundingBox(min, max);
 	}
 	
+	/**
+	 * Make a mesh that reads its data from buffers, e.g. direct buffers or views on a
+	 * memory mapped file. The texture coordinates may be null. The buffers are read with
+	 * absolute gets only, so they may be shared by several threads.
+	 */
+	public Mesh(FloatBuffer vertices, FloatBuffer normals, FloatBuffer texCoords, IntBuffer indices)
+	{
+		material = new Diffuse(new Spectrum(1.f, 1.f, 1.f));
+		
+		this.vertexBuffer = vertices;
+		this.normalBuffer = normals;
+		this.texCoordBuffer = texCoords;
+		this.indexBuffer = indices;
+		nTriangles = indices.limit()/3;
+		
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < indices.limit(); i++) {
+			int v = indices.get(i)*3;
+			float x = vertices.get(v), y = vertices.get(v+1), z = vertices.get(v+2);
+			minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+		}
+		this.boundingBox = new BoundingBox(new Point3f(minX, minY, minZ), new Point3f(maxX, maxY, maxZ));
+	}
+	
+	/**
+	 * Copies the data of this mesh into direct buffers, which are not part of the heap.
+	 * The returned mesh has the same material.
+	 */
+	public Mesh toDirect()
+	{
+		int nVertices = getVertexCount();
+		FloatBuffer v = ByteBuffer.allocateDirect(nVertices*3*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		FloatBuffer n = ByteBuffer.allocateDirect(nVertices*3*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		FloatBuffer t = null;
+		IntBuffer i = ByteBuffer.allocateDirect(nTriangles*3*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		boolean hasTexCoords = hasTexCoords();
+		if (hasTexCoords)
+			t = ByteBuffer.allocateDirect(nVertices*2*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		for (int k = 0; k < nVertices*3; k++) {
+			v.put(k, vertex(k));
+			n.put(k, normal(k));
+		}
+		for (int k = 0; hasTexCoords && k < nVertices*2; k++)
+			t.put(k, texCoord(k));
+		for (int k = 0; k < nTriangles*3; k++)
+			i.put(k, index(k));
+		Mesh direct = new Mesh(v, n, t, i);
+		direct.material = material;
+		return direct;
+	}
+	
+	/**
+	 * @return true if the data of this mesh is stored in buffers instead of the arrays
+	 */
+	public boolean isOffHeap()
+	{
+		return indices == null;
+	}
+	
+	/**
+	 * @return the number of vertices, i.e. a third of the length of the vertex array
+	 */
+	public int getVertexCount()
+	{
+		return vertices != null ? vertices.length/3 : vertexBuffer.limit()/3;
+	}
+	
+	/**
+	 * @return true if the mesh has texture coordinates
+	 */
+	public boolean hasTexCoords()
+	{
+		return texCoords != null || texCoordBuffer != null;
+	}
+	
+	/**
+	 * @return the i-th value of the vertex array, i.e. coordinate i%3 of vertex i/3
+	 */
+	public float vertex(int i)
+	{
+		return vertices != null ? vertices[i] : vertexBuffer.get(i);
+	}
+	
+	/**
+	 * @return the i-th value of the normal array
+	 */
+	public float normal(int i)
+	{
+		return normals != null ? normals[i] : normalBuffer.get(i);
+	}
+	
+	/**
+	 * @return the i-th value of the texture coordinate array, the mesh needs to have texture coordinates
+	 */
+	public float texCoord(int i)
+	{
+		return texCoords != null ? texCoords[i] : texCoordBuffer.get(i);
+	}
+	
+	/**
+	 * @return the i-th value of the index array, i.e. vertex i%3 of triangle i/3
+	 */
+	public int index(int i)
+	{
+		return indices != null ? indices[i] : indexBuffer.get(i);
+	}
+	
+	/**
+	 * @return the triangle with the given index, made on demand for off-heap meshes
+	 */
+	public MeshTriangle getTriangle(int i)
+	{
+		return triangles != null ? triangles[i] : new MeshTriangle(this, i);
+	}
+	
 	public Iterator<Intersectable> iterator() {
-		return new MeshIterator(triangles);
+		return new MeshIterator();
 	}
 	
 	private class MeshIterator implements Iterator<Intersectable>
 	{
 		private int i;
-		private MeshTriangle[] triangles;
-		
-		public MeshIterator(MeshTriangle[] triangles)
-		{
-			this.triangles = triangles;
-			i = 0;
-		}
 		
 		public boolean hasNext()
 		{
-			return i<triangles.length;
+			return i<nTriangles;
 		}
 		
 		public MeshTriangle next()
 		{
 			int j = i;
 			i++;
-			return triangles[j];
+			return getTriangle(j);
 		}
 		
 		public void remove()
@@ -107,7 +254,7 @@ public class Mesh extends Aggregate {
 
 	@Override
 	public int size() {
-		return triangles.length;
+		return nTriangles;
 	}
 
 	@Override
@@ -32,16 +32,14 @@ public class MeshTriangle implements Intersectable {
 		this.mesh = mesh;
 		this.index = index;
 		
-		float vertices[] = mesh.vertices;
-
-		int v0 = mesh.indices[index*3];
-		int v1 = mesh.indices[index*3+1];
-		int v2 = mesh.indices[index*3+2];
+		int v0 = mesh.index(index*3);
+		int v1 = mesh.index(index*3+1);
+		int v2 = mesh.index(index*3+2);
 		
 		// 2. Access x,y,z coordinates for each vertex
-		Point3f a = new Point3f(vertices[v0*3], vertices[v0*3 + 1], vertices[v0*3 + 2]);
-		Point3f b = new Point3f(vertices[v1*3], vertices[v1*3 + 1], vertices[v1*3 + 2]);
-		Point3f c = new Point3f(vertices[v2*3], vertices[v2*3 + 1], vertices[v2*3 + 2]);
+		Point3f a = new Point3f(mesh.vertex(v0*3), mesh.vertex(v0*3 + 1), mesh.vertex(v0*3 + 2));
+		Point3f b = new Point3f(mesh.vertex(v1*3), mesh.vertex(v1*3 + 1), mesh.vertex(v1*3 + 2));
+		Point3f c = new Point3f(mesh.vertex(v2*3), mesh.vertex(v2*3 + 1), mesh.vertex(v2*3 + 2));
 	
 		Point3f min = new Point3f(a);
 		StaticVecmath.elementwiseMin(min, b);
@@ -60,18 +58,16 @@ public class MeshTriangle implements Intersectable {
 	
 	public HitRecord intersect(Ray r)
 	{		
-		float vertices[] = mesh.vertices;
-		
 		// Access the triangle vertices as follows (same for the normals):		
 		// 1. Get three vertex indices for triangle
-		int v0 = mesh.indices[index*3];
-		int v1 = mesh.indices[index*3+1];
-		int v2 = mesh.indices[index*3+2];
+		int v0 = mesh.index(index*3);
+		int v1 = mesh.index(index*3+1);
+		int v2 = mesh.index(index*3+2);
 		
 		// 2. Access x,y,z coordinates for each vertex
-		Point3f a = new Point3f(vertices[v0*3], vertices[v0*3 + 1], vertices[v0*3 + 2]);
-		Point3f b = new Point3f(vertices[v1*3], vertices[v1*3 + 1], vertices[v1*3 + 2]);
-		Point3f c = new Point3f(vertices[v2*3], vertices[v2*3 + 1], vertices[v2*3 + 2]);
+		Point3f a = new Point3f(mesh.vertex(v0*3), mesh.vertex(v0*3 + 1), mesh.vertex(v0*3 + 2));
+		Point3f b = new Point3f(mesh.vertex(v1*3), mesh.vertex(v1*3 + 1), mesh.vertex(v1*3 + 2));
+		Point3f c = new Point3f(mesh.vertex(v2*3), mesh.vertex(v2*3 + 1), mesh.vertex(v2*3 + 2));
 
 		Vector3f col0 = new Vector3f();
 		col0.sub(a, b);
@@ -187,12 +183,10 @@ public class MeshTriangle implements Intersectable {
 	}
 	
 	private Vector3f makeNormal(Vector3f betaGammaT, int v0, int v1, int v2) {
-		float normals[] = mesh.normals;
-		
 		// 2. Access x,y,z normals for each vertex
-		Vector3f n_a = new Vector3f(normals[v0*3], normals[v0*3 + 1], normals[v0*3 + 2]);
-		Vector3f n_b = new Vector3f(normals[v1*3], normals[v1*3 + 1], normals[v1*3 + 2]);
-		Vector3f n_c = new Vector3f(normals[v2*3], normals[v2*3 + 1], normals[v2*3 + 2]);
+		Vector3f n_a = new Vector3f(mesh.normal(v0*3), mesh.normal(v0*3 + 1), mesh.normal(v0*3 + 2));
+		Vector3f n_b = new Vector3f(mesh.normal(v1*3), mesh.normal(v1*3 + 1), mesh.normal(v1*3 + 2));
+		Vector3f n_c = new Vector3f(mesh.normal(v2*3), mesh.normal(v2*3 + 1), mesh.normal(v2*3 + 2));
 		n_a.scale(1 - betaGammaT.x - betaGammaT.y);
 		n_b.scale(betaGammaT.x);
 		n_c.scale(betaGammaT.y);
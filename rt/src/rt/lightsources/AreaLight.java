@@ -74,9 +74,22 @@ public class AreaLight implements LightGeometry {
 		return hitRecord;
 	}
 
+	/**
+	 * The bounds of the rectangle, used by {@link rt.accelerators.LightTree}.
+	 */
 	@Override
 	public BoundingBox getBoundingBox() {
-		return null;
+		Point3f min = new Point3f(lightPos), max = new Point3f(lightPos);
+		for (int i = 1; i < 4; i++) {
+			Point3f corner = new Point3f(lightPos);
+			if ((i & 1) != 0)
+				corner.add(edge1);
+			if ((i & 2) != 0)
+				corner.add(edge2);
+			min.set(Math.min(min.x, corner.x), Math.min(min.y, corner.y), Math.min(min.z, corner.z));
+			max.set(Math.max(max.x, corner.x), Math.max(max.y, corner.y), Math.max(max.z, corner.z));
+		}
+		return new BoundingBox(min, max);
 	}
 
 }
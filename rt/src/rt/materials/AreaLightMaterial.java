@@ -1,6 +1,5 @@
 package rt.materials;
 
-import javax.vecmath.Matrix3f;
 import javax.vecmath.Vector3f;
 
 import rt.HitRecord;
@@ -24,11 +23,17 @@ public class AreaLightMaterial implements Material {
 	}
 	
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut) {
-		Spectrum s = new Spectrum(emission);
-		s.mult(1/(MyMath.PI*area)); // from L_i term
+		Spectrum s = new Spectrum();
+		evaluateEmission(hitRecord, wOut, s);
 		return s;
 	}
 
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		result.set(emission);
+		result.mult(1/(MyMath.PI*area)); // from L_i term
+		return true;
+	}
+
 	/**
 	 * Return a random direction over the full sphere of directions. 
 	 * Taken directly from getShadingSample of diffuse material.
@@ -44,9 +49,8 @@ public class AreaLightMaterial implements Material {
 		assert(Math.abs(dir.lengthSquared() - 1) < 1e-5f);
 		
 		//map to directional vector
-		Matrix3f m = hitRecord.getTangentialMatrix();
-		m.transform(dir);
-		//TODO: why do I need to normalize here?
+		hitRecord.localToWorld(dir.x, dir.y, dir.z, dir);
+		// normals are not always exactly of unit length
 		dir.normalize();
 
 		float p = dir.dot(hitRecord.normal)/MyMath.PI;
@@ -55,7 +59,13 @@ public class AreaLightMaterial implements Material {
 	}
 
 	public ShadingSample getShadingSample(HitRecord hitRecord, float[] sample) {
-		Vector3f dir = new Vector3f();
+		ShadingSample s = new ShadingSample();
+		getShadingSample(hitRecord, sample, s);
+		return s;
+	}
+
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		Vector3f dir = result.w;
 		float sqr_psi_1 = MyMath.sqrt(sample[0]);
 		float two_pi_psi_2 = sample[1]*2*MyMath.PI;
 				
@@ -64,13 +74,15 @@ public class AreaLightMaterial implements Material {
 		dir.z = MyMath.sqrt(1 - sample[0]);
 		assert(Math.abs(dir.lengthSquared() - 1) < 1e-5f);
 		//map to directional vector
-		Matrix3f m = hitRecord.getTangentialMatrix();
-		m.transform(dir);
-		//TODO: why do I need to normalize here?
+		hitRecord.localToWorld(dir.x, dir.y, dir.z, dir);
+		// normals are not always exactly of unit length
 		dir.normalize();
 
-		float p = dir.dot(hitRecord.normal)/MyMath.PI;
-		return new ShadingSample(new Spectrum(), new Spectrum(), dir, false, p);
+		result.p = dir.dot(hitRecord.normal)/MyMath.PI;
+		result.brdf.set(0, 0, 0);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = false;
+		return true;
 	}
 
 	/** 
@@ -84,6 +96,22 @@ public class AreaLightMaterial implements Material {
 			Vector3f wIn) {
 		return new Spectrum();
 	}
+
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(0, 0, 0);
+	}
+
+	/**
+	 * The density of the cosine weighted directions of {@link #getShadingSample}.
+	 */
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return Math.max(wIn.dot(hitRecord.normal), 0)/MyMath.PI;
+	}
+
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(0, 0, 0);
+		return pdf(hitRecord, wOut, wIn);
+	}
 	
 	/** 
 	 * Shouldn't be called on a point light
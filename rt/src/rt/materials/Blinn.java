@@ -23,27 +23,48 @@ public class Blinn implements Material {
 	@Override
 	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut,
 			Vector3f wIn) {
-		Spectrum diffusePart = new Spectrum(diffuse);
-		diffusePart.mult(wIn.dot(hitRecord.normal));
-		Vector3f h = new Vector3f();
-		h.add(wIn, wOut);
-		h.normalize(); //div by 2 should be same
-		Spectrum specularPart = new Spectrum(specular);
-		specularPart.mult((float)Math.pow(h.dot(hitRecord.normal), shinyness));
-				
 		Spectrum allParts = new Spectrum();
-		allParts.add(diffusePart);
-		allParts.add(specularPart);
-		//allParts.add(ambientPart); //we don't use an ambient part
+		evaluateBRDF(hitRecord, wOut, wIn, allParts);
 		return allParts;
 	}
 
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		float diffusePart = wIn.dot(hitRecord.normal);
+		float hx = wIn.x + wOut.x, hy = wIn.y + wOut.y, hz = wIn.z + wOut.z;
+		float hLength = (float) Math.sqrt(hx*hx + hy*hy + hz*hz); //div by 2 should be same
+		float cosTheta_h = (hx*hitRecord.normal.x + hy*hitRecord.normal.y + hz*hitRecord.normal.z)/hLength;
+		float specularPart = (float)Math.pow(cosTheta_h, shinyness);
+		//we don't use an ambient part
+		result.set(diffuse.r*diffusePart + specular.r*specularPart, diffuse.g*diffusePart + specular.g*specularPart,
+				diffuse.b*diffusePart + specular.b*specularPart);
+	}
+
+	/**
+	 * Zero, since no directions are sampled yet.
+	 */
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return 0;
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return 0;
+	}
+
 	@Override
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut) {
 		//no emission
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return false;
@@ -73,6 +94,11 @@ public class Blinn implements Material {
 		return null;
 	}
 
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		return false;
+	}
+
 	@Override
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		// TODO Auto-generated method stub
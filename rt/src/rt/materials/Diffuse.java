@@ -1,6 +1,5 @@
 package rt.materials;
 
-import javax.vecmath.Matrix3f;
 import javax.vecmath.Vector3f;
 
 import rt.*;
@@ -44,7 +43,25 @@ public class Diffuse implements Material {
 	 *  @param hitRecord hit record to be used
 	 */
 	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
-		return new Spectrum(kd);
+		Spectrum brdf = new Spectrum();
+		evaluateBRDF(hitRecord, wOut, wIn, brdf);
+		return brdf;
+	}
+
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(kd);
+	}
+
+	/**
+	 * The density of the cosine weighted directions of {@link #getShadingSample}.
+	 */
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return Math.max(wIn.dot(hitRecord.normal), 0)/MyMath.PI;
+	}
+
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return pdf(hitRecord, wOut, wIn);
 	}
 
 	public boolean hasSpecularReflection()
@@ -69,8 +86,14 @@ public class Diffuse implements Material {
 	
 	public ShadingSample getShadingSample(HitRecord hitRecord, float[] sample)
 	{
-		
-		Vector3f dir = new Vector3f();
+		ShadingSample s = new ShadingSample();
+		getShadingSample(hitRecord, sample, s);
+		return s;
+	}
+
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result)
+	{
+		Vector3f dir = result.w;
 		float sqr_psi_1 = MyMath.sqrt(sample[0]);
 		float two_pi_psi_2 = sample[1]*2*MyMath.PI;
 				
@@ -80,15 +103,16 @@ public class Diffuse implements Material {
 		assert(Math.abs(dir.lengthSquared() - 1) < 1e-5f);
 		
 		//map to directional vector
-		Matrix3f m = hitRecord.getTangentialMatrix();
-		m.transform(dir);
-		//TODO: why do I need to normalize here?
+		hitRecord.localToWorld(dir.x, dir.y, dir.z, dir);
+		// normals are not always exactly of unit length
 		dir.normalize();
 
-		float p = dir.dot(hitRecord.normal)/MyMath.PI;
-		assert p > 0;
-		return new ShadingSample(evaluateBRDF(hitRecord, hitRecord.w, dir), new Spectrum(), dir, false, p);
-
+		result.p = dir.dot(hitRecord.normal)/MyMath.PI;
+		assert result.p > 0;
+		evaluateBRDF(hitRecord, hitRecord.w, dir, result.brdf);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = false;
+		return true;
 	}
 		
 	public boolean castsShadows() {
@@ -99,6 +123,10 @@ public class Diffuse implements Material {
 		return null;
 	}
 
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		return new ShadingSample();
 	}
@@ -32,18 +32,27 @@ public class DoubleSidedDiffuse extends Diffuse implements Material {
 	}
 
 	/**
-	 * Returns diffuse BRDF value, that is, a constant.
+	 * Writes the diffuse BRDF value, that is, a constant.
 	 * 
 	 *  @param wOut outgoing direction, by convention towards camera
 	 *  @param wIn incident direction, by convention towards light
 	 *  @param hitRecord hit record to be used
 	 */
-	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
 		// TODO: highly experimental two directional diffuse thingy
 		if(hitRecord.normal.dot(wOut) < 0)
 			hitRecord.normal.negate();
-		hitRecord.p = wIn.dot(hitRecord.normal)/MyMath.PI;
-		return new Spectrum(kd);
+		result.set(kd);
+	}
+
+	/**
+	 * The density of cosine weighted directions on the side of wOut.
+	 */
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		float cosTheta_i = wIn.dot(hitRecord.normal);
+		if (hitRecord.normal.dot(wOut) < 0)
+			cosTheta_i = -cosTheta_i;
+		return Math.max(cosTheta_i, 0)/MyMath.PI;
 	}
 	
 }
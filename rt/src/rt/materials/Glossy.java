@@ -1,6 +1,5 @@
 package rt.materials;
 
-import javax.vecmath.Matrix3f;
 import javax.vecmath.Vector3f;
 
 import rt.HitRecord;
@@ -9,13 +8,47 @@ import rt.Spectrum;
 import util.MyMath;
 import util.StaticVecmath;
 
+/**
+ * A conductor with a Torrance-Sparrow BRDF and a Blinn microfacet distribution.
+ * <p>
+ * Optionally, the Fresnel term and cos^e of the distribution and its density are looked
+ * up in tables that are made once per material, and linearly interpolated. The Fresnel
+ * term is tabulated over cos(theta_i). cos^e is tabulated over t = (1 - cos(theta_h))*e,
+ * where (1 - t/e)^e has a second derivative of at most one for e >= 2, so its absolute
+ * error is below 7e-5 for all exponents. Wherever cos^e is above 1e-3, the BRDF and the
+ * density then stay within a relative error of 5e-4 of the analytic values. Exponents
+ * below 2 are always evaluated analytically.
+ */
 public class Glossy implements Material {
 
+	private static final int TABLE_SIZE = 1024;
+	/**
+	 * cos^e is tabulated up to t = 24, where it is below exp(-24)
+	 */
+	private static final float MAX_T = 24;
+
 	private float e;
 	private final Spectrum n, k;
 	private final Spectrum nkterm;
+	/**
+	 * Fresnel term for r, g and b at cos(theta_i) = i/(TABLE_SIZE - 1), or null
+	 */
+	private final float[] fresnelTable;
+	/**
+	 * cos^e at t = i/tScale, or null
+	 */
+	private final float[] powerTable;
+	private final float tScale;
 
 	public Glossy(float smoothness, Spectrum n, Spectrum k) {
+		this(smoothness, n, k, false);
+	}
+
+	/**
+	 * @param useLookupTables if true, the Fresnel term and the microfacet distribution are
+	 * looked up in tables instead of evaluated
+	 */
+	public Glossy(float smoothness, Spectrum n, Spectrum k, boolean useLookupTables) {
 			this.n = n;
 			this.k = k;
 				
@@ -25,68 +58,131 @@ public class Glossy implements Material {
 			kSquare.mult(k);
 			nkterm.add(kSquare);
 			this.e = smoothness;
+
+			if (useLookupTables && e >= 2) {
+				fresnelTable = new float[TABLE_SIZE*3];
+				for (int i = 0; i < TABLE_SIZE; i++) {
+					float cosTheta_i = i/(float) (TABLE_SIZE - 1);
+					fresnelTable[i*3] = fresnel(n.r, nkterm.r, cosTheta_i);
+					fresnelTable[i*3+1] = fresnel(n.g, nkterm.g, cosTheta_i);
+					fresnelTable[i*3+2] = fresnel(n.b, nkterm.b, cosTheta_i);
+				}
+				float maxT = Math.min(e, MAX_T);
+				tScale = (TABLE_SIZE - 1)/maxT;
+				powerTable = new float[TABLE_SIZE];
+				for (int i = 0; i < TABLE_SIZE; i++)
+					powerTable[i] = MyMath.pow(Math.max(1 - i/tScale/e, 0), e);
+			} else {
+				fresnelTable = null;
+				powerTable = null;
+				tScale = 0;
+			}
 	}
 
 	@Override
 	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		Spectrum brdf = new Spectrum();
+		evaluateBRDF(hitRecord, wOut, wIn, brdf);
+		return brdf;
+	}
+
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDFAndPdf(hitRecord, wOut, wIn, result);
+	}
+
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		Vector3f normal = hitRecord.normal;
+		float hx = wOut.x + wIn.x, hy = wOut.y + wIn.y, hz = wOut.z + wIn.z;
+		float hLength = MyMath.sqrt(hx*hx + hy*hy + hz*hz);
+		float cosTheta_h = (normal.x*hx + normal.y*hy + normal.z*hz)/hLength;
+		float cosTheta_oh = (wOut.x*hx + wOut.y*hy + wOut.z*hz)/hLength;
+		return makeProbability(cosTheta_h, cosTheta_oh);
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
 		assert(Math.abs(wIn.lengthSquared() - 1) < 1e-6f);
 		assert(Math.abs(wOut.lengthSquared() - 1) < 1e-6f);
 		assert(Math.abs(hitRecord.normal.lengthSquared() - 1) < 1e-6f);
 		
 		Vector3f normal = hitRecord.normal;
-		Vector3f w_h = new Vector3f(wOut);
-		w_h.add(wIn);
-		w_h.normalize();
-		assert(Math.abs(w_h.lengthSquared() - 1) < 1e-6f);
+		// w_h, the half vector
+		float hx = wOut.x + wIn.x, hy = wOut.y + wIn.y, hz = wOut.z + wIn.z;
+		float hLength = MyMath.sqrt(hx*hx + hy*hy + hz*hz);
+		hx /= hLength;
+		hy /= hLength;
+		hz /= hLength;
+		float cosTheta_h = normal.x*hx + normal.y*hy + normal.z*hz;
+		float cosTheta_oh = wOut.x*hx + wOut.y*hy + wOut.z*hz;
 		
-		hitRecord.p = makeProbability(normal.dot(wOut), wOut, w_h);
+		float cosTheta_i = normal.dot(wIn);
+		float cosTheta_o = normal.dot(wOut);
+		float pdf = makeProbability(cosTheta_h, cosTheta_oh);
 		//can shorten computation in these cases
-		if (hitRecord.normal.dot(wIn) < 0 || hitRecord.normal.dot(wOut) < 0)
-			return new Spectrum(0);
-		
+		if (cosTheta_i < 0 || cosTheta_o < 0) {
+			result.set(0, 0, 0);
+			return pdf;
+		}
 		
 		// G is the geometric term
-		float g_term = 2*normal.dot(w_h)/wOut.dot(w_h);
-		float g_term_one = normal.dot(wOut)*g_term;
-		float g_term_two = normal.dot(wIn)*g_term;
+		float g_term = 2*cosTheta_h/cosTheta_oh;
+		float g_term_one = cosTheta_o*g_term;
+		float g_term_two = cosTheta_i*g_term;
 		float G = Math.min(1, Math.min(g_term_one, g_term_two));
 		
 		// D is Microfacet distribution, determines BRDF.
-		float D = (e + 2)*MyMath.pow(w_h.dot(normal),e)/(2*MyMath.PI);
+		float D = (e + 2)*power(cosTheta_h)/(2*MyMath.PI);
 		
 		//fresnel term, channel wise
-		float cosTheta_i = normal.dot(wIn);
-		float cosTheta_o = normal.dot(wOut);
+		float scale = G*D/(4f * cosTheta_i * cosTheta_o);
+		if (fresnelTable != null) {
+			float x = Math.min(cosTheta_i, 1)*(TABLE_SIZE - 1);
+			int i = Math.min((int) x, TABLE_SIZE - 2);
+			float f = x - i;
+			result.set(lerp(fresnelTable, i*3, 3, f)*scale, lerp(fresnelTable, i*3+1, 3, f)*scale,
+					lerp(fresnelTable, i*3+2, 3, f)*scale);
+		} else {
+			result.set(fresnel(n.r, nkterm.r, cosTheta_i)*scale, fresnel(n.g, nkterm.g, cosTheta_i)*scale,
+					fresnel(n.b, nkterm.b, cosTheta_i)*scale);
+		}
+		return pdf;
+	}
+
+	/**
+	 * @return cos^e, looked up if there is a table
+	 */
+	private float power(float cos) {
+		if (powerTable == null)
+			return MyMath.pow(cos, e);
+		float x = (1 - cos)*e*tScale;
+		if (x >= TABLE_SIZE - 1)
+			return powerTable[TABLE_SIZE - 1];
+		int i = (int) x;
+		return lerp(powerTable, i, 1, x - i);
+	}
+
+	/**
+	 * Interpolates between table[i] and table[i + stride].
+	 */
+	private static float lerp(float[] table, int i, int stride, float f) {
+		return table[i] + (table[i + stride] - table[i])*f;
+	}
+
+	/**
+	 * The fresnel term of one channel for a conductor.
+	 *
+	 * @param n refractive index
+	 * @param nk n^2 + k^2, with the absorption coefficient k
+	 * @param cosTheta_i cosine between normal and incident direction
+	 */
+	private static float fresnel(float n, float nk, float cosTheta_i) {
 		float cosTheta_i2 = cosTheta_i*cosTheta_i;
-		Spectrum r1 = new Spectrum(nkterm);
-		r1.mult(cosTheta_i2);
-		Spectrum twoCosN = new Spectrum(this.n); 
-		twoCosN.mult(2*cosTheta_i);
-		r1.sub(twoCosN);
-		r1.add(1);
-		
-		Spectrum r1divisor = new Spectrum(nkterm);
-		r1divisor.mult(cosTheta_i2);
-		r1divisor.add(twoCosN);
-		r1divisor.add(1);
-		r1.div(r1divisor);
-		
-		Spectrum r2 = new Spectrum(nkterm);
-		r2.sub(twoCosN);
-		r2.add(cosTheta_i2);
-		
-		Spectrum r2divisor = new Spectrum(nkterm);
-		r2divisor.add(twoCosN);
-		r2divisor.add(cosTheta_i2);
-		r2.div(r2divisor);
-		
-		Spectrum F = new Spectrum(r1); 
-		F.add(r2);
-		F.mult(1/2f);
-		Spectrum r = new Spectrum(F);
-		r.mult(G*D);
-		r.mult(1/(4f * cosTheta_i * cosTheta_o));
-		return r;
+		float twoCosN = 2*cosTheta_i*n;
+		float r1 = (nk*cosTheta_i2 - twoCosN + 1)/(nk*cosTheta_i2 + twoCosN + 1);
+		float r2 = (nk - twoCosN + cosTheta_i2)/(nk + twoCosN + cosTheta_i2);
+		return (r1 + r2)/2;
 	}
 	
 	@Override
@@ -95,6 +191,11 @@ public class Glossy implements Material {
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return false;
@@ -123,6 +224,12 @@ public class Glossy implements Material {
 	 */
 	@Override
 	public ShadingSample getShadingSample(HitRecord hitRecord, float[] sample) {
+		ShadingSample s = new ShadingSample();
+		return getShadingSample(hitRecord, sample, s) ? s : null;
+	}
+
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
 		Vector3f w_o = hitRecord.w;
 		assert Math.abs(w_o.length() - 1) < 1e-5f : "Not normalized, length: " + w_o.length();
 		
@@ -133,8 +240,8 @@ public class Glossy implements Material {
 		// angle between n and w_h
 		float cosTheta = MyMath.pow(psi1, 1/(e + 1));
 		
-		// 1. construct w_h
-		Vector3f w_h = new Vector3f();
+		// 1. construct w_h, in the direction of the sample
+		Vector3f w_h = result.w;
 		// construct euclidean vector from spherical coordinates
 		float sinTheta = MyMath.sqrt(1 - cosTheta*cosTheta);
 		w_h.x = sinTheta * MyMath.cos(phi);
@@ -143,35 +250,41 @@ public class Glossy implements Material {
 
 		assert Math.abs(w_h.length() - 1) < 1e-5f : "Not normalized, length: " + w_h.length();
 
-		Matrix3f m = hitRecord.getTangentialMatrix();
-		m.transform(w_h);
+		hitRecord.localToWorld(w_h.x, w_h.y, w_h.z, w_h);
 
 		assert Math.abs(w_h.length() - 1) < 1e-5f : "Not normalized, length: " + w_h.length();
 		
+		// 3. Compute probability of outgoing direction p_w_i (aka direction light comes from)
+		float p_w_i = makeProbability(cosTheta, w_o.dot(w_h));
+		if (p_w_i == 0) // microfacet faces away from w_o
+			return false;
+		
 		// 2. Reflect w_o around w_h
-		Vector3f w_i = StaticVecmath.reflect(w_h, w_o);
+		Vector3f w_i = result.w;
+		StaticVecmath.reflect(w_h, w_o, w_i);
 		assert Math.abs(w_i.length() - 1) < 1e-5f : "Not normalized, length: " + w_i.length();
 		
-		// 3. Compute probability of outgoing direction p_w_i (aka direction light comes from)
-		float p_w_i = makeProbability(cosTheta, w_o, w_h);
-		
-		if (w_i.dot(hitRecord.normal) <= 0) { //below horizon
-			return new ShadingSample(new Spectrum(0), new Spectrum(0), w_i, false, p_w_i);
-		} else {
-			return new ShadingSample(evaluateBRDF(hitRecord, w_o, w_i), new Spectrum(0), w_i, false, p_w_i);
-		}
+		if (w_i.dot(hitRecord.normal) <= 0) //below horizon
+			result.brdf.set(0, 0, 0);
+		else
+			evaluateBRDF(hitRecord, w_o, w_i, result.brdf);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = false;
+		result.p = p_w_i;
+		return true;
 	}
 
 	/**
 	 * 
-	 * @param cosTheta angle between n and w_o
-	 * @param w_o
-	 * @param w_h
+	 * @param cosTheta angle between n and w_h
+	 * @param cosTheta_oh angle between w_o and w_h
 	 * @return
 	 */
-	private float makeProbability(float cosTheta, Vector3f w_o, Vector3f w_h) {
-		float p_w_h = (e + 1)/(2*MyMath.PI)*MyMath.pow(cosTheta, e);
-		float p_w_i = p_w_h/(4*w_o.dot(w_h));
+	private float makeProbability(float cosTheta, float cosTheta_oh) {
+		if (cosTheta <= 0 || cosTheta_oh <= 0) // w_h is never sampled there
+			return 0;
+		float p_w_h = (e + 1)/(2*MyMath.PI)*power(cosTheta);
+		float p_w_i = p_w_h/(4*cosTheta_oh);
 		return p_w_i;
 	}
 	@Override
@@ -41,6 +41,24 @@ public class NoisyTexture implements Material {
 		addNoise(hitRecord.position, brdf);
 		return brdf;
 	}
+
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		m.evaluateBRDF(hitRecord, wOut, wIn, result);
+		addNoise(hitRecord.position, result);
+	}
+
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return m.pdf(hitRecord, wOut, wIn);
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		float pdf = m.evaluateBRDFAndPdf(hitRecord, wOut, wIn, result);
+		addNoise(hitRecord.position, result);
+		return pdf;
+	}
 	
 	private void addNoise(Tuple3f p, Spectrum brdf) {
 		float noise = getNoise(p);
@@ -85,6 +103,11 @@ public class NoisyTexture implements Material {
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return m.hasSpecularReflection();
@@ -121,6 +144,14 @@ public class NoisyTexture implements Material {
 		return s;
 	}
 
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		if (!m.getShadingSample(hitRecord, sample, result))
+			return false;
+		addNoise(hitRecord.position, result.brdf);
+		return true;
+	}
+
 	@Override
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		//should be null
@@ -23,6 +23,11 @@ public class PointLightMaterial implements Material {
 		return new Spectrum(emission);
 	}
 
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		result.set(emission);
+		return true;
+	}
+
 	/**
 	 * Return a random direction over the full sphere of directions.
 	 */
@@ -41,6 +46,13 @@ public class PointLightMaterial implements Material {
 		return null;
 	}
 
+	/** 
+	 * Shouldn't be called on a point light
+	 */
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		return false;
+	}
+
 	/** 
 	 * Shouldn't be called on a point light
 	 */
@@ -55,6 +67,28 @@ public class PointLightMaterial implements Material {
 			Vector3f wIn) {
 		return new Spectrum();
 	}
+
+	/** 
+	 * Shouldn't be called on a point light
+	 */
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(0, 0, 0);
+	}
+
+	/** 
+	 * Shouldn't be called on a point light
+	 */
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return 0;
+	}
+
+	/** 
+	 * Shouldn't be called on a point light
+	 */
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return 0;
+	}
 	
 	/** 
 	 * Shouldn't be called on a point light
@@ -30,11 +30,35 @@ public class Reflective implements Material {
 		return new Spectrum(ks);
 	}
 
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(ks);
+	}
+
+	/**
+	 * Zero, the mirror direction is a delta distribution.
+	 */
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return 0;
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return 0;
+	}
+
 	@Override
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut) {
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return true;
@@ -42,10 +66,9 @@ public class Reflective implements Material {
 
 	@Override
 	public ShadingSample evaluateSpecularReflection(HitRecord hitRecord) {
-		Vector3f r = StaticVecmath.reflect(hitRecord.normal, hitRecord.w);
-		
-		Spectrum brdf = new Spectrum(ks);
-		return new ShadingSample(brdf, new Spectrum(0,0,0), r, false, 1);
+		ShadingSample s = new ShadingSample();
+		getShadingSample(hitRecord, null, s);
+		return s;
 	}
 
 	@Override
@@ -63,6 +86,16 @@ public class Reflective implements Material {
 		return evaluateSpecularReflection(hitRecord);
 	}
 
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		StaticVecmath.reflect(hitRecord.normal, hitRecord.w, result.w);
+		result.brdf.set(ks);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = false;
+		result.p = 1;
+		return true;
+	}
+
 	@Override
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		return null;
@@ -23,12 +23,36 @@ public class Refractive implements Material {
 		return new Spectrum();
 	}
 
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(0, 0, 0);
+	}
+
+	/**
+	 * Zero, reflection and refraction directions are delta distributions.
+	 */
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return 0;
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return 0;
+	}
+
 	@Override
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut) {
 		//no emission
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return true;
@@ -41,16 +65,21 @@ public class Refractive implements Material {
 	}
 
 	private ShadingSample evaluateSpecularReflection(RefractionHandler rf, float reflectedPart) {
+		ShadingSample s = new ShadingSample();
+		return evaluateSpecularReflection(rf, reflectedPart, s) ? s : null;
+	}
+
+	private boolean evaluateSpecularReflection(RefractionHandler rf, float reflectedPart, ShadingSample result) {
 		if (reflectedPart < 1e-5) //don't further trace this ray if impact too low
-			return null;
-		Vector3f r = new Vector3f(rf.i);
-		Vector3f nScaled = new Vector3f(rf.normal);
-		nScaled.scale(2*rf.cosTheta_i);
-		r.add(nScaled);
+			return false;
+		result.w.scaleAdd(2*rf.cosTheta_i, rf.normal, rf.i);
 		
-		Spectrum brdf = new Spectrum(ks);
-		brdf.mult(reflectedPart);
-		return new ShadingSample(brdf, new Spectrum(0,0,0), r, true, reflectedPart);
+		result.brdf.set(ks);
+		result.brdf.mult(reflectedPart);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = true;
+		result.p = reflectedPart;
+		return true;
 	}
 	
 	@Override
@@ -65,18 +94,24 @@ public class Refractive implements Material {
 	}
 	
 	private ShadingSample evaluateSpecularRefraction(RefractionHandler rf, float rSchlick) {
+		ShadingSample s = new ShadingSample();
+		return evaluateSpecularRefraction(rf, rSchlick, s) ? s : null;
+	}
+
+	private boolean evaluateSpecularRefraction(RefractionHandler rf, float rSchlick, ShadingSample result) {
 		if (rf.totalInternalRefraction) //don't further track ray if energy is lost
-			return null;
+			return false;
 		
-		Vector3f t = new Vector3f(rf.i);
-		t.scale(rf.refractiveRatio);
-		Vector3f nScaled = new Vector3f(rf.normal);
-		nScaled.scale(rf.refractiveRatio*rf.cosTheta_i - (float)Math.sqrt(1 - rf.sin2Theta_t));
-		t.add(nScaled);
+		Vector3f t = result.w;
+		t.scale(rf.refractiveRatio, rf.i);
+		t.scaleAdd(rf.refractiveRatio*rf.cosTheta_i - (float)Math.sqrt(1 - rf.sin2Theta_t), rf.normal, t);
 		
-		Spectrum brdf = new Spectrum(ks);
-		brdf.mult(1 - rSchlick);
-		return new ShadingSample(brdf, new Spectrum(0,0,0), t, true, 1 - rSchlick);
+		result.brdf.set(ks);
+		result.brdf.mult(1 - rSchlick);
+		result.emission.set(0, 0, 0);
+		result.isSpecular = true;
+		result.p = 1 - rSchlick;
+		return true;
 	}
 	
 	@Override
@@ -89,6 +124,16 @@ public class Refractive implements Material {
 			return evaluateSpecularRefraction(rf, rSchlick);
 	}
 
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		RefractionHandler rf = new RefractionHandler(hitRecord);
+		float rSchlick = rSchlick(rf);
+		if (sample[0] < rSchlick)
+			return evaluateSpecularReflection(rf, rSchlick, result);
+		else
+			return evaluateSpecularRefraction(rf, rSchlick, result);
+	}
+
 	@Override
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		return null;
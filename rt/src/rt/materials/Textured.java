@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
-import javax.vecmath.Matrix3f;
 import javax.vecmath.Point2f;
 import javax.vecmath.Vector3f;
 
@@ -102,11 +101,35 @@ public class Textured implements Material {
 		return getBilinearInterpolated(hitRecord.u, hitRecord.v, texture);
 	}
 
+	@Override
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		result.set(getBilinearInterpolated(hitRecord.u, hitRecord.v, texture));
+	}
+
+	/**
+	 * Zero, since no directions are sampled.
+	 */
+	@Override
+	public float pdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
+		return 0;
+	}
+
+	@Override
+	public float evaluateBRDFAndPdf(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum result) {
+		evaluateBRDF(hitRecord, wOut, wIn, result);
+		return 0;
+	}
+
 	@Override
 	public Spectrum evaluateEmission(HitRecord hitRecord, Vector3f wOut) {
 		return null;
 	}
 
+	@Override
+	public boolean evaluateEmission(HitRecord hitRecord, Vector3f wOut, Spectrum result) {
+		return false;
+	}
+
 	@Override
 	public boolean hasSpecularReflection() {
 		return false;
@@ -132,6 +155,11 @@ public class Textured implements Material {
 		return null;
 	}
 
+	@Override
+	public boolean getShadingSample(HitRecord hitRecord, float[] sample, ShadingSample result) {
+		return false;
+	}
+
 	@Override
 	public ShadingSample getEmissionSample(HitRecord hitRecord, float[] sample) {
 		return new ShadingSample();
@@ -145,12 +173,9 @@ public class Textured implements Material {
 	@Override
 	public void evaluateBumpMap(HitRecord hitRecord) {
 		if (bumpMap != null) {
-			Matrix3f m = hitRecord.getTangentialMatrix();
 			Spectrum nSpec = getBilinearInterpolated(hitRecord.u, hitRecord.v, bumpMap);
-			Vector3f n = new Vector3f(nSpec.r, nSpec.g, nSpec.b);
-			n.scale(2);
-			n.sub(new Vector3f(1,1,1));
-			m.transform(n);
+			Vector3f n = new Vector3f();
+			hitRecord.normalMapToWorld(nSpec.r*2 - 1, nSpec.g*2 - 1, nSpec.b*2 - 1, n);
 			hitRecord.normal = n;
 		}
 	}
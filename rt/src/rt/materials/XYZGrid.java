@@ -30,8 +30,8 @@ public class XYZGrid extends Diffuse implements Material  {
 	}
 
 	@Override
-	public Spectrum evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn) {
-		Spectrum diffuse = super.evaluateBRDF(hitRecord, wOut, wIn);
+	public void evaluateBRDF(HitRecord hitRecord, Vector3f wOut, Vector3f wIn, Spectrum diffuse) {
+		super.evaluateBRDF(hitRecord, wOut, wIn, diffuse);
 		Vector3f t = new Vector3f(hitRecord.position);
 		t.add(offset);
 		t.absolute();
@@ -48,6 +48,5 @@ public class XYZGrid extends Diffuse implements Material  {
 			diffuse.mult(tileColor);
 		else 
 			diffuse.mult(betweenColor);
-		return diffuse;
 	}
 }
@@ -0,0 +1,161 @@
+package rt.samplers;
+
+import rt.SampleStream;
+import rt.Sampler;
+
+/**
+ * Makes samples whose error is distributed as blue noise over the image, following
+ * Georgiev and Fajardo, "Blue-noise Dithered Sampling", SIGGRAPH Talks 2016. All pixels
+ * use the same Owen-scrambled Sobol samples, which each pixel rotates toroidally by the
+ * value of a tiled blue-noise mask at its position. Neighboring pixels get very different
+ * rotations, so at low sample counts the error is high-frequency noise, which looks much
+ * smoother than white noise of the same RMSE, and which a small blur removes.
+ * <p>
+ * Each dimension reads the mask at its own offset, so the dimensions are decorrelated.
+ * The mask is made once with the void-and-cluster method of Ulichney, "The
+ * void-and-cluster method for dither array generation", SPIE 1993. The sampler has to be
+ * initialized with {@link SampleStream#pixel}, so it knows the position of the pixel.
+ */
+public class BlueNoiseSampler implements Sampler {
+
+	/** The size of the mask, a power of two */
+	public static final int MASK_SIZE = 64;
+	/** The values of the mask in [0,1), indexed by y*MASK_SIZE + x */
+	private static final float[] MASK = makeMask(MASK_SIZE, 1.5f);
+
+	/** The samples shared by all pixels */
+	private static final SobolSampler SOBOL = new SobolSampler();
+
+	private long pixel;
+
+	public BlueNoiseSampler()
+	{
+		init(0);
+	}
+
+	/**
+	 * Makes the first @param n samples of the pixel in @param d dimensions. The samples
+	 * are in the range [0,1).
+	 */
+	@Override
+	public float[][] makeSamples(int n, int d)
+	{
+		float samples[][] = new float[n][d];
+		for(int i=0; i<n; i++)
+			for(int j=0; j<d; j++)
+				samples[i][j] = sample(pixel, i, j);
+		return samples;
+	}
+
+	@Override
+	public float sample(long pixel, int i, int d)
+	{
+		long offset = CounterSampler.mix(d);
+		int x = ((int) pixel + (int) offset) & (MASK_SIZE - 1);
+		int y = ((int) (pixel >>> 32) + (int) (offset >>> 32)) & (MASK_SIZE - 1);
+		float s = SOBOL.sample(0, i, d) + MASK[y*MASK_SIZE + x];
+		return s >= 1 ? s - 1 : s;
+	}
+
+	/**
+	 * Sets the pixel, the number made by {@link SampleStream#pixel}.
+	 */
+	@Override
+	public void init(long i) {
+		pixel = i;
+	}
+
+	/**
+	 * Makes a blue-noise mask of size squared pixels, size a power of two, with
+	 * void-and-cluster: the pixels are ranked in the order in which they are added to a
+	 * binary pattern, each one into the largest void of the pattern. The voids and
+	 * clusters are found with the energy of the pattern, a toroidal Gaussian of the given
+	 * standard deviation around each pixel in it.
+	 *
+	 * @return the ranks divided by the number of pixels, offset by half a rank
+	 */
+	static float[] makeMask(int size, float sigma)
+	{
+		int n = size*size;
+		int radius = (int) Math.ceil(3*sigma);
+		float[] kernel = new float[(2*radius + 1)*(2*radius + 1)];
+		for (int y = -radius; y <= radius; y++)
+			for (int x = -radius; x <= radius; x++)
+				kernel[(y + radius)*(2*radius + 1) + x + radius] = (float) Math.exp(-(x*x + y*y)/(2*sigma*sigma));
+
+		// Initial pattern of random pixels, relaxed by moving the tightest cluster into
+		// the largest void until it is the largest void itself
+		boolean[] pattern = new boolean[n];
+		float[] energy = new float[n];
+		int ones = n/10;
+		for (int i = 0, added = 0; added < ones; i++) {
+			int p = (int) (CounterSampler.random(size, i, 0)*n);
+			if (!pattern[p]) {
+				set(pattern, energy, kernel, size, radius, p, true);
+				added++;
+			}
+		}
+		for (int k = 0; k < n; k++) {
+			int cluster = extremum(pattern, energy, true);
+			set(pattern, energy, kernel, size, radius, cluster, false);
+			int void_ = extremum(pattern, energy, false);
+			set(pattern, energy, kernel, size, radius, void_, true);
+			if (void_ == cluster)
+				break;
+		}
+
+		// Rank the initial pattern by removing its tightest clusters from a copy
+		int[] rank = new int[n];
+		boolean[] initial = pattern.clone();
+		float[] initialEnergy = energy.clone();
+		for (int r = ones - 1; r >= 0; r--) {
+			int cluster = extremum(pattern, energy, true);
+			set(pattern, energy, kernel, size, radius, cluster, false);
+			rank[cluster] = r;
+		}
+
+		// Rank the other pixels by adding them into the largest voids. With this energy
+		// the largest void of the ones is also the tightest cluster of the zeros, so this
+		// covers the second and third phase of the method.
+		pattern = initial;
+		energy = initialEnergy;
+		for (int r = ones; r < n; r++) {
+			int void_ = extremum(pattern, energy, false);
+			set(pattern, energy, kernel, size, radius, void_, true);
+			rank[void_] = r;
+		}
+
+		float[] mask = new float[n];
+		for (int p = 0; p < n; p++)
+			mask[p] = (rank[p] + 0.5f)/n;
+		return mask;
+	}
+
+	/**
+	 * Adds or removes pixel p from the pattern and updates the energy.
+	 */
+	private static void set(boolean[] pattern, float[] energy, float[] kernel, int size, int radius, int p, boolean value)
+	{
+		pattern[p] = value;
+		float sign = value ? 1 : -1;
+		int px = p % size, py = p / size;
+		for (int y = -radius; y <= radius; y++)
+			for (int x = -radius; x <= radius; x++) {
+				int q = ((py + y) & (size - 1))*size + ((px + x) & (size - 1));
+				energy[q] += sign*kernel[(y + radius)*(2*radius + 1) + x + radius];
+			}
+	}
+
+	/**
+	 * @return the pixel in the pattern with the highest energy if cluster is true,
+	 * otherwise the pixel not in the pattern with the lowest energy
+	 */
+	private static int extremum(boolean[] pattern, float[] energy, boolean cluster)
+	{
+		int best = -1;
+		for (int p = 0; p < pattern.length; p++)
+			if (pattern[p] == cluster && (best < 0 || (cluster ? energy[p] > energy[best] : energy[p] < energy[best])))
+				best = p;
+		return best;
+	}
+}
@@ -0,0 +1,15 @@
+package rt.samplers;
+
+import rt.Sampler;
+import rt.SamplerFactory;
+
+/**
+ * Makes a {@link BlueNoiseSampler}.
+ */
+public class BlueNoiseSamplerFactory implements SamplerFactory {
+
+	public Sampler make() {
+		return new BlueNoiseSampler();
+	}
+
+}
@@ -0,0 +1,63 @@
+package rt.samplers;
+
+import rt.Sampler;
+
+/**
+ * Makes uniform random samples in the range [0,1) with a counter-based generator: each
+ * dimension of each sample of a pixel is a hash of the pixel, the index of the sample
+ * and the dimension. There is no shared state, so any sample can be recreated on any
+ * thread.
+ * <p>
+ * The hash is the finalizer of SplitMix64, applied to the d-th element of a Weyl
+ * sequence that starts at the hashed pixel and sample index.
+ */
+public class CounterSampler implements Sampler {
+
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long pixel;
+
+	/**
+	 * Makes @param n uniform random samples in @param d
+	 * dimensions. The samples are in the range [0,1) in
+	 * all dimensions.
+	 */
+	@Override
+	public float[][] makeSamples(int n, int d)
+	{
+		float samples[][] = new float[n][d];
+		for(int i=0; i<n; i++)
+			for(int j=0; j<d; j++)
+				samples[i][j] = random(pixel, i, j);
+		return samples;
+	}
+
+	@Override
+	public void init(long i) {
+		pixel = i;
+	}
+
+	@Override
+	public float sample(long pixel, int i, int d) {
+		return random(pixel, i, d);
+	}
+
+	/**
+	 * @return dimension d of sample i of the pixel, in [0,1), also used by the samplers
+	 * for the dimensions they do not stratify
+	 */
+	public static float random(long pixel, int i, int d)
+	{
+		return (mix(mix(mix(pixel) + i) + (d + 1)*GAMMA) >>> 40)*0x1p-24f;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, a bijective hash.
+	 */
+	public static long mix(long z)
+	{
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,15 @@
+package rt.samplers;
+
+import rt.Sampler;
+import rt.SamplerFactory;
+
+/**
+ * Makes a {@link CounterSampler}.
+ */
+public class CounterSamplerFactory implements SamplerFactory {
+
+	public Sampler make() {
+		return new CounterSampler();
+	}
+
+}
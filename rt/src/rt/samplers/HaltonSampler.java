@@ -0,0 +1,83 @@
+package rt.samplers;
+
+import rt.Sampler;
+
+/**
+ * Makes scrambled Halton samples, dimensions from {@link #MAX_DIMENSIONS} on are random.
+ * Dimension d is the radical inverse of the sample index in the base of the d-th prime. The digits
+ * are scrambled with a random shift modulo the base per digit position, which keeps the
+ * stratification of the sequence.
+ * <p>
+ * {@link #init} sets the seed of the shifts, so each pixel gets its own decorrelated
+ * sequence. The first b^k samples of the pixel are stratified in all intervals of
+ * length b^-k of a dimension with base b.
+ */
+public class HaltonSampler implements Sampler {
+
+	public static final int MAX_DIMENSIONS = 1000;
+	private static final int[] PRIMES = new int[MAX_DIMENSIONS];
+	static {
+		int n = 0;
+		for (int p = 2; n < PRIMES.length; p++) {
+			boolean isPrime = true;
+			for (int i = 0; i < n && PRIMES[i]*PRIMES[i] <= p; i++)
+				if (p % PRIMES[i] == 0) {
+					isPrime = false;
+					break;
+				}
+			if (isPrime)
+				PRIMES[n++] = p;
+		}
+	}
+
+	private long pixel;
+
+	public HaltonSampler()
+	{
+		init(0);
+	}
+
+	/**
+	 * Makes the first @param n samples of the sequence of the pixel
+	 * in @param d dimensions. The samples are in the range [0,1).
+	 */
+	@Override
+	public float[][] makeSamples(int n, int d)
+	{
+		float samples[][] = new float[n][d];
+		for(int i=0; i<n; i++)
+			for(int j=0; j<d; j++)
+				samples[i][j] = sample(pixel, i, j);
+		return samples;
+	}
+
+	/**
+	 * Dimensions from {@link #MAX_DIMENSIONS} on are random.
+	 */
+	@Override
+	public float sample(long pixel, int i, int d)
+	{
+		if (d >= MAX_DIMENSIONS)
+			return CounterSampler.random(pixel, i, d);
+		int base = PRIMES[d];
+		double invBase = 1.0/base, weight = invBase, x = 0;
+		long dimensionSeed = CounterSampler.mix(CounterSampler.mix(pixel) + d);
+		// Continue with the shifted zeros after the last digit, until the float is full
+		for (int position = 0; weight > 0x1p-25; position++) {
+			int digit = i % base;
+			i /= base;
+			int shift = (int) ((CounterSampler.mix(dimensionSeed + position) >>> 33) % base);
+			x += ((digit + shift) % base)*weight;
+			weight *= invBase;
+		}
+		return Math.min((float) x, 0x1.fffffep-1f);
+	}
+
+	/**
+	 * Sets the pixel, which seeds the digit shifts.
+	 */
+	@Override
+	public void init(long i) {
+		pixel = i;
+	}
+}
@@ -24,4 +24,12 @@ public class OneSampler implements Sampler {
 	public void init(long i) {
 		//does nothing here
 	}
+
+	/**
+	 * The film position is always 0.5, the other dimensions are random.
+	 */
+	@Override
+	public float sample(long pixel, int i, int d) {
+		return d < 2 ? 0.5f : CounterSampler.random(pixel, i, d);
+	}
 }
@@ -39,5 +39,14 @@ public class RandomSampler implements Sampler {
 	public void init(long i) {
 		random.setSeed(i);
 	}
+
+	/**
+	 * The generator cannot seek to one dimension of one sample, so this returns the
+	 * hashed random numbers of {@link CounterSampler} instead.
+	 */
+	@Override
+	public float sample(long pixel, int i, int d) {
+		return CounterSampler.random(pixel, i, d);
+	}
 	
 }
@@ -0,0 +1,93 @@
+package rt.samplers;
+
+import rt.Camera;
+import rt.Integrator;
+import rt.Ray;
+import rt.SampleStream;
+import rt.Sampler;
+import rt.Scene;
+import rt.Spectrum;
+import rt.Timer;
+import rt.testscenes.AreaLightTestScene;
+import rt.testscenes.PathtracingBoxSphere;
+import util.ImageError;
+
+/**
+ * Compares the convergence of the samplers: renders a window of the test scenes at
+ * increasing sample counts with each sampler and prints the RMSE with respect to a
+ * reference rendered with many more samples, and the RMSE after a 3x3 blur, which
+ * shows how visible the noise is. The reference uses other random numbers than the
+ * renders it is compared with.
+ * <p>
+ * Usage: <code>java rt.samplers.SamplerBenchmark [reference spp]</code>, the default is
+ * 4096.
+ */
+public class SamplerBenchmark {
+
+	private static final int WINDOW_SIZE = 128;
+	private static final int[] SPP = {1, 4, 16, 64};
+	private static final String[] NAMES = {"Counter", "Halton", "Sobol", "BlueNoise"};
+
+	public static void main(String[] args) {
+		int referenceSPP = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		Scene[] scenes = {new PathtracingBoxSphere(), new AreaLightTestScene()};
+		for (Scene scene : scenes) {
+			scene.prepare();
+			Timer timer = new Timer();
+			Spectrum[][] reference = render(scene, new CounterSampler(), referenceSPP, true);
+			System.out.printf("%s, %d spp reference in %d ms\n", scene.getClass().getSimpleName(),
+					referenceSPP, timer.timeElapsed());
+			System.out.printf("  %5s", "spp");
+			for (String name : NAMES)
+				System.out.printf(" %10s", name);
+			System.out.printf("   blurred\n");
+			for (int spp : SPP) {
+				Sampler[] samplers = {new CounterSampler(), new HaltonSampler(), new SobolSampler(),
+						new BlueNoiseSampler()};
+				double[] blurred = new double[samplers.length];
+				System.out.printf("  %5d", spp);
+				for (int s = 0; s < samplers.length; s++) {
+					Spectrum[][] image = render(scene, samplers[s], spp, false);
+					System.out.printf(" %10.5f", ImageError.rmse(image, reference));
+					blurred[s] = ImageError.blurredRmse(image, reference, 1);
+				}
+				System.out.printf("  ");
+				for (double error : blurred)
+					System.out.printf(" %10.5f", error);
+				System.out.println();
+			}
+		}
+	}
+
+	/**
+	 * Renders the window in the middle of the image, like {@link rt.Main} does with a box filter.
+	 */
+	private static Spectrum[][] render(Scene scene, Sampler sampler, int spp, boolean reference) {
+		Integrator integrator = scene.getIntegratorFactory().make(scene);
+		Camera camera = scene.getCamera();
+		int width = scene.getFilm().getWidth(), height = scene.getFilm().getHeight();
+		int left = Math.max((width - WINDOW_SIZE)/2, 0), bottom = Math.max((height - WINDOW_SIZE)/2, 0);
+		Spectrum[][] image = new Spectrum[Math.min(WINDOW_SIZE, width)][Math.min(WINDOW_SIZE, height)];
+		// The random numbers of the pixels below the image, not the ones of the compared renders
+		int keyOffset = reference ? height : 0;
+		SampleStream stream = new SampleStream();
+		for (int x = 0; x < image.length; x++) {
+			for (int y = 0; y < image[x].length; y++) {
+				int i = left + x, j = bottom + y;
+				long pixel = SampleStream.pixel(i, j + keyOffset);
+				sampler.init(pixel);
+				float[][] samples = integrator.makePixelSamples(sampler, spp);
+				Spectrum sum = new Spectrum();
+				for (int k = 0; k < samples.length; k++) {
+					stream.set(sampler, pixel, k);
+					Ray r = camera.makeWorldSpaceRay(i, j, stream.makeCameraSample(samples[k]));
+					integrator.startSample(stream);
+					sum.add(integrator.integrate(r));
+				}
+				sum.mult(1.f/samples.length);
+				image[x][y] = sum;
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,101 @@
+package rt.samplers;
+
+import rt.Sampler;
+
+/**
+ * Makes Owen-scrambled Sobol samples in any number of dimensions, following Burley,
+ * "Practical Hash-based Owen Scrambling", JCGT 2020. The dimensions are taken in pairs,
+ * each pair is made from the first two dimensions of the Sobol sequence, which form a
+ * (0,2)-sequence in base 2. The points of each pair are Owen-scrambled and their order is
+ * shuffled with a seed of the pair, so the pairs are decorrelated.
+ * <p>
+ * {@link #init} sets the seed of the scrambling, so each pixel gets its own
+ * decorrelated sequence. The first 2^k samples of the pixel are stratified in all
+ * elementary intervals of area 2^-k of each pair of dimensions.
+ */
+public class SobolSampler implements Sampler {
+
+	/**
+	 * Direction numbers of the second dimension of the Sobol sequence, the first
+	 * one is the radical inverse in base 2.
+	 */
+	private static final int[] DIRECTIONS = new int[32];
+	static {
+		int v = 1 << 31;
+		for (int i = 0; i < 32; i++) {
+			DIRECTIONS[i] = v;
+			v ^= v >>> 1;
+		}
+	}
+
+	private long pixel;
+
+	public SobolSampler()
+	{
+		init(0);
+	}
+
+	/**
+	 * Makes the first @param n samples of the sequence of the pixel
+	 * in @param d dimensions. The samples are in the range [0,1).
+	 */
+	@Override
+	public float[][] makeSamples(int n, int d)
+	{
+		float samples[][] = new float[n][d];
+		for(int i=0; i<n; i++)
+			for(int j=0; j<d; j++)
+				samples[i][j] = sample(pixel, i, j);
+		return samples;
+	}
+
+	@Override
+	public float sample(long pixel, int i, int d)
+	{
+		int pairSeed = hash((int) CounterSampler.mix(pixel), d >>> 1);
+		int index = nestedUniformScramble(i, pairSeed);
+		int x = (d & 1) == 0 ? Integer.reverse(index) : sobol(index);
+		x = nestedUniformScramble(x, hash(pairSeed, (d & 1) + 1));
+		return (x >>> 8)*0x1p-24f;
+	}
+
+	/**
+	 * Sets the pixel, which seeds the scrambling.
+	 */
+	@Override
+	public void init(long i) {
+		pixel = i;
+	}
+
+	/**
+	 * @return the second dimension of point i of the Sobol sequence, as a 32 bit fraction
+	 */
+	private static int sobol(int i)
+	{
+		int x = 0;
+		for (int bit = 0; i != 0; bit++, i >>>= 1)
+			if ((i & 1) != 0)
+				x ^= DIRECTIONS[bit];
+		return x;
+	}
+
+	/**
+	 * Owen scrambling of a 32 bit fraction: each bit is flipped depending on the seed and
+	 * the bits above it. Uses the hash of Laine and Karras on the reversed bits.
+	 */
+	private static int nestedUniformScramble(int x, int seed)
+	{
+		x = Integer.reverse(x);
+		x += seed;
+		x ^= x*0x6c50b47c;
+		x ^= x*0xb82f1e52;
+		x ^= x*0xc7afe638;
+		x ^= x*0x8d22f6e6;
+		return Integer.reverse(x);
+	}
+
+	private static int hash(int seed, int i)
+	{
+		return (int) CounterSampler.mix(((long) seed << 32) ^ i);
+	}
+}
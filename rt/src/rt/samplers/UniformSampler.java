@@ -27,4 +27,12 @@ public class UniformSampler implements Sampler {
 		// does nothing here
 	}
 
+	/**
+	 * The grid depends on the number of samples, so this only makes random samples.
+	 */
+	@Override
+	public float sample(long pixel, int i, int d) {
+		return CounterSampler.random(pixel, i, d);
+	}
+
 }
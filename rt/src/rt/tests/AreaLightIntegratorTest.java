@@ -0,0 +1,50 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.integrators.AreaLightIntegrator;
+import rt.integrators.heuristics.BalanceHeuristic;
+import rt.integrators.heuristics.PowerHeuristic;
+import rt.materials.Diffuse;
+import util.FloatFunction;
+
+public class AreaLightIntegratorTest {
+
+	private static final float EPSILON = 1e-5f;
+
+	@Test
+	public void weightsOfOneDirectionShouldAddUpToOne() {
+		// A diffuse shading point and a tilted point on a light, so the cosines at the
+		// shading point and at the light differ
+		HitRecord hit = new HitRecord();
+		hit.position = new Point3f(0, 0, 0);
+		hit.normal = new Vector3f(0, 0, 1);
+		hit.w = new Vector3f(0.3f, 0, 1);
+		hit.w.normalize();
+		Point3f lightPosition = new Point3f(0.8f, 0.3f, 1.2f);
+		Vector3f lightNormal = new Vector3f(-0.6f, 0.1f, -1);
+		lightNormal.normalize();
+
+		Vector3f wIn = new Vector3f(lightPosition);
+		float d2 = wIn.lengthSquared();
+		wIn.normalize();
+		Vector3f toShadingPoint = new Vector3f(wIn);
+		toShadingPoint.negate();
+		float cosLight = lightNormal.dot(toShadingPoint);
+		assertNotEquals(hit.normal.dot(wIn), cosLight, 0.1f);
+
+		float brdfProbability = new Diffuse().pdf(hit, hit.w, wIn);
+		float lightProbability = 0.7f;
+		for (FloatFunction heuristic : new FloatFunction[] {new PowerHeuristic(), new BalanceHeuristic()}) {
+			float sum = AreaLightIntegrator.lightSampleWeight(heuristic, lightProbability, brdfProbability, cosLight, d2)
+					+ AreaLightIntegrator.brdfSampleWeight(heuristic, brdfProbability, lightProbability, cosLight, d2);
+			assertEquals(1, sum, EPSILON);
+		}
+	}
+}
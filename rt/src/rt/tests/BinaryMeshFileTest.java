@@ -0,0 +1,79 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import rt.BinaryMeshFile;
+import rt.FastObjReader;
+import rt.PlyReader;
+import rt.intersectables.Mesh;
+
+public class BinaryMeshFileTest {
+
+	@Test
+	public void meshShouldSurviveRoundTrip() throws IOException {
+		File file = File.createTempFile("male", ".rtmesh");
+		file.deleteOnExit();
+		Mesh mesh = FastObjReader.read("../obj/male.obj", 1.f);
+		BinaryMeshFile.write(mesh, file.getPath(), 1.f);
+		Mesh read = BinaryMeshFile.read(file.getPath());
+		assertArrayEquals(mesh.vertices, read.vertices, 0);
+		assertArrayEquals(mesh.normals, read.normals, 0);
+		assertArrayEquals(mesh.texCoords, read.texCoords, 0);
+		assertArrayEquals(mesh.indices, read.indices);
+	}
+
+	@Test
+	public void mappedMeshShouldBeWrittenUnchanged() throws IOException {
+		File file = File.createTempFile("teapot", ".rtmesh");
+		file.deleteOnExit();
+		File copy = File.createTempFile("teapot-copy", ".rtmesh");
+		copy.deleteOnExit();
+		BinaryMeshFile.convert("../obj/teapot.obj", file.getPath(), 1.f);
+		Mesh mapped = BinaryMeshFile.readMapped(file.getPath());
+		assertTrue(mapped.isOffHeap());
+		BinaryMeshFile.write(mapped, copy.getPath(), 1.f);
+		assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(copy.toPath()));
+	}
+
+	@Test
+	public void plyFilesShouldBeConverted() throws IOException {
+		File ply = File.createTempFile("quad", ".ply");
+		ply.deleteOnExit();
+		try (FileWriter writer = new FileWriter(ply)) {
+			writer.write("ply\nformat ascii 1.0\nelement vertex 4\nproperty float x\nproperty float y\n"
+					+ "property float z\nelement face 1\nproperty list uchar int vertex_indices\nend_header\n"
+					+ "0 0 0\n1 0 0\n1 1 0\n0 1 0\n4 0 1 2 3\n");
+		}
+		File file = File.createTempFile("quad", ".rtmesh");
+		file.deleteOnExit();
+		BinaryMeshFile.convert(ply.getPath(), file.getPath(), 2.f);
+		Mesh mesh = PlyReader.read(ply.getPath(), 2.f);
+		Mesh read = BinaryMeshFile.read(file.getPath());
+		assertArrayEquals(mesh.vertices, read.vertices, 0);
+		assertArrayEquals(mesh.indices, read.indices);
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesShouldBeRejected() throws IOException {
+		BinaryMeshFile.read("../obj/teapot.obj");
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFilesShouldBeRejected() throws IOException {
+		File file = File.createTempFile("teapot", ".rtmesh");
+		file.deleteOnExit();
+		BinaryMeshFile.convert("../obj/teapot.obj", file.getPath(), 1.f);
+		try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+			f.setLength(f.length() - 4);
+		}
+		BinaryMeshFile.read(file.getPath());
+	}
+}
@@ -0,0 +1,52 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rt.SampleStream;
+import rt.samplers.BlueNoiseSampler;
+
+public class BlueNoiseSamplerTest {
+
+	private static final int N = BlueNoiseSampler.MASK_SIZE;
+
+	@Test
+	public void firstSamplesShouldBeStratifiedOverTheTile() {
+		BlueNoiseSampler s = new BlueNoiseSampler();
+		for (int d = 0; d < 4; d++) {
+			boolean[] occupied = new boolean[N*N];
+			for (int x = 0; x < N; x++) {
+				for (int y = 0; y < N; y++) {
+					float sample = s.sample(SampleStream.pixel(x, y), 0, d);
+					assertTrue(sample >= 0 && sample < 1);
+					assertEquals(sample, s.sample(SampleStream.pixel(x + N, y + 3*N), 0, d), 0);
+					occupied[(int) (sample*N*N)] = true;
+				}
+			}
+			int count = 0;
+			for (boolean o : occupied)
+				if (o)
+					count++;
+			// A rotation of the mask, so almost all strata are hit once
+			assertTrue(count > N*N*9/10);
+		}
+	}
+
+	@Test
+	public void errorShouldHaveLittleLowFrequencyEnergy() {
+		BlueNoiseSampler s = new BlueNoiseSampler();
+		double variance = 0;
+		for (int x = 0; x < N; x++) {
+			for (int y = 0; y < N; y++) {
+				double mean = 0;
+				for (int i = -1; i <= 1; i++)
+					for (int j = -1; j <= 1; j++)
+						mean += s.sample(SampleStream.pixel((x + i) & (N - 1), (y + j) & (N - 1)), 0, 0)/9;
+				variance += (mean - 0.5)*(mean - 0.5)/(N*N);
+			}
+		}
+		// The variance of the mean of 9 white noise samples is 1/108
+		assertTrue(variance < 1/108.0/2);
+	}
+}
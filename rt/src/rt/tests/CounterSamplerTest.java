@@ -0,0 +1,67 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rt.Ray;
+import rt.SampleStream;
+import rt.Scene;
+import rt.Spectrum;
+import rt.integrators.PathTracingIntegrator;
+import rt.samplers.CounterSampler;
+import rt.testscenes.PathtracingBoxSphere;
+
+public class CounterSamplerTest {
+
+	@Test
+	public void samplesShouldBeUniform() {
+		CounterSampler s = new CounterSampler();
+		int n = 100000;
+		int[] histogram = new int[10];
+		for (int i = 0; i < n; i++) {
+			float x = s.sample(42, i/10, i % 10);
+			assertTrue(x >= 0 && x < 1);
+			histogram[(int) (x*10)]++;
+		}
+		for (int count : histogram)
+			assertEquals(n/10, count, n/100);
+	}
+
+	@Test
+	public void samplesShouldOnlyDependOnPixelIndexAndDimension() {
+		CounterSampler s = new CounterSampler();
+		s.init(7);
+		float[][] samples = s.makeSamples(10, 3);
+		s.init(8);
+		assertNotEquals(samples[0][0], s.makeSamples(1, 1)[0][0], 0);
+		for (int i = 0; i < 10; i++)
+			for (int d = 0; d < 3; d++)
+				assertEquals(samples[i][d], new CounterSampler().sample(7, i, d), 0);
+	}
+
+	@Test
+	public void pixelShouldNotDependOnPixelsRenderedBefore() {
+		Scene scene = new PathtracingBoxSphere();
+		int spp = scene.getSPP();
+		PathTracingIntegrator fresh = new PathTracingIntegrator(scene);
+		PathTracingIntegrator used = new PathTracingIntegrator(scene);
+		for (int k = 0; k < spp; k++)
+			render(used, scene, 10, 20, k);
+		for (int k = 0; k < spp; k++) {
+			Spectrum expected = render(fresh, scene, 64, 100, k);
+			Spectrum actual = render(used, scene, 64, 100, k);
+			assertEquals(expected.r, actual.r, 0);
+			assertEquals(expected.g, actual.g, 0);
+			assertEquals(expected.b, actual.b, 0);
+		}
+	}
+
+	private static Spectrum render(PathTracingIntegrator integrator, Scene scene, int x, int y, int k) {
+		SampleStream stream = new SampleStream();
+		stream.set(new CounterSampler(), y*1000 + x, k);
+		Ray r = scene.getCamera().makeWorldSpaceRay(x, y, stream.makeCameraSample(new float[] {0.5f, 0.5f}));
+		integrator.startSample(stream);
+		return integrator.integrate(r);
+	}
+}
@@ -0,0 +1,62 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.ObjReader;
+import rt.intersectables.Mesh;
+
+public class FastObjReaderTest {
+
+	@Test
+	public void teapotShouldBeReadLikeObjReader() throws IOException {
+		assertSameMesh(ObjReader.read("../obj/teapot.obj", 1.f), FastObjReader.read("../obj/teapot.obj", 1.f));
+	}
+
+	@Test
+	public void texturedMeshShouldBeReadLikeObjReader() throws IOException {
+		assertSameMesh(ObjReader.read("../obj/male.obj", 1.f), FastObjReader.read("../obj/male.obj", 1.f));
+	}
+
+	@Test
+	public void parallelParsingShouldGiveSameMesh() throws IOException {
+		assertSameMesh(FastObjReader.read("../obj/dragon.obj", 2.2f, false), FastObjReader.read("../obj/dragon.obj", 2.2f, true));
+	}
+
+	@Test
+	public void verticesShouldBeShared() throws IOException {
+		Mesh mesh = FastObjReader.read("../obj/male.obj", 1.f);
+		int nVertices = mesh.vertices.length/3;
+		assertTrue(nVertices < mesh.indices.length/2);
+		assertEquals(nVertices*2, mesh.texCoords.length);
+		for (int index : mesh.indices)
+			assertTrue(index >= 0 && index < nVertices);
+	}
+
+	@Test
+	public void malformedFaceShouldFailWithTheLine() throws IOException {
+		File file = File.createTempFile("malformed", ".obj");
+		file.deleteOnExit();
+		try (FileWriter writer = new FileWriter(file)) {
+			writer.write("v 0 0 0\nv 1 0 0\nv 0 1 0\nf .5 1 2\n");
+		}
+		try {
+			FastObjReader.read(file.getPath(), 1.f);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("f .5 1 2"));
+		}
+	}
+
+	private void assertSameMesh(Mesh expected, Mesh actual) {
+		assertArrayEquals(expected.vertices, actual.vertices, 0);
+		assertArrayEquals(expected.normals, actual.normals, 0);
+		assertArrayEquals(expected.indices, actual.indices);
+	}
+}
@@ -0,0 +1,56 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.Spectrum;
+import rt.materials.Glossy;
+
+public class GlossyLookupTableTest {
+
+	private static final float TOLERANCE = 5e-4f;
+
+	@Test
+	public void lookupTablesShouldMatchAnalyticBRDF() {
+		Spectrum n = new Spectrum(0.25f, 0.306f, 1.426f), k = new Spectrum(3, 2.88f, 1.846f);
+		HitRecord hit = new HitRecord();
+		hit.position = new Point3f();
+		hit.normal = new Vector3f(0, 0, 1);
+		Spectrum expected = new Spectrum(), actual = new Spectrum();
+		for (float e : new float[] {2, 8, 300, 10000}) {
+			Glossy analytic = new Glossy(e, n, k), tabulated = new Glossy(e, n, k, true);
+			Random random = new Random(5);
+			int compared = 0;
+			for (int i = 0; i < 20000; i++) {
+				Vector3f wOut = new Vector3f(random.nextFloat()*2 - 1, random.nextFloat()*2 - 1, random.nextFloat());
+				wOut.normalize();
+				// Close to the mirror direction, where the distribution is not negligible
+				float spread = 4/(float) Math.sqrt(e);
+				Vector3f wIn = new Vector3f(-wOut.x + (random.nextFloat() - 0.5f)*spread,
+						-wOut.y + (random.nextFloat() - 0.5f)*spread, wOut.z);
+				wIn.normalize();
+				Vector3f h = new Vector3f(wOut);
+				h.add(wIn);
+				h.normalize();
+				if (Math.pow(h.z, e) < 1e-3)
+					continue;
+
+				float expectedPdf = analytic.evaluateBRDFAndPdf(hit, wOut, wIn, expected);
+				float actualPdf = tabulated.evaluateBRDFAndPdf(hit, wOut, wIn, actual);
+				assertEquals(expectedPdf, actualPdf, TOLERANCE*expectedPdf);
+				assertEquals(expected.r, actual.r, TOLERANCE*expected.r);
+				assertEquals(expected.g, actual.g, TOLERANCE*expected.g);
+				assertEquals(expected.b, actual.b, TOLERANCE*expected.b);
+				compared++;
+			}
+			assertTrue(compared > 1000);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Ray;
+import rt.accelerators.BSPAccelerator;
+import rt.accelerators.LazyAccelerator;
+import rt.intersectables.Mesh;
+
+public class LazyAcceleratorTest {
+
+	@Test
+	public void shouldOnlyBuildWhenBoxIsEntered() throws IOException {
+		LazyAccelerator lazy = new LazyAccelerator(FastObjReader.read("../obj/teapot.obj", 1.f));
+		assertNull(lazy.intersect(new Ray(new Vector3f(0, 5, 0), new Vector3f(1, 0, 0), 0)));
+		// Pointing away from the box
+		assertNull(lazy.intersect(new Ray(new Vector3f(0, 0, 5), new Vector3f(0, 0, 1), 0)));
+		assertFalse(lazy.isBuilt());
+		assertNotNull(lazy.intersect(new Ray(new Vector3f(0, 0, 5), new Vector3f(0, 0, -1), 0)));
+		assertTrue(lazy.isBuilt());
+	}
+
+	@Test
+	public void shouldFindSameHitsAsBSPAccelerator() throws IOException {
+		Mesh mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
+		BSPAccelerator eager = new BSPAccelerator(mesh);
+		LazyAccelerator lazy = new LazyAccelerator(mesh);
+		LazyAccelerator refined = new LazyAccelerator(mesh, 100);
+		Random random = new Random(3);
+		for (int i = 0; i < 1000; i++) {
+			Vector3f origin = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, 3);
+			Vector3f direction = new Vector3f(random.nextFloat()*0.4f-0.2f, random.nextFloat()*0.4f-0.2f, -1);
+			Ray r = new Ray(origin, direction, 0);
+			HitRecord expected = eager.intersect(r);
+			assertSameHit(expected, lazy.intersect(r));
+			assertSameHit(expected, refined.intersect(r));
+		}
+	}
+
+	private void assertSameHit(HitRecord expected, HitRecord actual) {
+		if (expected == null) {
+			assertNull(actual);
+		} else {
+			assertNotNull(actual);
+			assertEquals(expected.t, actual.t, 1e-6f);
+		}
+	}
+}
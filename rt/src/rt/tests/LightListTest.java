@@ -0,0 +1,121 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.LightGeometry;
+import rt.LightList;
+import rt.Spectrum;
+import rt.samplers.CounterSampler;
+import rt.lightsources.AreaLight;
+import rt.lightsources.PointLight;
+import util.MyMath;
+
+public class LightListTest {
+
+	private static LightList makeLights() {
+		LightList lights = new LightList();
+		// Powers 4*pi, 4*pi*3 and 14, the emission of an area light is its power
+		lights.add(new PointLight(new Vector3f(0, 1, 0), new Spectrum(1, 1, 1)));
+		lights.add(new PointLight(new Vector3f(0, 2, 0), new Spectrum(3, 3, 3)));
+		lights.add(new AreaLight(new Point3f(0, 2, 0), new Vector3f(2, 0, 0), new Vector3f(0, 0, 1), new Spectrum(14, 14, 14)));
+		return lights;
+	}
+
+	@Test
+	public void lightsShouldBeSelectedUniformlyBeforePrepare() {
+		LightList lights = makeLights();
+		for (LightGeometry l : lights)
+			assertEquals(1/3.f, lights.getProbability(l), 1e-6f);
+		assertSame(lights.get(1), lights.getRandomLight(0.5f));
+	}
+
+	@Test
+	public void lightsShouldBeSelectedProportionalToPower() {
+		LightList lights = makeLights();
+		lights.prepare();
+		float[] power = {4*MyMath.PI, 12*MyMath.PI, 14};
+		float total = power[0] + power[1] + power[2];
+		int n = 30000;
+		int[] count = new int[lights.size()];
+		for (int i = 0; i < n; i++)
+			count[lights.indexOf(lights.getRandomLight((i + 0.5f)/n))]++;
+		float sum = 0;
+		for (int i = 0; i < lights.size(); i++) {
+			float p = lights.getProbability(lights.get(i));
+			assertEquals(power[i]/total, p, 1e-5f);
+			assertEquals(p, count[i]/(float) n, 1e-3f);
+			sum += p;
+		}
+		assertEquals(1, sum, 1e-5f);
+	}
+
+	/**
+	 * A grid of lights facing down at height 1, the top row facing up.
+	 */
+	private static LightList makeGrid(int n) {
+		LightList lights = new LightList();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				Point3f p = new Point3f(i, 1, j);
+				Spectrum e = new Spectrum(1 + i, 1 + i, 1 + i);
+				if (j == n - 1)
+					lights.add(new AreaLight(p, new Vector3f(0, 0, 0.5f), new Vector3f(0.5f, 0, 0), e));
+				else
+					lights.add(new AreaLight(p, new Vector3f(0.5f, 0, 0), new Vector3f(0, 0, 0.5f), e));
+			}
+		}
+		lights.prepare();
+		return lights;
+	}
+
+	private static HitRecord makeShadingPoint(float x, float z) {
+		HitRecord hit = new HitRecord();
+		hit.position = new Point3f(x, 0, z);
+		hit.normal = new Vector3f(0, 1, 0);
+		return hit;
+	}
+
+	@Test
+	public void lightTreeShouldSelectWithTheProbabilityItReturns() {
+		LightList lights = makeGrid(8);
+		float[] probability = new float[1];
+		for (int k = 0; k < 10; k++) {
+			HitRecord hit = makeShadingPoint(CounterSampler.random(k, 0, 0)*8, CounterSampler.random(k, 0, 1)*8);
+			float sum = 0;
+			for (LightGeometry l : lights)
+				sum += lights.getProbability(l, hit);
+			int n = 20000, none = 0;
+			int[] count = new int[lights.size()];
+			for (int i = 0; i < n; i++) {
+				LightGeometry l = lights.getRandomLight((i + 0.5f)/n, hit, probability);
+				// Nodes whose children can not illuminate the point select none
+				if (l == null) {
+					none++;
+					continue;
+				}
+				assertEquals(lights.getProbability(l, hit), probability[0], 1e-6f);
+				count[lights.indexOf(l)]++;
+			}
+			assertEquals(1 - sum, none/(float) n, 2e-3f);
+			assertTrue(sum > 0.5f);
+			for (int i = 0; i < lights.size(); i++)
+				assertEquals(lights.getProbability(lights.get(i), hit), count[i]/(float) n, 2e-3f);
+		}
+	}
+
+	@Test
+	public void lightTreeShouldNotSelectLightsFacingAway() {
+		LightList lights = makeGrid(8);
+		HitRecord hit = makeShadingPoint(3.5f, 3.5f);
+		for (int i = 0; i < 8; i++) {
+			assertEquals(0, lights.getProbability(lights.get(i*8 + 7), hit), 0);
+			assertTrue(lights.getProbability(lights.get(i*8), hit) > 0);
+		}
+	}
+}
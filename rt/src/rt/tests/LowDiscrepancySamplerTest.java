@@ -0,0 +1,93 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rt.SampleStream;
+import rt.Sampler;
+import rt.samplers.HaltonSampler;
+import rt.samplers.SobolSampler;
+
+public class LowDiscrepancySamplerTest {
+
+	@Test
+	public void sobolShouldStratifyEachPairOfDimensions() {
+		SobolSampler s = new SobolSampler();
+		for (long pixel = 0; pixel < 10; pixel++) {
+			s.init(pixel);
+			float[][] samples = s.makeSamples(64, 6);
+			for (int d = 0; d < 6; d += 2) {
+				// All elementary intervals of area 1/64, from 64x1 to 1x64 strata
+				for (int xBits = 0; xBits <= 6; xBits++) {
+					int xStrata = 1 << xBits, yStrata = 64/xStrata;
+					boolean[] occupied = new boolean[64];
+					for (float[] sample : samples) {
+						int stratum = (int) (sample[d]*xStrata)*yStrata + (int) (sample[d+1]*yStrata);
+						assertFalse(occupied[stratum]);
+						occupied[stratum] = true;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void sobolShouldStratifyTheDecisionsOfABounce() {
+		SobolSampler s = new SobolSampler();
+		SampleStream stream = new SampleStream();
+		float[] sample = new float[2];
+		for (int bounce = 0; bounce < 3; bounce++) {
+			for (int dimension : new int[] {SampleStream.LIGHT_POSITION, SampleStream.BSDF}) {
+				boolean[] occupied = new boolean[16];
+				for (int i = 0; i < 16; i++) {
+					stream.set(s, 5, i);
+					stream.get(bounce, dimension, sample);
+					int stratum = (int) (sample[0]*4)*4 + (int) (sample[1]*4);
+					assertFalse(occupied[stratum]);
+					occupied[stratum] = true;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void haltonShouldStratifyEachDimension() {
+		HaltonSampler s = new HaltonSampler();
+		s.init(3);
+		// Bases 2, 3 and 5
+		int[] n = {8, 9, 25};
+		for (int d = 0; d < n.length; d++) {
+			float[][] samples = s.makeSamples(n[d], d + 1);
+			boolean[] occupied = new boolean[n[d]];
+			for (float[] sample : samples) {
+				int stratum = (int) (sample[d]*n[d]);
+				assertFalse(occupied[stratum]);
+				occupied[stratum] = true;
+			}
+		}
+	}
+
+	@Test
+	public void pixelsShouldBeDecorrelatedAndReproducible() {
+		Sampler[] samplers = {new SobolSampler(), new HaltonSampler()};
+		for (Sampler s : samplers) {
+			s.init(1);
+			float[][] a = s.makeSamples(16, 40);
+			s.init(2);
+			float[][] b = s.makeSamples(16, 40);
+			s.init(1);
+			float[][] c = s.makeSamples(16, 40);
+			double mean = 0;
+			for (int i = 0; i < 16; i++) {
+				assertArrayEquals(a[i], c[i], 0);
+				for (int d = 0; d < 40; d++) {
+					assertTrue(a[i][d] >= 0 && a[i][d] < 1);
+					assertNotEquals(a[i][d], b[i][d], 0);
+					mean += a[i][d];
+				}
+			}
+			assertEquals(0.5, mean/(16*40), 0.05);
+		}
+	}
+}
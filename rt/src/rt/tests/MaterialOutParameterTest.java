@@ -0,0 +1,101 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.vecmath.Point3f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.Material;
+import rt.Material.ShadingSample;
+import rt.Spectrum;
+import rt.materials.AreaLightMaterial;
+import rt.materials.Blinn;
+import rt.materials.Diffuse;
+import rt.materials.DoubleSidedDiffuse;
+import rt.materials.Glossy;
+import rt.materials.NoisyTexture;
+import rt.materials.PointLightMaterial;
+import rt.materials.Reflective;
+import rt.materials.Refractive;
+import rt.materials.XYZGrid;
+
+public class MaterialOutParameterTest {
+
+	private static final float EPSILON = 1e-6f;
+
+	private final Material[] materials = {
+			new Diffuse(new Spectrum(0.8f, 0.5f, 0.2f)),
+			new DoubleSidedDiffuse(),
+			new XYZGrid(new Spectrum(0.2f), new Spectrum(1), 0.1f, new Vector3f()),
+			new Glossy(20, new Spectrum(0.2f, 0.9f, 1.1f), new Spectrum(3.9f, 2.4f, 2.2f)),
+			new Blinn(new Spectrum(0.5f), new Spectrum(0.3f), 10),
+			new Reflective(),
+			new Refractive(1.5f),
+			new NoisyTexture(),
+			new AreaLightMaterial(new Spectrum(10), 2),
+			new PointLightMaterial(new Spectrum(5))
+	};
+
+	@Test
+	public void outParametersShouldMatchReturnedValues() {
+		Random random = new Random(7);
+		// Reused for all calls, like integrators do
+		Spectrum result = new Spectrum();
+		ShadingSample sample = new ShadingSample();
+		for (Material material : materials) {
+			for (int i = 0; i < 100; i++) {
+				Vector3f wOut = randomDirection(random);
+				Vector3f wIn = randomDirection(random);
+				float[] s = {random.nextFloat(), random.nextFloat()};
+
+				material.evaluateBRDF(makeHit(wOut), wOut, wIn, result);
+				assertSpectrumEquals(material.evaluateBRDF(makeHit(wOut), wOut, wIn), result);
+
+				Spectrum emission = material.evaluateEmission(makeHit(wOut), wOut);
+				assertEquals(emission != null, material.evaluateEmission(makeHit(wOut), wOut, result));
+				if (emission != null)
+					assertSpectrumEquals(emission, result);
+
+				ShadingSample expected = material.getShadingSample(makeHit(wOut), s);
+				assertEquals(expected != null, material.getShadingSample(makeHit(wOut), s, sample));
+				if (expected != null) {
+					assertSpectrumEquals(expected.brdf, sample.brdf);
+					assertTrue(expected.w.epsilonEquals(sample.w, EPSILON));
+					assertEquals(expected.p, sample.p, EPSILON*expected.p);
+					assertEquals(expected.isSpecular, sample.isSpecular);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a hit at a fixed point with the normal +z, seen from direction w
+	 */
+	static HitRecord makeHit(Vector3f w) {
+		HitRecord h = new HitRecord();
+		h.position = new Point3f(0.3f, 0.2f, 0.1f);
+		h.normal = new Vector3f(0, 0, 1);
+		h.w = new Vector3f(w);
+		return h;
+	}
+
+	/**
+	 * @return a random direction above the surface of {@link #makeHit}
+	 */
+	static Vector3f randomDirection(Random random) {
+		Vector3f w = new Vector3f(random.nextFloat()*2 - 1, random.nextFloat()*2 - 1, random.nextFloat() + 0.01f);
+		w.normalize();
+		return w;
+	}
+
+	static void assertSpectrumEquals(Spectrum expected, Spectrum actual) {
+		assertEquals(expected.r, actual.r, EPSILON*Math.abs(expected.r));
+		assertEquals(expected.g, actual.g, EPSILON*Math.abs(expected.g));
+		assertEquals(expected.b, actual.b, EPSILON*Math.abs(expected.b));
+	}
+}
@@ -0,0 +1,104 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+import static rt.tests.MaterialOutParameterTest.assertSpectrumEquals;
+import static rt.tests.MaterialOutParameterTest.makeHit;
+import static rt.tests.MaterialOutParameterTest.randomDirection;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.Material;
+import rt.Material.ShadingSample;
+import rt.Spectrum;
+import rt.materials.AreaLightMaterial;
+import rt.materials.Blinn;
+import rt.materials.Diffuse;
+import rt.materials.DoubleSidedDiffuse;
+import rt.materials.Glossy;
+import rt.materials.NoisyTexture;
+import rt.materials.Reflective;
+import rt.materials.Refractive;
+
+public class MaterialPdfTest {
+
+	private static final float EPSILON = 1e-5f;
+
+	private final Material[] materials = {
+			new Diffuse(),
+			new DoubleSidedDiffuse(),
+			new Glossy(20, new Spectrum(0.2f, 0.9f, 1.1f), new Spectrum(3.9f, 2.4f, 2.2f)),
+			new Glossy(20, new Spectrum(0.2f, 0.9f, 1.1f), new Spectrum(3.9f, 2.4f, 2.2f), true),
+			new Blinn(new Spectrum(0.5f), new Spectrum(0.3f), 10),
+			new Reflective(),
+			new Refractive(1.5f),
+			new NoisyTexture(),
+			new AreaLightMaterial(new Spectrum(10), 2)
+	};
+
+	@Test
+	public void pdfShouldMatchShadingSamples() {
+		Random random = new Random(11);
+		for (Material material : materials) {
+			for (int i = 0; i < 1000; i++) {
+				Vector3f wOut = randomDirection(random);
+				ShadingSample s = material.getShadingSample(makeHit(wOut), new float[] {random.nextFloat(), random.nextFloat()});
+				if (s == null || s.isSpecular || material instanceof Reflective)
+					continue;
+				// Glossy samples a half vector w_h and divides its density by cos(w_o, w_h).
+				// Where that is close to 0 the reflected direction and the half vector that
+				// pdf recovers from it are mostly rounding error. This holds for the tables too.
+				if (material instanceof Glossy && (1 + wOut.dot(s.w))/2 < 1e-4f)
+					continue;
+				// The sampled half vector of Glossy is not exactly normalized and the
+				// reflected direction is rounded, pow(cos, e) amplifies that
+				assertEquals(s.p, material.pdf(makeHit(wOut), wOut, s.w), 1e-3f*s.p);
+			}
+		}
+	}
+
+	@Test
+	public void evaluateBRDFAndPdfShouldMatchSeparateCalls() {
+		Random random = new Random(12);
+		Spectrum brdf = new Spectrum();
+		for (Material material : materials) {
+			for (int i = 0; i < 100; i++) {
+				Vector3f wOut = randomDirection(random);
+				Vector3f wIn = randomDirection(random);
+				HitRecord hit = makeHit(wOut);
+				hit.p = 42;
+				float pdf = material.evaluateBRDFAndPdf(hit, wOut, wIn, brdf);
+				assertEquals(42, hit.p, 0);
+				Spectrum expected = material.evaluateBRDF(hit, wOut, wIn);
+				assertEquals(42, hit.p, 0);
+				assertSpectrumEquals(expected, brdf);
+				assertEquals(material.pdf(hit, wOut, wIn), pdf, EPSILON*pdf);
+			}
+		}
+	}
+
+	@Test
+	public void pdfShouldIntegrateToOne() {
+		Random random = new Random(13);
+		Material[] sampled = {new Diffuse(), materials[2]};
+		int n = 400000;
+		for (Material material : sampled) {
+			Vector3f wOut = new Vector3f(0.5f, 0, 1);
+			wOut.normalize();
+			HitRecord hit = makeHit(wOut);
+			double sum = 0;
+			for (int i = 0; i < n; i++) {
+				// Uniform directions on the sphere, with density 1/(4 pi)
+				float z = random.nextFloat()*2 - 1, phi = random.nextFloat()*2*(float) Math.PI;
+				float r = (float) Math.sqrt(1 - z*z);
+				Vector3f wIn = new Vector3f(r*(float) Math.cos(phi), r*(float) Math.sin(phi), z);
+				sum += material.pdf(hit, wOut, wIn)*4*Math.PI;
+			}
+			assertEquals(1, sum/n, 0.03);
+		}
+	}
+}
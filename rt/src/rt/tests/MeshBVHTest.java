@@ -0,0 +1,80 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.BinaryMeshFile;
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.Ray;
+import rt.accelerators.MeshBVH;
+import rt.intersectables.Mesh;
+
+public class MeshBVHTest {
+
+	@Test
+	public void shouldFindSameHitsAsMesh() throws IOException {
+		Mesh mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
+		assertSameHits(mesh, new MeshBVH(mesh));
+	}
+
+	@Test
+	public void offHeapShouldFindSameHitsAsMesh() throws IOException {
+		Mesh mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
+		Mesh direct = mesh.toDirect();
+		assertTrue(direct.isOffHeap());
+		assertNull(direct.vertices);
+		assertSameHits(mesh, new MeshBVH(direct, true));
+	}
+
+	@Test
+	public void mappedMeshShouldFindSameHitsAsMesh() throws IOException {
+		File file = File.createTempFile("teapot", ".rtmesh");
+		file.deleteOnExit();
+		BinaryMeshFile.convert("../obj/teapot.obj", file.getPath(), 1.f);
+		Mesh mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
+		assertSameHits(mesh, new MeshBVH(BinaryMeshFile.readMapped(file.getPath()), true));
+	}
+
+	/**
+	 * Shoots random rays from a sphere around the mesh. The triangle tests differ, so rays
+	 * grazing an edge may hit a neighboring triangle, but the distance must be the same.
+	 */
+	private void assertSameHits(Intersectable expected, Intersectable actual) {
+		Random random = new Random(42);
+		int hits = 0;
+		for (int i = 0; i < 2000; i++) {
+			Vector3f origin = randomDirection(random);
+			origin.scale(3);
+			Vector3f direction = randomDirection(random);
+			direction.scale(0.5f);
+			direction.sub(origin);
+			Ray r = new Ray(origin, direction, 0);
+			HitRecord e = expected.intersect(r);
+			HitRecord a = actual.intersect(r);
+			if (e == null) {
+				assertNull(a);
+				continue;
+			}
+			assertNotNull(a);
+			assertEquals(e.t, a.t, 1e-4f);
+			assertEquals(1, e.normal.dot(a.normal), 1e-2f);
+			hits++;
+		}
+		assertTrue(hits > 100);
+	}
+
+	private Vector3f randomDirection(Random random) {
+		Vector3f d = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, random.nextFloat()*2-1);
+		d.normalize();
+		return d;
+	}
+}
@@ -0,0 +1,60 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Ray;
+import rt.accelerators.MeshBVH;
+import rt.accelerators.OutOfCoreBVH;
+import rt.intersectables.Mesh;
+
+public class OutOfCoreBVHTest {
+
+	@Test
+	public void shouldFindSameHitsAsMeshBVH() throws IOException {
+		Mesh mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
+		MeshBVH bvh = new MeshBVH(mesh);
+		File file = File.createTempFile("teapot", ".rtooc");
+		file.deleteOnExit();
+		OutOfCoreBVH.write(bvh, file.getPath(), 64);
+
+		// Only room for a few treelets, so they are evicted all the time
+		long cacheSize = 16*1024;
+		try (OutOfCoreBVH outOfCore = new OutOfCoreBVH(file.getPath(), cacheSize)) {
+			assertTrue(outOfCore.getNumberOfTreelets() > 10);
+			Random random = new Random(7);
+			for (int i = 0; i < 2000; i++) {
+				Vector3f origin = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, 3);
+				Vector3f direction = new Vector3f(random.nextFloat()*0.4f-0.2f, random.nextFloat()*0.4f-0.2f, -1);
+				Ray r = new Ray(origin, direction, 0);
+				HitRecord expected = bvh.intersect(r);
+				HitRecord actual = outOfCore.intersect(r);
+				if (expected == null) {
+					assertNull(actual);
+				} else {
+					assertEquals(expected.t, actual.t, 0);
+					assertEquals(expected.normal.x, actual.normal.x, 1e-6f);
+					assertEquals(expected.normal.y, actual.normal.y, 1e-6f);
+					assertEquals(expected.normal.z, actual.normal.z, 1e-6f);
+				}
+			}
+			assertTrue(outOfCore.getHits() > 0);
+			assertTrue(outOfCore.getMisses() > 0);
+			assertTrue(outOfCore.getEvictions() > 0);
+			assertTrue(outOfCore.getBytesRead() > 0);
+			assertTrue(outOfCore.getCachedBytes() <= cacheSize);
+
+			outOfCore.resetStatistics();
+			assertEquals(0, outOfCore.getMisses());
+		}
+	}
+}
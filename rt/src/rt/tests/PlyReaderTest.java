@@ -0,0 +1,102 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import rt.PlyReader;
+import rt.intersectables.Mesh;
+
+public class PlyReaderTest {
+
+	/**
+	 * A unit cube with a color per vertex and one quad per side.
+	 */
+	private static final float[] CUBE_VERTICES = {0,0,0, 1,0,0, 1,1,0, 0,1,0, 0,0,1, 1,0,1, 1,1,1, 0,1,1};
+	private static final int[] CUBE_QUADS = {0,3,2,1, 4,5,6,7, 0,1,5,4, 2,3,7,6, 1,2,6,5, 0,4,7,3};
+
+	private static final String HEADER_START = "ply\nformat %s 1.0\ncomment made by hand\n"
+			+ "element vertex 8\nproperty float x\nproperty float y\nproperty float z\n"
+			+ "property uchar red\nproperty uchar green\nproperty uchar blue\n"
+			+ "element face 6\nproperty list uchar int vertex_indices\nend_header\n";
+
+	@Test
+	public void asciiAndBinaryShouldGiveSameMesh() throws IOException {
+		Mesh ascii = PlyReader.read(writeAscii().getPath(), 1.f);
+		Mesh little = PlyReader.read(writeBinary(ByteOrder.LITTLE_ENDIAN).getPath(), 1.f);
+		Mesh big = PlyReader.read(writeBinary(ByteOrder.BIG_ENDIAN).getPath(), 1.f);
+		assertArrayEquals(ascii.vertices, little.vertices, 0);
+		assertArrayEquals(ascii.indices, little.indices);
+		assertArrayEquals(ascii.vertices, big.vertices, 0);
+		assertArrayEquals(ascii.indices, big.indices);
+	}
+
+	@Test
+	public void cubeShouldBeNormalizedAndTriangulated() throws IOException {
+		Mesh mesh = PlyReader.read(writeBinary(ByteOrder.LITTLE_ENDIAN).getPath(), 2.f);
+		assertEquals(8*3, mesh.vertices.length);
+		assertEquals(12*3, mesh.indices.length);
+		for (float x : mesh.vertices)
+			assertEquals(2.f, Math.abs(x), 1e-6f);
+		// Corners get the normalized sum of the normals of their three sides
+		float n = (float) (1/Math.sqrt(3));
+		assertEquals(-n, mesh.normals[0], 1e-6f);
+		assertEquals(-n, mesh.normals[1], 1e-6f);
+		assertEquals(-n, mesh.normals[2], 1e-6f);
+	}
+
+	@Test
+	public void facesWithoutAreaShouldBeSkipped() throws IOException {
+		Mesh cube = PlyReader.read(writeBinary(ByteOrder.LITTLE_ENDIAN).getPath(), 1.f);
+		String header = HEADER_START.replace("element face 6", "element face 8");
+		byte[] start = String.format(header, "binary_little_endian").getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer ply = ByteBuffer.allocate(start.length + 8*15 + 1 + 9 + 6*17).order(ByteOrder.LITTLE_ENDIAN);
+		ply.put(start);
+		for (int i = 0; i < 8; i++)
+			ply.putFloat(CUBE_VERTICES[i*3]).putFloat(CUBE_VERTICES[i*3+1]).putFloat(CUBE_VERTICES[i*3+2]).put((byte) -1).put((byte) 0).put((byte) 0);
+		// An empty face and a line before the quads
+		ply.put((byte) 0);
+		ply.put((byte) 2).putInt(3).putInt(5);
+		for (int i = 0; i < 6; i++)
+			ply.put((byte) 4).putInt(CUBE_QUADS[i*4]).putInt(CUBE_QUADS[i*4+1]).putInt(CUBE_QUADS[i*4+2]).putInt(CUBE_QUADS[i*4+3]);
+		Mesh mesh = PlyReader.read(write(ply.array()).getPath(), 1.f);
+		assertArrayEquals(cube.indices, mesh.indices);
+	}
+
+	private File writeAscii() throws IOException {
+		StringBuilder ply = new StringBuilder(String.format(HEADER_START, "ascii"));
+		for (int i = 0; i < 8; i++)
+			ply.append(String.format("%s %s %s 255 0 0\n", CUBE_VERTICES[i*3], CUBE_VERTICES[i*3+1], CUBE_VERTICES[i*3+2]));
+		for (int i = 0; i < 6; i++)
+			ply.append(String.format("4 %d %d %d %d\n", CUBE_QUADS[i*4], CUBE_QUADS[i*4+1], CUBE_QUADS[i*4+2], CUBE_QUADS[i*4+3]));
+		return write(ply.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private File writeBinary(ByteOrder order) throws IOException {
+		String format = order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian" : "binary_big_endian";
+		byte[] header = String.format(HEADER_START, format).getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer ply = ByteBuffer.allocate(header.length + 8*15 + 6*17).order(order);
+		ply.put(header);
+		for (int i = 0; i < 8; i++)
+			ply.putFloat(CUBE_VERTICES[i*3]).putFloat(CUBE_VERTICES[i*3+1]).putFloat(CUBE_VERTICES[i*3+2]).put((byte) -1).put((byte) 0).put((byte) 0);
+		for (int i = 0; i < 6; i++)
+			ply.put((byte) 4).putInt(CUBE_QUADS[i*4]).putInt(CUBE_QUADS[i*4+1]).putInt(CUBE_QUADS[i*4+2]).putInt(CUBE_QUADS[i*4+3]);
+		return write(ply.array());
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = File.createTempFile("cube", ".ply");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(content);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,47 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Ray;
+import rt.accelerators.MeshBVH;
+import rt.accelerators.QuantizedBVH;
+
+public class QuantizedBVHTest {
+
+	@Test
+	public void shouldFindSameHitsAsMeshBVH() throws IOException {
+		MeshBVH bvh = new MeshBVH(FastObjReader.read("../obj/teapot.obj", 1.f));
+		QuantizedBVH bits16 = new QuantizedBVH(bvh, 16);
+		QuantizedBVH bits8 = new QuantizedBVH(bvh, 8);
+		assertTrue(bits8.getNodeBytes() < bits16.getNodeBytes());
+		assertTrue(bits16.getNodeBytes() < bvh.getNumberOfNodes()*(long) MeshBVH.NODE_SIZE);
+
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			Vector3f origin = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, 3);
+			Vector3f direction = new Vector3f(random.nextFloat()*0.4f-0.2f, random.nextFloat()*0.4f-0.2f, -1);
+			Ray r = new Ray(origin, direction, 0);
+			HitRecord expected = bvh.intersect(r);
+			assertSameHit(expected, bits16.intersect(r));
+			assertSameHit(expected, bits8.intersect(r));
+		}
+	}
+
+	private void assertSameHit(HitRecord expected, HitRecord actual) {
+		if (expected == null) {
+			assertNull(actual);
+		} else {
+			assertNotNull(actual);
+			assertEquals(expected.t, actual.t, 0);
+		}
+	}
+}
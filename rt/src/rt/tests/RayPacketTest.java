@@ -0,0 +1,100 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.IntersectableList;
+import rt.PacketIntersectable;
+import rt.Ray;
+import rt.RayPacket;
+import rt.cameras.PinholeCamera;
+import rt.accelerators.MeshBVH;
+import rt.intersectables.Instance;
+import rt.intersectables.Plane;
+
+public class RayPacketTest {
+
+	@Test
+	public void cameraPacketsShouldFindSameHitsAsSingleRays() throws IOException {
+		MeshBVH bvh = new MeshBVH(FastObjReader.read("../obj/teapot.obj", 1.f));
+		PinholeCamera camera = new PinholeCamera(new Vector3f(0, 0, 3), new Vector3f(0, 0, 0),
+				new Vector3f(0, 1, 0), 60, 1, 64, 64);
+		int hits = 0;
+		RayPacket packet = new RayPacket();
+		for (int y0 = 0; y0 < 64; y0 += 8) {
+			for (int x0 = 0; x0 < 64; x0 += 8) {
+				packet.clear();
+				for (int j = y0; j < y0 + 8; j++)
+					for (int i = x0; i < x0 + 8; i++)
+						packet.add(camera.makeWorldSpaceRay(i, j, new float[] {0.5f, 0.5f}));
+				assertTrue(packet.hasFrustum());
+				hits += assertSameHits(bvh, packet);
+			}
+		}
+		assertTrue(hits > 300);
+	}
+
+	@Test
+	public void incoherentPacketsShouldFindSameHitsAsSingleRays() throws IOException {
+		MeshBVH bvh = new MeshBVH(FastObjReader.read("../obj/teapot.obj", 1.f));
+		Random random = new Random(3);
+		RayPacket packet = new RayPacket();
+		for (int n = 0; n < 50; n++) {
+			packet.clear();
+			for (int i = 0; i < 1 + random.nextInt(RayPacket.MAX_SIZE); i++) {
+				Vector3f origin = new Vector3f(random.nextFloat()*6-3, random.nextFloat()*6-3, 3);
+				Vector3f direction = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, -1);
+				direction.sub(origin);
+				packet.add(new Ray(origin, direction, 0));
+			}
+			assertSameHits(bvh, packet);
+		}
+	}
+
+	@Test
+	public void listsAndInstancesShouldPassPacketsOn() throws IOException {
+		Matrix4f t = new Matrix4f();
+		t.setIdentity();
+		t.setScale(0.5f);
+		t.setTranslation(new Vector3f(0.2f, 0, 0));
+		IntersectableList list = new IntersectableList();
+		list.add(new Instance(new MeshBVH(FastObjReader.read("../obj/teapot.obj", 1.f)), t));
+		list.add(new Plane(new Vector3f(0, 0, 1), 0.3f));
+
+		RayPacket packet = new RayPacket();
+		for (int j = 0; j < 8; j++)
+			for (int i = 0; i < 8; i++)
+				packet.add(new Ray(new Vector3f(0, 0, 3), new Vector3f(i/8.f - 0.5f, j/8.f - 0.5f, -3), 0));
+		assertTrue(assertSameHits(list, packet) == 64);
+	}
+
+	/**
+	 * @return the number of rays that hit
+	 */
+	private int assertSameHits(PacketIntersectable intersectable, RayPacket packet) {
+		HitRecord[] hits = new HitRecord[RayPacket.MAX_SIZE];
+		intersectable.intersect(packet, hits);
+		int n = 0;
+		for (int i = 0; i < packet.size(); i++) {
+			HitRecord expected = intersectable.intersect(packet.rays[i]);
+			if (expected == null) {
+				assertNull(hits[i]);
+				continue;
+			}
+			assertNotNull(hits[i]);
+			assertEquals(expected.t, hits[i].t, 0);
+			assertEquals(expected.normal, hits[i].normal);
+			n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,61 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+import rt.Ray;
+import rt.Spectrum;
+import rt.integrators.RaySorter;
+import rt.materials.Diffuse;
+import rt.materials.Glossy;
+
+public class RaySorterTest {
+
+	@Test
+	public void shouldGroupRaysByOctant() {
+		Random random = new Random(1);
+		int n = 5000;
+		Ray[] rays = new Ray[n];
+		int[] queue = new int[n];
+		for (int i = 0; i < n; i++) {
+			rays[i] = new Ray(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+					new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, random.nextFloat()*2-1), 0);
+			queue[i] = i;
+		}
+		new RaySorter().sortByOrigin(queue, n, rays);
+
+		boolean[] seen = new boolean[n];
+		int octantChanges = 0;
+		for (int k = 0; k < n; k++) {
+			assertFalse(seen[queue[k]]);
+			seen[queue[k]] = true;
+			if (k > 0 && octant(rays[queue[k]]) != octant(rays[queue[k-1]]))
+				octantChanges++;
+		}
+		assertEquals(7, octantChanges);
+	}
+
+	@Test
+	public void shouldGroupHitsByMaterial() {
+		HitRecord[] hits = new HitRecord[6];
+		for (int i = 0; i < hits.length; i++) {
+			if (i % 3 == 0)
+				continue;
+			hits[i] = new HitRecord();
+			hits[i].material = i % 3 == 1 ? new Diffuse() : new Glossy(10, new Spectrum(1), new Spectrum(1));
+		}
+		int[] queue = {0, 1, 2, 3, 4, 5};
+		new RaySorter().sortByMaterial(queue, hits.length, hits);
+		assertArrayEquals(new int[] {0, 3, 1, 4, 2, 5}, queue);
+	}
+
+	private int octant(Ray r) {
+		return (r.direction.x < 0 ? 1 : 0) | (r.direction.y < 0 ? 2 : 0) | (r.direction.z < 0 ? 4 : 0);
+	}
+}
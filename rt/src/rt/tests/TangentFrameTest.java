@@ -0,0 +1,89 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.HitRecord;
+
+public class TangentFrameTest {
+
+	private static final float EPSILON = 1e-5f;
+
+	@Test
+	public void frameShouldBeOrthonormalAndRightHanded() {
+		Random random = new Random(3);
+		HitRecord hit = new HitRecord();
+		Vector3f[] normals = {new Vector3f(0, 0, 1), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0),
+				new Vector3f(0, 1e-7f, -1), null, null, null};
+		for (int i = 4; i < normals.length; i++)
+			normals[i] = new Vector3f(random.nextFloat()*2 - 1, random.nextFloat()*2 - 1, random.nextFloat()*2 - 1);
+		for (Vector3f normal : normals) {
+			normal.normalize();
+			hit.normal = normal;
+			Vector3f t1 = new Vector3f(), t2 = new Vector3f(), n = new Vector3f();
+			hit.localToWorld(1, 0, 0, t1);
+			hit.localToWorld(0, 1, 0, t2);
+			hit.localToWorld(0, 0, 1, n);
+			assertTrue(n.epsilonEquals(normal, EPSILON));
+			assertEquals(1, t1.length(), EPSILON);
+			assertEquals(1, t2.length(), EPSILON);
+			assertEquals(0, t1.dot(t2), EPSILON);
+			assertEquals(0, t1.dot(normal), EPSILON);
+			Vector3f cross = new Vector3f();
+			cross.cross(t1, t2);
+			assertTrue(cross.epsilonEquals(normal, EPSILON));
+		}
+	}
+
+	@Test
+	public void worldToLocalShouldInvertLocalToWorld() {
+		HitRecord hit = new HitRecord();
+		hit.normal = new Vector3f(0.3f, -0.5f, 0.8f);
+		hit.normal.normalize();
+		Vector3f w = new Vector3f(0.2f, 0.7f, -0.1f);
+		Vector3f v = new Vector3f();
+		hit.worldToLocal(w.x, w.y, w.z, v);
+		assertEquals(w.dot(hit.normal), v.z, EPSILON);
+		hit.localToWorld(v.x, v.y, v.z, v);
+		assertTrue(v.epsilonEquals(w, EPSILON));
+	}
+
+	@Test
+	public void frameShouldFollowChangedNormal() {
+		HitRecord hit = new HitRecord();
+		hit.normal = new Vector3f(0, 1, 0);
+		Vector3f n = new Vector3f();
+		hit.localToWorld(0, 0, 1, n);
+		// Like DoubleSidedDiffuse
+		hit.normal.negate();
+		hit.localToWorld(0, 0, 1, n);
+		assertTrue(n.epsilonEquals(new Vector3f(0, -1, 0), EPSILON));
+		// Like a bump map
+		hit.normal = new Vector3f(1, 0, 0);
+		Vector3f t1 = new Vector3f();
+		hit.localToWorld(1, 0, 0, t1);
+		assertEquals(0, t1.dot(hit.normal), EPSILON);
+	}
+
+	@Test
+	public void normalMapFrameShouldKeepOldOrientation() {
+		HitRecord hit = new HitRecord();
+		hit.normal = new Vector3f(0, 1, 0);
+		Vector3f t1 = new Vector3f(), t2 = new Vector3f();
+		hit.normalMapToWorld(1, 0, 0, t1);
+		hit.normalMapToWorld(0, 1, 0, t2);
+		assertTrue(t1.epsilonEquals(new Vector3f(0, 0, 1), EPSILON));
+		assertTrue(t2.epsilonEquals(new Vector3f(1, 0, 0), EPSILON));
+		// Falls back to y cross normal
+		hit.normal = new Vector3f(1, 0, 0);
+		hit.normalMapToWorld(1, 0, 0, t1);
+		hit.normalMapToWorld(0, 1, 0, t2);
+		assertTrue(t1.epsilonEquals(new Vector3f(0, 0, -1), EPSILON));
+		assertTrue(t2.epsilonEquals(new Vector3f(0, 1, 0), EPSILON));
+	}
+}
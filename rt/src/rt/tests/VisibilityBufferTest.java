@@ -0,0 +1,102 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Intersectable;
+import rt.IntersectableList;
+import rt.Ray;
+import rt.Scene;
+import rt.accelerators.MeshBVH;
+import rt.accelerators.VisibilityBuffer;
+import rt.cameras.PinholeCamera;
+import rt.films.BoxFilterFilm;
+import rt.intersectables.Instance;
+import rt.intersectables.Mesh;
+import rt.intersectables.Plane;
+
+public class VisibilityBufferTest {
+
+	private static class TestScene extends Scene {
+		TestScene(Intersectable... intersectables) {
+			camera = new PinholeCamera(new Vector3f(0.3f, 0.5f, 3), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), 60, 1, 64, 64);
+			film = new BoxFilterFilm(64, 64);
+			IntersectableList list = new IntersectableList();
+			for (Intersectable i : intersectables)
+				list.add(i);
+			root = list;
+		}
+	}
+
+	@Test
+	public void shouldFindSameHitsAsRayCasting() throws IOException {
+		Matrix4f t = new Matrix4f();
+		t.setIdentity();
+		t.setScale(0.6f);
+		t.setTranslation(new Vector3f(0.5f, 0.2f, 0.5f));
+		Mesh teapot = FastObjReader.read("../obj/teapot.obj", 1.f);
+		Scene scene = new TestScene(new MeshBVH(teapot), new Instance(new MeshBVH(teapot), t),
+				new Plane(new Vector3f(0, 0, 1), 1.5f));
+		VisibilityBuffer buffer = new VisibilityBuffer(scene);
+		assertEquals(2, buffer.getNumberOfRasterizedMeshes());
+		assertEquals(0, countDifferentHits(scene, buffer, 0));
+	}
+
+	@Test
+	public void plainMeshesShouldBeRasterized() throws IOException {
+		Scene scene = new TestScene(FastObjReader.read("../obj/teapot.obj", 1.f));
+		VisibilityBuffer buffer = new VisibilityBuffer(scene);
+		assertEquals(1, buffer.getNumberOfRasterizedMeshes());
+		// The triangle tests of Mesh and MeshBVH round differently and differ on the edges
+		assertTrue(countDifferentHits(scene, buffer, 1e-4f) < 20);
+	}
+
+	/**
+	 * Makes four random samples in each pixel and compares the first hits to the ones of
+	 * ray casting.
+	 *
+	 * @param epsilon the largest difference of the hit distances
+	 * @return number of samples with a different hit
+	 */
+	private int countDifferentHits(Scene scene, VisibilityBuffer buffer, float epsilon) {
+		Random random = new Random(7);
+		int n = 64*64*4;
+		Ray[] rays = new Ray[n];
+		float[] filmX = new float[n], filmY = new float[n];
+		int s = 0;
+		for (int j = 0; j < 64; j++) {
+			for (int i = 0; i < 64; i++) {
+				for (int k = 0; k < 4; k++) {
+					float[] sample = {random.nextFloat(), random.nextFloat()};
+					rays[s] = scene.getCamera().makeWorldSpaceRay(i, j, sample);
+					filmX[s] = i + sample[0];
+					filmY[s] = j + sample[1];
+					s++;
+				}
+			}
+		}
+		HitRecord[] hits = new HitRecord[n];
+		buffer.intersect(rays, filmX, filmY, n, hits);
+
+		int different = 0, hitCount = 0;
+		for (s = 0; s < n; s++) {
+			HitRecord expected = scene.getIntersectable().intersect(rays[s]);
+			if (expected == null ? hits[s] != null : hits[s] == null || Math.abs(expected.t - hits[s].t) > epsilon
+					|| expected.material != hits[s].material || !expected.normal.epsilonEquals(hits[s].normal, 1e-3f))
+				different++;
+			if (hits[s] != null)
+				hitCount++;
+		}
+		assertTrue(hitCount > n/20);
+		return different;
+	}
+}
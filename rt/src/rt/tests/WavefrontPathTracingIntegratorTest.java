@@ -0,0 +1,67 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rt.Integrator;
+import rt.Ray;
+import rt.SampleStream;
+import rt.Scene;
+import rt.Spectrum;
+import rt.integrators.PathTracingIntegrator;
+import rt.integrators.WavefrontPathTracingIntegrator;
+import rt.samplers.CounterSampler;
+import rt.testscenes.PathtracingBoxSphere;
+
+public class WavefrontPathTracingIntegratorTest {
+
+	private static final int NR_SAMPLES = 4000;
+
+	@Test
+	public void shouldEstimateSameRadianceAsPathTracer() {
+		Scene scene = new PathtracingBoxSphere();
+		// Sphere, floor, red wall and light
+		int[][] pixels = {{40, 50}, {64, 10}, {120, 60}, {64, 126}};
+		for (int[] pixel : pixels) {
+			Ray[] rays = new Ray[NR_SAMPLES];
+			SampleStream[] samples = new SampleStream[NR_SAMPLES];
+			for (int k = 0; k < NR_SAMPLES; k++) {
+				rays[k] = scene.getCamera().makeWorldSpaceRay(pixel[0], pixel[1], new float[] {0.5f, 0.5f});
+				samples[k] = new SampleStream();
+				samples[k].set(new CounterSampler(), pixel[1]*1000 + pixel[0], k);
+			}
+
+			float[] expected = estimate(new PathTracingIntegrator(scene), samples, rays);
+			for (boolean sortRays : new boolean[] {false, true}) {
+				Spectrum[] results = new Spectrum[NR_SAMPLES];
+				new WavefrontPathTracingIntegrator(scene, sortRays).integrate(rays, samples, NR_SAMPLES, results);
+				float[] actual = meanAndError(results);
+				assertEquals(expected[0], actual[0], 4*(expected[1] + actual[1]) + 1e-4f);
+			}
+		}
+	}
+
+	private float[] estimate(Integrator integrator, SampleStream[] samples, Ray[] rays) {
+		Spectrum[] results = new Spectrum[rays.length];
+		for (int k = 0; k < rays.length; k++) {
+			integrator.startSample(samples[k]);
+			results[k] = integrator.integrate(rays[k]);
+		}
+		return meanAndError(results);
+	}
+
+	/**
+	 * @return mean luminance and its standard error
+	 */
+	private float[] meanAndError(Spectrum[] results) {
+		double sum = 0, sum2 = 0;
+		for (Spectrum s : results) {
+			sum += s.getLuminance();
+			sum2 += s.getLuminance()*s.getLuminance();
+		}
+		double mean = sum/results.length;
+		double variance = Math.max(sum2/results.length - mean*mean, 0);
+		return new float[] {(float) mean, (float) Math.sqrt(variance/results.length)};
+	}
+}
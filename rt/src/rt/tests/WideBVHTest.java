@@ -0,0 +1,66 @@
+package rt.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import javax.vecmath.Vector3f;
+
+import org.junit.Test;
+
+import rt.FastObjReader;
+import rt.HitRecord;
+import rt.Ray;
+import rt.accelerators.MeshBVH;
+import rt.accelerators.RayKernels;
+import rt.accelerators.ScalarRayKernels;
+import rt.accelerators.WideBVH;
+
+public class WideBVHTest {
+
+	@Test
+	public void shouldFindSameHitsAsMeshBVH() throws IOException {
+		MeshBVH bvh = new MeshBVH(FastObjReader.read("../obj/male.obj", 1.f));
+		WideBVH wide = new WideBVH(bvh);
+		assertTrue(wide.getNumberOfNodes() < bvh.getNumberOfNodes()/2);
+
+		Random random = new Random(11);
+		for (int i = 0; i < 5000; i++) {
+			Vector3f origin = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, 3);
+			Vector3f direction = new Vector3f(random.nextFloat()*0.4f-0.2f, random.nextFloat()*0.4f-0.2f, -1);
+			Ray r = new Ray(origin, direction, 0);
+			HitRecord expected = bvh.intersect(r);
+			HitRecord actual = wide.intersect(r);
+			if (expected == null) {
+				assertNull(actual);
+			} else {
+				assertNotNull(actual);
+				assertEquals(expected.t, actual.t, 0);
+			}
+		}
+	}
+
+	@Test
+	public void selectedKernelsShouldMatchScalarKernels() throws IOException {
+		MeshBVH bvh = new MeshBVH(FastObjReader.read("../obj/teapot.obj", 1.f));
+		WideBVH scalar = new WideBVH(bvh, new ScalarRayKernels());
+		WideBVH selected = new WideBVH(bvh, RayKernels.get());
+
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			Vector3f origin = new Vector3f(random.nextFloat()*2-1, random.nextFloat()*2-1, 3);
+			Vector3f direction = new Vector3f(random.nextFloat()*0.4f-0.2f, random.nextFloat()*0.4f-0.2f, -1);
+			Ray r = new Ray(origin, direction, 0);
+			HitRecord expected = scalar.intersect(r);
+			HitRecord actual = selected.intersect(r);
+			if (expected == null) {
+				assertNull(actual);
+			} else {
+				assertNotNull(actual);
+				assertEquals(expected.t, actual.t, 0);
+				assertEquals(expected.normal, actual.normal);
+			}
+		}
+	}
+}
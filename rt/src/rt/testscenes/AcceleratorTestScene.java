@@ -50,7 +50,7 @@ public class AcceleratorTestScene extends Scene {
 		// Add objects
 		Aggregate mesh = null;
 		try {
-			mesh = ObjReader.read("../obj/dragon.obj", 2.2f);
+			mesh = FastObjReader.read("../obj/dragon.obj", 2.2f);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -42,7 +42,7 @@ public class AreaLightTestScene extends Scene {
 		
 		// Specify which integrator and sampler to use
 		integratorFactory = new AreaLightIntegratorFactory();
-		samplerFactory = new RandomSamplerFactory();				
+		samplerFactory = new CounterSamplerFactory();				
 		
 		CSGSolid sphere = new CSGSphere();
 		
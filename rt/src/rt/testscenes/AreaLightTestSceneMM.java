@@ -19,7 +19,7 @@ public class AreaLightTestSceneMM extends Scene {
 		outputFilename = new String("../output/testscenes/AreaLightTestMM");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 16;	
@@ -18,7 +18,7 @@ public class BDPathtracingBoxSphereGlass extends Scene {
 		outputFilename = new String("../output/testscenes/BDPathtracingBoxSphereGlass-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 1024;
@@ -19,7 +19,7 @@ public class BiPathtracingBoxSphere extends Scene {
 		outputFilename = new String("../output/testscenes/BiPathtracingBoxSphere-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 1024;
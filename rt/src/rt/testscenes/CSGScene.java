@@ -25,7 +25,7 @@ public class CSGScene extends Scene {
 		height = 360;
 		
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 	
 		// Number of samples per pixel
 		SPP = 8;
@@ -19,7 +19,7 @@ public class CornellBoxScene extends Scene {
 		outputFilename = new String("../output/testscenes/CornellBoxScene-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 1024;
@@ -53,7 +53,7 @@ public class GlossyScene extends Scene {
 		Mesh mesh;
 		try
 		{		
-			mesh = ObjReader.read("../obj/teapot.obj", 1.f);
+			mesh = FastObjReader.read("../obj/teapot.obj", 1.f);
 		} catch(IOException e) 
 		{
 			System.out.printf("Could not read .obj file\n");
@@ -19,7 +19,7 @@ public class ImportanceSamplingScene extends Scene {
 		outputFilename = new String("../output/testscenes/ImportanceSampling-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 512;
@@ -9,9 +9,10 @@ import rt.Intersectable;
 import rt.IntersectableList;
 import rt.LightGeometry;
 import rt.LightList;
-import rt.ObjReader;
+import rt.FastObjReader;
 import rt.Scene;
 import rt.Spectrum;
+import rt.accelerators.LazyAccelerator;
 import rt.cameras.PinholeCamera;
 import rt.films.BoxFilterFilm;
 import rt.integrators.DebugIntegratorFactory;
@@ -84,7 +85,7 @@ public class InstancingTeapots extends Scene {
 		// Add objects
 		Intersectable mesh = null;
 		try {
-			mesh = ObjReader.read("../obj/teapot.obj", 1.f);
+			mesh = new LazyAccelerator(FastObjReader.read("../obj/teapot.obj", 1.f));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -1,12 +1,13 @@
 package rt.testscenes;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Vector3f;
 
 import rt.*;
-import rt.accelerators.BSPAccelerator;
+import rt.accelerators.MeshBVH;
 import rt.cameras.PinholeCamera;
 import rt.films.BoxFilterFilm;
 import rt.integrators.*;
@@ -48,9 +49,20 @@ public class MassiveAcceleratorTestScene extends Scene {
 		chessTexture = new Textured("../textures/grass-texture.jpg");
 		
 		// Add objects
-		Aggregate mesh = null;
+		// Map the mesh from a binary mesh file if it was converted with BinaryMeshFile, e.g.
+		// java rt.BinaryMeshFile ../obj/xyzrgb_statuette.ply ../obj/xyzrgb_statuette.rtmesh 3,
+		// so the geometry never is on the heap. Otherwise read the .ply, or the .obj if there
+		// is no .ply, and copy it off the heap.
+		Mesh mesh = null;
 		try {
-			mesh = ObjReader.read("../obj/xyzrgb_statuette.obj", 3f);
+			String meshFile = "../obj/xyzrgb_statuette.rtmesh";
+			String plyFile = "../obj/xyzrgb_statuette.ply";
+			if (new File(meshFile).exists())
+				mesh = BinaryMeshFile.readMapped(meshFile);
+			else if (new File(plyFile).exists())
+				mesh = PlyReader.read(plyFile, 3f).toDirect();
+			else
+				mesh = FastObjReader.read("../obj/xyzrgb_statuette.obj", 3f).toDirect();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -59,7 +71,7 @@ public class MassiveAcceleratorTestScene extends Scene {
 		t.setIdentity();
 		t.setTranslation(new Vector3f(0,1.5f,0));
 		//t.rotX((float) (-Math.PI/2));
-		Instance accMesh = new Instance(new BSPAccelerator(mesh),t);
+		Instance accMesh = new Instance(new MeshBVH(mesh, true),t);
 		// Ground and back plane
 		XYZGrid grid = new XYZGrid(new Spectrum(0.2f, 0.f, 0.f), new Spectrum(1.f, 1.f, 1.f), 0.1f, new Vector3f(0.f, 0.3f, 0.f));
 		CSGPlane groundPlane = new CSGPlane(new Vector3f(0.f, 1.f, 0.f), 1.5f);
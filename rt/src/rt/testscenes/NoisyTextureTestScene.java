@@ -21,7 +21,7 @@ import rt.materials.NoisyTexture;
 import rt.materials.Textured;
 import rt.materials.XYZGrid;
 import rt.materials.NoisyTexture.Type;
-import rt.samplers.RandomSamplerFactory;
+import rt.samplers.CounterSamplerFactory;
 import rt.tonemappers.ClampTonemapper;
 
 public class NoisyTextureTestScene extends Scene {
@@ -51,7 +51,7 @@ public class NoisyTextureTestScene extends Scene {
 		// Specify which integrator and sampler to use
 		//integratorFactory = new PathTracingIntegratorFactory();
 		integratorFactory = new PointLightIntegratorFactory();
-		samplerFactory = new RandomSamplerFactory();		
+		samplerFactory = new CounterSamplerFactory();		
 		Material chessTexture = null;
 		
 		chessTexture = new Textured("../textures/grass-texture.jpg");
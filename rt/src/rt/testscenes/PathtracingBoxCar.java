@@ -22,7 +22,7 @@ public class PathtracingBoxCar extends Scene {
 		outputFilename = new String("../output/testscenes/PathtracingBoxCar-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 512;
@@ -72,7 +72,7 @@ public class PathtracingBoxCar extends Scene {
 		try
 		{
 			
-			mesh = ObjReader.read("../obj/Specter_GT3.obj", 1.f);
+			mesh = FastObjReader.read("../obj/Specter_GT3.obj", 1.f);
 			timer.reset();
 			accelerator = new BSPAccelerator(mesh);
 			System.out.printf("Accelerator computed in %d ms.\n", timer.timeElapsed());
@@ -11,7 +11,7 @@ import rt.integrators.*;
 import rt.lightsources.*;
 import rt.materials.*;
 import rt.samplers.*;
-import rt.accelerators.BSPAccelerator;
+import rt.accelerators.LazyAccelerator;
 import rt.cameras.*;
 import rt.films.*;
 
@@ -22,7 +22,7 @@ public class PathtracingBoxPeople extends Scene {
 		outputFilename = new String("../output/testscenes/PathtracingBoxPeopletiny-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 512;
@@ -67,16 +67,14 @@ public class PathtracingBoxPeople extends Scene {
 		objects.add(rectangle);
 		
 		// Add objects
-		Timer timer = new Timer();
+		// The accelerators are only built once a ray reaches the meshes
 		Mesh mesh;
-		BSPAccelerator accelerator;
+		LazyAccelerator accelerator;
 		try
 		{
 			
-			mesh = ObjReader.read("../obj/fireman.obj", 1.f);
-			timer.reset();
-			accelerator = new BSPAccelerator(mesh);
-			System.out.printf("Accelerator computed in %d ms.\n", timer.timeElapsed());
+			mesh = FastObjReader.read("../obj/fireman.obj", 1.f);
+			accelerator = new LazyAccelerator(mesh);
 			
 			Matrix4f t = new Matrix4f();
 			t.setIdentity();
@@ -93,10 +91,8 @@ public class PathtracingBoxPeople extends Scene {
 		try
 		{
 			
-			mesh = ObjReader.read("../obj/male.obj", 1.f);
-			timer.reset();
-			accelerator = new BSPAccelerator(mesh);
-			System.out.printf("Accelerator computed in %d ms.\n", timer.timeElapsed());
+			mesh = FastObjReader.read("../obj/male.obj", 1.f);
+			accelerator = new LazyAccelerator(mesh);
 			
 			Matrix4f t = new Matrix4f();
 			t.setIdentity();
@@ -19,7 +19,7 @@ public class PathtracingBoxSphere extends Scene {
 		outputFilename = new String("../output/testscenes/PathtracingBoxSphere-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 1024;
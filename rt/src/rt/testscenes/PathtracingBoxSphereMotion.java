@@ -20,7 +20,7 @@ public class PathtracingBoxSphereMotion extends Scene {
 		outputFilename = new String("../output/testscenes/PathtracingBoxSphereMotion-mine");
 				
 		// Specify pixel sampler to be used
-		samplerFactory = new RandomSamplerFactory();
+		samplerFactory = new CounterSamplerFactory();
 		
 		// Samples per pixel
 		SPP = 128;
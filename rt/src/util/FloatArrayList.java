@@ -0,0 +1,86 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive floats. Unlike an ArrayList<Float> no value is
+ * ever boxed, which keeps parsers and builders for large meshes free of garbage.
+ */
+public class FloatArrayList {
+
+	private float[] data;
+	private int size;
+
+	public FloatArrayList() {
+		this(16);
+	}
+
+	public FloatArrayList(int initialCapacity) {
+		this.data = new float[Math.max(initialCapacity, 1)];
+	}
+
+	public void add(float f) {
+		if (size == data.length)
+			grow(size + 1);
+		data[size++] = f;
+	}
+
+	public void add(float f0, float f1) {
+		if (size + 2 > data.length)
+			grow(size + 2);
+		data[size] = f0;
+		data[size + 1] = f1;
+		size += 2;
+	}
+
+	public void add(float f0, float f1, float f2) {
+		if (size + 3 > data.length)
+			grow(size + 3);
+		data[size] = f0;
+		data[size + 1] = f1;
+		data[size + 2] = f2;
+		size += 3;
+	}
+
+	public void addAll(FloatArrayList other) {
+		if (size + other.size > data.length)
+			grow(size + other.size);
+		System.arraycopy(other.data, 0, data, size, other.size);
+		size += other.size;
+	}
+
+	public float get(int i) {
+		return data[i];
+	}
+
+	public void set(int i, float f) {
+		data[i] = f;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Careful, this returns the backing array, which is usually longer than {@link #size()}.
+	 */
+	public float[] elements() {
+		return data;
+	}
+
+	/**
+	 * @return a copy of the elements, trimmed to {@link #size()}
+	 */
+	public float[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	private void grow(int minCapacity) {
+		int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+		data = Arrays.copyOf(data, newCapacity);
+	}
+}
@@ -0,0 +1,60 @@
+package util;
+
+import rt.Spectrum;
+
+/**
+ * Error measures of a rendered image with respect to a reference image, both as
+ * returned by {@link rt.Film#makeImage}.
+ */
+public class ImageError {
+
+	/**
+	 * @return the root mean square error over all pixels and color channels
+	 */
+	public static double rmse(Spectrum[][] image, Spectrum[][] reference) {
+		assert image.length == reference.length && image[0].length == reference[0].length;
+		double sum = 0;
+		int n = 0;
+		for (int x = 0; x < image.length; x++) {
+			for (int y = 0; y < image[x].length; y++) {
+				Spectrum s = image[x][y], r = reference[x][y];
+				sum += sqr(s.r - r.r) + sqr(s.g - r.g) + sqr(s.b - r.b);
+				n += 3;
+			}
+		}
+		return Math.sqrt(sum/n);
+	}
+
+	/**
+	 * The error of the images blurred with a box filter, which only keeps the low
+	 * frequencies of the error. Noise of high frequency looks smoother, and this measures
+	 * it like the eye does from a distance.
+	 *
+	 * @param radius the filter covers (2*radius+1)^2 pixels, clamped to the image
+	 * @return the root mean square error of the blurred images
+	 */
+	public static double blurredRmse(Spectrum[][] image, Spectrum[][] reference, int radius) {
+		return rmse(blur(image, radius), blur(reference, radius));
+	}
+
+	private static Spectrum[][] blur(Spectrum[][] image, int radius) {
+		int width = image.length, height = image[0].length;
+		Spectrum[][] blurred = new Spectrum[width][height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				Spectrum sum = new Spectrum();
+				int n = 0;
+				for (int i = Math.max(x - radius, 0); i <= Math.min(x + radius, width - 1); i++)
+					for (int j = Math.max(y - radius, 0); j <= Math.min(y + radius, height - 1); j++, n++)
+						sum.add(image[i][j]);
+				sum.mult(1.f/n);
+				blurred[x][y] = sum;
+			}
+		}
+		return blurred;
+	}
+
+	private static double sqr(double x) {
+		return x*x;
+	}
+}
@@ -0,0 +1,77 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive ints, the counterpart of {@link FloatArrayList}.
+ */
+public class IntArrayList {
+
+	private int[] data;
+	private int size;
+
+	public IntArrayList() {
+		this(16);
+	}
+
+	public IntArrayList(int initialCapacity) {
+		this.data = new int[Math.max(initialCapacity, 1)];
+	}
+
+	public void add(int i) {
+		if (size == data.length)
+			grow(size + 1);
+		data[size++] = i;
+	}
+
+	public void add(int i0, int i1, int i2) {
+		if (size + 3 > data.length)
+			grow(size + 3);
+		data[size] = i0;
+		data[size + 1] = i1;
+		data[size + 2] = i2;
+		size += 3;
+	}
+
+	public void addAll(IntArrayList other) {
+		if (size + other.size > data.length)
+			grow(size + other.size);
+		System.arraycopy(other.data, 0, data, size, other.size);
+		size += other.size;
+	}
+
+	public int get(int i) {
+		return data[i];
+	}
+
+	public void set(int i, int value) {
+		data[i] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Careful, this returns the backing array, which is usually longer than {@link #size()}.
+	 */
+	public int[] elements() {
+		return data;
+	}
+
+	/**
+	 * @return a copy of the elements, trimmed to {@link #size()}
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	private void grow(int minCapacity) {
+		int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+		data = Arrays.copyOf(data, newCapacity);
+	}
+}
@@ -0,0 +1,99 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from triples of ints to non-negative ints, using open addressing with
+ * linear probing on primitive arrays. Nothing is boxed and there is no entry object
+ * per mapping, which makes it usable for millions of keys, e.g. to find shared
+ * (position, tex. coord., normal) index triples when building a mesh.
+ */
+public class IntTripleHashMap {
+
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * @param expectedSize number of keys that can be added before the map needs to grow
+	 */
+	public IntTripleHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize*2 - 1, 16)) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * @return the value mapped to the given key, or -1 if there is none
+	 */
+	public int get(int a, int b, int c) {
+		int slot = hash(a, b, c) & mask;
+		while (values[slot] != EMPTY) {
+			if (keys[slot*3] == a && keys[slot*3+1] == b && keys[slot*3+2] == c)
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Maps the key to the given value, unless the key is already present.
+	 *
+	 * @param value a non-negative value
+	 * @return the value that was already mapped to the key, or -1 if the new value was added
+	 */
+	public int putIfAbsent(int a, int b, int c, int value) {
+		assert value >= 0;
+		int slot = hash(a, b, c) & mask;
+		while (values[slot] != EMPTY) {
+			if (keys[slot*3] == a && keys[slot*3+1] == b && keys[slot*3+2] == c)
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		keys[slot*3] = a;
+		keys[slot*3+1] = b;
+		keys[slot*3+2] = c;
+		values[slot] = value;
+		size++;
+		if (size*2 > values.length)
+			rehash(values.length*2);
+		return EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity*3];
+		values = new int[capacity];
+		Arrays.fill(values, EMPTY);
+		mask = capacity - 1;
+	}
+
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] == EMPTY)
+				continue;
+			int slot = hash(oldKeys[i*3], oldKeys[i*3+1], oldKeys[i*3+2]) & mask;
+			while (values[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			keys[slot*3] = oldKeys[i*3];
+			keys[slot*3+1] = oldKeys[i*3+1];
+			keys[slot*3+2] = oldKeys[i*3+2];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private static int hash(int a, int b, int c) {
+		int h = a*0x9E3779B1;
+		h = (h ^ (h >>> 16) ^ b)*0x85EBCA6B;
+		h = (h ^ (h >>> 13) ^ c)*0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+}
@@ -112,4 +112,14 @@ public class StaticVecmath {
 		reflected.add(nScaled);
 		return reflected;
 	}
+
+	/**
+	 * Like {@link #reflect(Vector3f, Vector3f)}, writes the reflected direction into result,
+	 * which may be the same vector as incoming.
+	 */
+	public static void reflect(Vector3f normal, Vector3f incoming, Vector3f result) {
+		float twoCosTheta_i = 2*incoming.dot(normal);
+		result.set(twoCosTheta_i*normal.x - incoming.x, twoCosTheta_i*normal.y - incoming.y,
+				twoCosTheta_i*normal.z - incoming.z);
+	}
 }
@@ -1,12 +1,15 @@
 package util;
 
-import java.util.LinkedList;
-
 public class StdHelper {
 
 	
-	private LinkedList<Float> values = new LinkedList<Float>();
-	private LinkedList<Integer> costs = new LinkedList<Integer>();
+	/**
+	 * Ring buffers of the last maxSize values and costs, the oldest ones are at first.
+	 */
+	private final float[] values;
+	private final int[] costs;
+	private int first = 0;
+	private int size = 0;
 	private float mean = 0;
 	private float M2 = 0;
 	
@@ -21,12 +24,22 @@ public class StdHelper {
 	 */
 	public StdHelper(int maxSize) {
 		this.maxSize = maxSize;
+		this.values = new float[maxSize + 1];
+		this.costs = new int[maxSize + 1];
 	}
 		
+	/**
+	 * Removes all values.
+	 */
+	public void clear() {
+		first = size = 0;
+		mean = M2 = meanCosts = 0;
+	}
+
 	public float getVar() {
 		//fixes division by zero
-		if (values.size() > 1) 
-			return Math.max(M2/(values.size() - 1), 0); //prevent nan if M2 is below zero
+		if (size > 1) 
+			return Math.max(M2/(size - 1), 0); //prevent nan if M2 is below zero
 		else
 			return 0;
 	}
@@ -36,6 +49,8 @@ public class StdHelper {
 	 * @return
 	 */
 	public float getDelta() {
+		if (meanCosts <= 0) // nothing added yet
+			return 0;
 		float sqrDelta = Math.max(getVar()/meanCosts, 0);
 		return MyMath.sqrt(sqrDelta);
 	}
@@ -45,10 +60,16 @@ public class StdHelper {
 	}
 	
 	public void update(float newValue, int bounce) {
-		values.addLast(newValue);
-		costs.addLast(bounce);
-		if (values.size() > maxSize) {
-			swapValues(values.pop(), newValue, costs.pop(), bounce);
+		int last = (first + size) % values.length;
+		values[last] = newValue;
+		costs[last] = bounce;
+		size++;
+		if (size > maxSize) {
+			float oldValue = values[first];
+			int oldCost = costs[first];
+			first = (first + 1) % values.length;
+			size--;
+			swapValues(oldValue, newValue, oldCost, bounce);
 		} else {
 			addNewValue(newValue, bounce);
 		}
@@ -57,18 +78,18 @@ public class StdHelper {
 	private void swapValues(float oldValue, float newValue, int oldCost, int newCost) {
 		float delta = newValue - oldValue;
 		float dold = oldValue - mean;
-		mean += delta/values.size();
+		mean += delta/size;
 		float dnew = newValue - mean;
 		M2 += delta*(dold + dnew);
 		float deltaCosts = newCost - oldCost;
-		meanCosts += deltaCosts/costs.size();
+		meanCosts += deltaCosts/size;
 	}
 	
 	private void addNewValue(float newValue, int newCost) {
 		float delta = newValue - mean;
-		mean += delta/values.size();
+		mean += delta/size;
 		M2 += delta*(newValue - mean);
 		float costDelta = newCost - meanCosts;
-		this.meanCosts += costDelta/costs.size();
+		this.meanCosts += costDelta/size;
 	}
 }
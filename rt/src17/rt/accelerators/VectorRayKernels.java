@@ -0,0 +1,92 @@
+package rt.accelerators;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link RayKernels} using the Java Vector API. The four boxes of a node are tested in
+ * one 128 bit vector, and the triangles of a leaf four at a time. Wider vectors do not
+ * pay off, since the leaves hold at most four triangles. Only lanewise IEEE operations are
+ * used, no fused multiply-add, so the results are the same as with {@link ScalarRayKernels}.
+ * <p>
+ * Compiled with Java 17 into the multi-release jar, see {@link RayKernels}.
+ */
+public class VectorRayKernels extends RayKernels {
+
+	private static final VectorSpecies<Float> BOXES = FloatVector.SPECIES_128;
+	private static final VectorSpecies<Float> TRIANGLES = FloatVector.SPECIES_128;
+
+	public VectorRayKernels() {
+		// Fail here, where it can be caught, if the vector module or hardware is missing
+		if (BOXES.length() != 4)
+			throw new LinkageError("Unexpected vector length");
+	}
+
+	@Override
+	public void intersectBoxes(float[] bounds, int offset, float ox, float oy, float oz,
+			float ix, float iy, float iz, float tMax, float[] tNear) {
+		FloatVector t0 = FloatVector.fromArray(BOXES, bounds, offset).sub(ox).mul(ix);
+		FloatVector t1 = FloatVector.fromArray(BOXES, bounds, offset + 12).sub(ox).mul(ix);
+		FloatVector near = t0.min(t1), far = t0.max(t1);
+		t0 = FloatVector.fromArray(BOXES, bounds, offset + 4).sub(oy).mul(iy);
+		t1 = FloatVector.fromArray(BOXES, bounds, offset + 16).sub(oy).mul(iy);
+		near = near.max(t0.min(t1));
+		far = far.min(t0.max(t1));
+		t0 = FloatVector.fromArray(BOXES, bounds, offset + 8).sub(oz).mul(iz);
+		t1 = FloatVector.fromArray(BOXES, bounds, offset + 20).sub(oz).mul(iz);
+		near = near.max(t0.min(t1));
+		far = far.min(t0.max(t1));
+		VectorMask<Float> hit = near.compare(VectorOperators.LE, far)
+				.and(far.compare(VectorOperators.GE, 0))
+				.and(near.compare(VectorOperators.LE, tMax));
+		FloatVector.broadcast(BOXES, Float.POSITIVE_INFINITY).blend(near, hit).intoArray(tNear, 0);
+	}
+
+	@Override
+	public int intersectTriangles(float[] triangles, int n, int start, int end,
+			float ox, float oy, float oz, float dx, float dy, float dz, float[] hit) {
+		int closest = -1;
+		for (int i = start; i < end; i += TRIANGLES.length()) {
+			VectorMask<Float> valid = TRIANGLES.indexInRange(i, end);
+			FloatVector ax = FloatVector.fromArray(TRIANGLES, triangles, i, valid);
+			FloatVector ay = FloatVector.fromArray(TRIANGLES, triangles, n + i, valid);
+			FloatVector az = FloatVector.fromArray(TRIANGLES, triangles, 2*n + i, valid);
+			FloatVector e1x = FloatVector.fromArray(TRIANGLES, triangles, 3*n + i, valid);
+			FloatVector e1y = FloatVector.fromArray(TRIANGLES, triangles, 4*n + i, valid);
+			FloatVector e1z = FloatVector.fromArray(TRIANGLES, triangles, 5*n + i, valid);
+			FloatVector e2x = FloatVector.fromArray(TRIANGLES, triangles, 6*n + i, valid);
+			FloatVector e2y = FloatVector.fromArray(TRIANGLES, triangles, 7*n + i, valid);
+			FloatVector e2z = FloatVector.fromArray(TRIANGLES, triangles, 8*n + i, valid);
+
+			FloatVector px = e2z.mul(dy).sub(e2y.mul(dz));
+			FloatVector py = e2x.mul(dz).sub(e2z.mul(dx));
+			FloatVector pz = e2y.mul(dx).sub(e2x.mul(dy));
+			FloatVector det = e1x.mul(px).add(e1y.mul(py)).add(e1z.mul(pz));
+			valid = valid.and(det.compare(VectorOperators.NE, 0));
+			FloatVector invDet = det.broadcast(1).div(det);
+			FloatVector sx = ax.neg().add(ox), sy = ay.neg().add(oy), sz = az.neg().add(oz);
+			FloatVector beta = sx.mul(px).add(sy.mul(py)).add(sz.mul(pz)).mul(invDet);
+			valid = valid.and(beta.compare(VectorOperators.GT, 0)).and(beta.compare(VectorOperators.LT, 1));
+			FloatVector qx = sy.mul(e1z).sub(sz.mul(e1y));
+			FloatVector qy = sz.mul(e1x).sub(sx.mul(e1z));
+			FloatVector qz = sx.mul(e1y).sub(sy.mul(e1x));
+			FloatVector gamma = qx.mul(dx).add(qy.mul(dy)).add(qz.mul(dz)).mul(invDet);
+			valid = valid.and(gamma.compare(VectorOperators.GT, 0)).and(beta.add(gamma).compare(VectorOperators.LT, 1));
+			FloatVector t = e2x.mul(qx).add(e2y.mul(qy)).add(e2z.mul(qz)).mul(invDet);
+			valid = valid.and(t.compare(VectorOperators.GT, 0)).and(t.compare(VectorOperators.LT, hit[0]));
+			if (!valid.anyTrue())
+				continue;
+
+			// Closest valid lane, the first one on ties like in the scalar loop
+			float tMin = t.reduceLanes(VectorOperators.MIN, valid);
+			int lane = t.compare(VectorOperators.EQ, tMin).and(valid).firstTrue();
+			hit[0] = tMin;
+			hit[1] = beta.lane(lane);
+			hit[2] = gamma.lane(lane);
+			closest = i + lane;
+		}
+		return closest;
+	}
+}